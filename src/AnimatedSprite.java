@@ -0,0 +1,131 @@
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pre-decoded animation ready for display: one JavaFX image holding every frame at
+ * the display size, plus the frame timings. Sprites are built once per image and
+ * size, from a sheet written by {@link SpritePreprocessor} if there is one, otherwise
+ * by decoding the GIF.
+ *
+ * @author Jiarui Xing
+ */
+public final class AnimatedSprite {
+    private static final Map<String, AnimatedSprite> cache = new ConcurrentHashMap<>();
+
+    private final Image image;
+    private final int frameSize;
+    private final int columns;
+    // End time of every frame within one loop, in milliseconds
+    private final long[] frameEnds;
+
+    private AnimatedSprite(final SpriteSheet sheet)
+    {
+        image = toFxImage(sheet.getImage());
+        frameSize = sheet.getFrameSize();
+        columns = sheet.getColumns();
+        final int[] delays = sheet.getDelays();
+        frameEnds = new long[delays.length];
+        long end = 0;
+        for(int i = 0; i < delays.length; i++)
+        {
+            end += delays[i];
+            frameEnds[i] = end;
+        }
+    }
+
+    /**
+     * Get the sprite of a GIF at a display size, building it on first use.
+     *
+     * @param gifPath Relative path to the GIF (e.g., "images/piston.gif")
+     * @param size    Display width and height
+     * @return AnimatedSprite, or null if the GIF can't be loaded
+     */
+    public static AnimatedSprite get(final String gifPath, final int size)
+    {
+        final String key = gifPath + "@" + size;
+        final AnimatedSprite cached = cache.get(key);
+        if(cached != null)
+        {
+            return cached;
+        }
+        try
+        {
+            SpriteSheet sheet = SpriteSheet.read(new File(SpriteSheet.SPRITE_DIRECTORY),
+                    SpriteSheet.sheetName(gifPath, size));
+            if(sheet == null)
+            {
+                final File file = new File(gifPath);
+                if(!file.exists())
+                {
+                    System.err.println("Image not found: " + gifPath);
+                    return null;
+                }
+                sheet = SpriteSheet.decodeGif(file, size);
+            }
+            final AnimatedSprite sprite = new AnimatedSprite(sheet);
+            cache.put(key, sprite);
+            return sprite;
+        } catch(Exception e)
+        {
+            System.err.println("Error loading image: " + gifPath);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Get the image holding all frames.
+     *
+     * @return Sheet image
+     */
+    public Image getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Get the index of the frame shown at a point in time. All sprites loop from the
+     * same time origin.
+     *
+     * @param elapsedMillis Time since the clock started
+     * @return Frame index
+     */
+    public int frameAt(final long elapsedMillis)
+    {
+        final long t = elapsedMillis % frameEnds[frameEnds.length - 1];
+        final int index = Arrays.binarySearch(frameEnds, t);
+        // An exact hit is the end of that frame, so the next one is showing
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Get the part of the sheet holding a frame.
+     *
+     * @param frame Frame index
+     * @return Viewport rectangle
+     */
+    public Rectangle2D getViewport(final int frame)
+    {
+        return new Rectangle2D((frame % columns) * frameSize,
+                (frame / columns) * frameSize, frameSize, frameSize);
+    }
+
+    private static Image toFxImage(final BufferedImage source)
+    {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int[] argb = source.getRGB(0, 0, width, height, null, 0, width);
+        final WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), argb, 0, width);
+        return image;
+    }
+}
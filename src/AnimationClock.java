@@ -0,0 +1,224 @@
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * One shared timer that advances every animated item on screen. Views that are
+ * hidden or outside the window keep their frame until they are shown again, and
+ * views removed from the scene are dropped. The timer stops when nothing is
+ * animated. Must only be used on the JavaFX application thread.
+ *
+ * @author Jiarui Xing
+ */
+public final class AnimationClock {
+    private static AnimationClock instance;
+
+    private final Map<ImageView, Binding> bindings;
+    private final List<LongConsumer> tickListeners;
+    private final AnimationTimer timer;
+    private final long startNanos;
+    private boolean running = false;
+
+    private AnimationClock()
+    {
+        bindings = new IdentityHashMap<>();
+        tickListeners = new ArrayList<>();
+        startNanos = System.nanoTime();
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(final long now)
+            {
+                tick(now);
+            }
+        };
+    }
+
+    /**
+     * Get the shared clock.
+     *
+     * @return The AnimationClock instance
+     */
+    public static AnimationClock getInstance()
+    {
+        if(instance == null)
+        {
+            instance = new AnimationClock();
+        }
+        return instance;
+    }
+
+    /**
+     * Create a view showing an animated sprite, driven by this clock.
+     *
+     * @param sprite Sprite to show
+     * @return New ImageView
+     */
+    public ImageView createView(final AnimatedSprite sprite)
+    {
+        final ImageView view = new ImageView();
+        bind(view, sprite);
+        return view;
+    }
+
+    /**
+     * Show an animated sprite in an existing view, replacing what it showed before.
+     *
+     * @param view   View to animate
+     * @param sprite Sprite to show
+     */
+    public void bind(final ImageView view, final AnimatedSprite sprite)
+    {
+        final Binding binding = new Binding(sprite);
+        binding.frame = sprite.frameAt(elapsedMillis(System.nanoTime()));
+        view.setImage(sprite.getImage());
+        view.setViewport(sprite.getViewport(binding.frame));
+        bindings.put(view, binding);
+        ensureRunning();
+    }
+
+    /**
+     * Call a listener on every tick with the clock's elapsed time, for renderers that
+     * draw animations themselves.
+     *
+     * @param listener Receives the elapsed time in milliseconds
+     */
+    public void addTickListener(final LongConsumer listener)
+    {
+        tickListeners.add(listener);
+        ensureRunning();
+    }
+
+    /**
+     * Stop calling a tick listener.
+     *
+     * @param listener Listener to remove
+     */
+    public void removeTickListener(final LongConsumer listener)
+    {
+        tickListeners.remove(listener);
+    }
+
+    /**
+     * Get the time since the clock started. All animations loop from this origin.
+     *
+     * @return Elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis(System.nanoTime());
+    }
+
+    private void ensureRunning()
+    {
+        if(!running)
+        {
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Stop animating a view and clear its viewport so it can show a still image.
+     *
+     * @param view View to release
+     */
+    public void unbind(final ImageView view)
+    {
+        if(bindings.remove(view) != null)
+        {
+            view.setViewport(null);
+        }
+    }
+
+    private void tick(final long now)
+    {
+        final long elapsed = elapsedMillis(now);
+        final Iterator<Map.Entry<ImageView, Binding>> it = bindings.entrySet().iterator();
+        while(it.hasNext())
+        {
+            final Map.Entry<ImageView, Binding> entry = it.next();
+            final ImageView view = entry.getKey();
+            final Binding binding = entry.getValue();
+            if(view.getScene() == null)
+            {
+                // Removed from the scene after having been shown: forget it
+                if(binding.attached)
+                {
+                    it.remove();
+                }
+                continue;
+            }
+            binding.attached = true;
+            if(!isOnScreen(view))
+            {
+                continue;
+            }
+            final int frame = binding.sprite.frameAt(elapsed);
+            if(frame != binding.frame)
+            {
+                binding.frame = frame;
+                view.setViewport(binding.sprite.getViewport(frame));
+            }
+        }
+        for(final LongConsumer listener : List.copyOf(tickListeners))
+        {
+            listener.accept(elapsed);
+        }
+        if(bindings.isEmpty() && tickListeners.isEmpty())
+        {
+            running = false;
+            timer.stop();
+        }
+    }
+
+    /**
+     * Check if a node is visible and at least partly inside its window.
+     *
+     * @param node Node to check
+     * @return True if the node can be seen
+     */
+    private static boolean isOnScreen(final Node node)
+    {
+        for(Node n = node; n != null; n = n.getParent())
+        {
+            if(!n.isVisible())
+            {
+                return false;
+            }
+        }
+        final Scene scene = node.getScene();
+        if(scene.getWindow() == null || !scene.getWindow().isShowing())
+        {
+            return false;
+        }
+        final Bounds bounds = node.localToScene(node.getBoundsInLocal());
+        return bounds.getMaxX() > 0 && bounds.getMaxY() > 0 &&
+               bounds.getMinX() < scene.getWidth() &&
+               bounds.getMinY() < scene.getHeight();
+    }
+
+    private long elapsedMillis(final long now)
+    {
+        return (now - startNanos) / 1_000_000L;
+    }
+
+    private static final class Binding {
+        private final AnimatedSprite sprite;
+        private int frame;
+        private boolean attached = false;
+
+        private Binding(final AnimatedSprite sprite)
+        {
+            this.sprite = sprite;
+        }
+    }
+}
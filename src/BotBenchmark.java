@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * End-to-end load test: many solver bots play one tournament in parallel, each bot
+ * one player from joining to the last question. Reports sessions and submits per
+ * second and the latency percentiles of a submit. The same arguments give the same
+ * questions and bot decisions, so runs are comparable.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded
+ * through the game controller:
+ * {@code java BotBenchmark [bots] [threads] [error rate] [questions]}.
+ *
+ * @author Jiarui Xing
+ */
+public class BotBenchmark {
+    private static final long SEED = 42;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Optional bot count, thread count, error rate and questions per game
+     * @throws Exception if a bot fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int bots = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+        final double errorRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+        final int questions = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        final Tournament tournament =
+                GameController.getInstance(null).createTournament(SEED, questions);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final ThreadLocal<LatencyRecorder> recorders =
+                ThreadLocal.withInitial(LatencyRecorder::new);
+        final List<LatencyRecorder> allRecorders = new ArrayList<>();
+
+        final long start = System.nanoTime();
+        final List<Future<Integer>> results = new ArrayList<>();
+        for(int i = 0; i < bots; i++)
+        {
+            final String playerId = "bot-" + i;
+            final SolverBot bot = new SolverBot(errorRate, new Random(SEED + i));
+            results.add(executor.submit(() ->
+            {
+                final LatencyRecorder recorder = recorders.get();
+                synchronized(allRecorders)
+                {
+                    if(!allRecorders.contains(recorder))
+                    {
+                        allRecorders.add(recorder);
+                    }
+                }
+                tournament.join(playerId);
+                return bot.play(tournament, playerId, recorder);
+            }));
+        }
+        long submits = 0;
+        for(final Future<Integer> result : results)
+        {
+            submits += result.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        final LatencyRecorder latencies = new LatencyRecorder();
+        for(final LatencyRecorder recorder : allRecorders)
+        {
+            latencies.merge(recorder);
+        }
+        final double seconds = elapsed / 1e9;
+        System.out.printf("%d bots on %d threads, error rate %.2f, %d questions%n", bots,
+                threads, errorRate, tournament.getQuestions().size());
+        System.out.printf("Elapsed: %.2f s%n", seconds);
+        System.out.printf("Sessions/s: %.0f%n", bots / seconds);
+        System.out.printf("Submits/s: %.0f (%d submits)%n", submits / seconds, submits);
+        System.out.printf("Submit latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, " +
+                          "max %.1f us%n", latencies.getPercentile(50) / 1e3,
+                latencies.getPercentile(90) / 1e3, latencies.getPercentile(99) / 1e3,
+                latencies.getPercentile(100) / 1e3);
+        System.out.println("Top score: " +
+                           tournament.getLeaderboard(1).get(0).getScore());
+    }
+}
@@ -0,0 +1,519 @@
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.Cursor;
+import javafx.scene.ImageCursor;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Draws the whole crafting screen on a single canvas: background, grid, options,
+ * target item and the bottom bar. Clicks are hit-tested against the same layout and
+ * forwarded to the GameController. Only regions that changed are redrawn. Intended
+ * for low-power hardware where the scene-graph UI spends too long in CSS and layout.
+ *
+ * @author Jiarui Xing
+ */
+public class CanvasRenderer {
+    public static final double WIDTH = 800;
+    public static final double HEIGHT = 400;
+
+    private static final Color BACKGROUND_COLOR = Color.web("#c6c6c6");
+    private static final Color BUTTON_COLOR = Color.web("#e0e0e0");
+
+    // Layout, matching the scene-graph UI
+    private static final int ICON_SIZE = 64;
+    private static final int CELL_ICON_SIZE = 60;
+    private static final double OPTION_GAP = 5;
+    private static final double OPTION_Y = 20;
+
+    // Widest the option row gets; icons shrink when more options must fit
+    private static final double OPTIONS_MAX_WIDTH = QuestionGenerator.OPTION_COUNT *
+            ICON_SIZE + (QuestionGenerator.OPTION_COUNT - 1) * OPTION_GAP;
+    private static final double BOARD_X = 164;
+    private static final double BOARD_Y = 94;
+    private static final double BOARD_WIDTH = 472;
+    private static final double BOARD_HEIGHT = 266;
+    private static final double GRID_X = BOARD_X + 8;
+    private static final double GRID_Y = BOARD_Y + 48;
+    private static final double CELL_SIZE = 64;
+    private static final double CELL_GAP = 8;
+    private static final Rectangle2D TARGET =
+            new Rectangle2D(BOARD_X + 368, BOARD_Y + 104, 95, 95);
+    private static final double BAR_Y = 372;
+    private static final Rectangle2D SCORE = new Rectangle2D(20, BAR_Y, 130, 24);
+    private static final Rectangle2D REMAINING = new Rectangle2D(150, BAR_Y, 170, 24);
+    private static final Rectangle2D SKIP_BUTTON = new Rectangle2D(330, BAR_Y, 60, 24);
+    private static final Rectangle2D CHAIN_BUTTON =
+            new Rectangle2D(400, BAR_Y, 100, 24);
+    private static final Rectangle2D FEEDBACK = new Rectangle2D(510, BAR_Y, 270, 24);
+    private static final Rectangle2D BOOK_BUTTON = new Rectangle2D(716, 40, 76, 24);
+
+    private final GameController gameController;
+    private final MinecraftItem gameUi;
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+
+    // What is currently drawn; the option row is laid out again when a question has
+    // a different number of options
+    private Icon[] options;
+    private final Icon[] cells;
+    private final Icon target;
+    private String scoreText = "";
+    private String remainingText = "";
+    private String feedbackText = "";
+    private Color feedbackColor = Color.BLACK;
+    private Color previewColor = Color.TRANSPARENT;
+
+    // Currently selected option
+    private Item selectedItem = null;
+
+    private final List<Rectangle2D> dirtyRegions;
+    private boolean redrawScheduled = false;
+    private final LongConsumer animationListener;
+    private boolean animating = false;
+
+    /**
+     * Create the renderer.
+     *
+     * @param gameController Controller receiving the player's actions
+     * @param gameUi         Application, for the shared item cursors and match preview
+     */
+    public CanvasRenderer(final GameController gameController, final MinecraftItem gameUi)
+    {
+        this.gameController = gameController;
+        this.gameUi = gameUi;
+        canvas = new Canvas(WIDTH, HEIGHT);
+        gc = canvas.getGraphicsContext2D();
+        dirtyRegions = new ArrayList<>();
+
+        options = layoutOptions(QuestionGenerator.OPTION_COUNT);
+
+        final int gridSize = gameController.getGridSize();
+        cells = new Icon[gridSize * gridSize];
+        for(int row = 0; row < gridSize; row++)
+        {
+            for(int col = 0; col < gridSize; col++)
+            {
+                cells[row * gridSize + col] = new Icon(new Rectangle2D(
+                        GRID_X + col * (CELL_SIZE + CELL_GAP),
+                        GRID_Y + row * (CELL_SIZE + CELL_GAP), CELL_SIZE, CELL_SIZE),
+                        CELL_ICON_SIZE);
+            }
+        }
+        target = new Icon(TARGET, ICON_SIZE);
+
+        animationListener = this::onAnimationTick;
+        canvas.setOnMouseClicked(this::onMouseClicked);
+        markDirty(new Rectangle2D(0, 0, WIDTH, HEIGHT));
+    }
+
+    /**
+     * Get the canvas to put in the scene.
+     *
+     * @return Canvas
+     */
+    public Canvas getCanvas()
+    {
+        return canvas;
+    }
+
+    /**
+     * Read the current question, score and remaining questions from the controller,
+     * clear the grid and redraw what changed.
+     */
+    public void updateUi()
+    {
+        final List<Item> optionItems = gameController.getOptionItems();
+        if(optionItems.size() != options.length)
+        {
+            for(final Icon option : options)
+            {
+                setIcon(option, null);
+            }
+            options = layoutOptions(optionItems.size());
+        }
+        for(int i = 0; i < options.length; i++)
+        {
+            setIcon(options[i], i < optionItems.size() ? optionItems.get(i) : null);
+        }
+        setIcon(target, gameController.getCurrentItem());
+        for(final Icon cell : cells)
+        {
+            setIcon(cell, null);
+        }
+        setScoreText("Score: " + gameController.getScore(),
+                "Remaining Questions: " + gameController.getRemainingQuestions());
+        setFeedback("", Color.BLACK);
+        updateMatchPreview();
+        clearSelection();
+    }
+
+    /**
+     * Outline the target by how the grid compares to its recipe.
+     */
+    private void updateMatchPreview()
+    {
+        final Color color = Color.web(gameUi.getMatchPreviewColor());
+        if(!color.equals(previewColor))
+        {
+            previewColor = color;
+            markDirty(TARGET);
+        }
+    }
+
+    /**
+     * Show a feedback message in the bottom bar.
+     *
+     * @param text  Message, or an empty string to clear it
+     * @param color Text color
+     */
+    public void setFeedback(final String text, final Color color)
+    {
+        if(!text.equals(feedbackText) || !color.equals(feedbackColor))
+        {
+            feedbackText = text;
+            feedbackColor = color;
+            markDirty(FEEDBACK);
+        }
+    }
+
+    private void setScoreText(final String score, final String remaining)
+    {
+        if(!score.equals(scoreText))
+        {
+            scoreText = score;
+            markDirty(SCORE);
+        }
+        if(!remaining.equals(remainingText))
+        {
+            remainingText = remaining;
+            markDirty(REMAINING);
+        }
+    }
+
+    private void setIcon(final Icon icon, final Item item)
+    {
+        if(icon.item != item)
+        {
+            icon.item = item;
+            icon.sprite = item != null && item.getImagePath().endsWith(".gif") ?
+                    AnimatedSprite.get(item.getImagePath(), icon.size) : null;
+            icon.image = item != null && icon.sprite == null ?
+                    IconCache.get(item.getImagePath(), icon.size) : null;
+            icon.frame = icon.sprite == null ? -1 :
+                    icon.sprite.frameAt(AnimationClock.getInstance().getElapsedMillis());
+            markDirty(icon.bounds);
+            updateAnimation();
+        }
+    }
+
+    /**
+     * Lay out a centred row of option slots, at full size if they fit in the row and
+     * shrunk to fit otherwise.
+     *
+     * @param count Number of options
+     * @return Empty option slots
+     */
+    private static Icon[] layoutOptions(final int count)
+    {
+        final int size = (int) Math.min(ICON_SIZE,
+                (OPTIONS_MAX_WIDTH - (count - 1) * OPTION_GAP) / Math.max(count, 1));
+        final double rowWidth = count * size + (count - 1) * OPTION_GAP;
+        final Icon[] row = new Icon[count];
+        for(int i = 0; i < count; i++)
+        {
+            row[i] = new Icon(new Rectangle2D(
+                    (WIDTH - rowWidth) / 2 + i * (size + OPTION_GAP),
+                    OPTION_Y + (ICON_SIZE - size) / 2.0, size, size), size);
+        }
+        return row;
+    }
+
+    /**
+     * Hit-test a click and forward it to the controller.
+     *
+     * @param event Mouse event
+     */
+    private void onMouseClicked(final MouseEvent event)
+    {
+        final double x = event.getX();
+        final double y = event.getY();
+        final boolean primary = event.getButton() == MouseButton.PRIMARY;
+
+        for(final Icon option : options)
+        {
+            if(primary && option.item != null && option.bounds.contains(x, y))
+            {
+                selectedItem = option.item;
+                final ImageCursor cursor = gameUi.getCursor(selectedItem);
+                if(cursor != null)
+                {
+                    canvas.getScene().setCursor(cursor);
+                }
+                return;
+            }
+        }
+
+        final int gridSize = gameController.getGridSize();
+        for(int i = 0; i < cells.length; i++)
+        {
+            if(cells[i].bounds.contains(x, y))
+            {
+                final Item placed = primary ? selectedItem : null;
+                setIcon(cells[i], placed);
+                gameController.placeItemOnGrid(i % gridSize, i / gridSize,
+                        placed == null ? null : placed.getName());
+                updateMatchPreview();
+                clearSelection();
+                return;
+            }
+        }
+
+        if(!primary)
+        {
+            return;
+        }
+        if(TARGET.contains(x, y))
+        {
+            gameController.submitRecipe();
+        } else if(SKIP_BUTTON.contains(x, y))
+        {
+            gameController.skipQuestion();
+        } else if(CHAIN_BUTTON.contains(x, y))
+        {
+            gameController.startChainGame(3, DependencyGraph.Difficulty.MEDIUM);
+        } else if(BOOK_BUTTON.contains(x, y))
+        {
+            gameUi.openRecipeBook();
+        }
+    }
+
+    private void clearSelection()
+    {
+        selectedItem = null;
+        if(canvas.getScene() != null)
+        {
+            canvas.getScene().setCursor(Cursor.DEFAULT);
+        }
+    }
+
+    /**
+     * Register with the animation clock while animated icons are shown.
+     */
+    private void updateAnimation()
+    {
+        boolean anyAnimated = target.sprite != null;
+        for(final Icon icon : options)
+        {
+            anyAnimated |= icon.sprite != null;
+        }
+        for(final Icon icon : cells)
+        {
+            anyAnimated |= icon.sprite != null;
+        }
+        if(anyAnimated && !animating)
+        {
+            AnimationClock.getInstance().addTickListener(animationListener);
+        } else if(!anyAnimated && animating)
+        {
+            AnimationClock.getInstance().removeTickListener(animationListener);
+        }
+        animating = anyAnimated;
+    }
+
+    /**
+     * Mark animated icons whose frame changed as dirty. Nothing is redrawn while the
+     * window is hidden.
+     *
+     * @param elapsedMillis Clock time
+     */
+    private void onAnimationTick(final long elapsedMillis)
+    {
+        if(canvas.getScene() == null || canvas.getScene().getWindow() == null ||
+           !canvas.getScene().getWindow().isShowing())
+        {
+            return;
+        }
+        advance(target, elapsedMillis);
+        for(final Icon icon : options)
+        {
+            advance(icon, elapsedMillis);
+        }
+        for(final Icon icon : cells)
+        {
+            advance(icon, elapsedMillis);
+        }
+    }
+
+    private void advance(final Icon icon, final long elapsedMillis)
+    {
+        if(icon.sprite != null)
+        {
+            final int frame = icon.sprite.frameAt(elapsedMillis);
+            if(frame != icon.frame)
+            {
+                icon.frame = frame;
+                markDirty(icon.bounds);
+            }
+        }
+    }
+
+    /**
+     * Queue a region for redrawing on the next pulse.
+     *
+     * @param region Region in canvas coordinates
+     */
+    private void markDirty(final Rectangle2D region)
+    {
+        dirtyRegions.add(region);
+        if(!redrawScheduled)
+        {
+            redrawScheduled = true;
+            Platform.runLater(this::redrawDirtyRegions);
+        }
+    }
+
+    private void redrawDirtyRegions()
+    {
+        redrawScheduled = false;
+        final List<Rectangle2D> regions = new ArrayList<>(dirtyRegions);
+        dirtyRegions.clear();
+        for(final Rectangle2D region : regions)
+        {
+            gc.save();
+            gc.beginPath();
+            gc.rect(region.getMinX(), region.getMinY(), region.getWidth(),
+                    region.getHeight());
+            gc.clip();
+            draw(region);
+            gc.restore();
+        }
+    }
+
+    /**
+     * Draw every element that intersects a region. The caller clips to the region.
+     *
+     * @param region Region to draw
+     */
+    private void draw(final Rectangle2D region)
+    {
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(region.getMinX(), region.getMinY(), region.getWidth(),
+                region.getHeight());
+
+        final Rectangle2D board =
+                new Rectangle2D(BOARD_X, BOARD_Y, BOARD_WIDTH, BOARD_HEIGHT);
+        if(board.intersects(region))
+        {
+            final Image background = IconCache.get("images/background.png",
+                    (int) BOARD_WIDTH, (int) BOARD_HEIGHT);
+            if(background != null)
+            {
+                gc.drawImage(background, BOARD_X, BOARD_Y);
+            }
+        }
+        for(final Icon cell : cells)
+        {
+            drawIcon(cell, region);
+        }
+        drawIcon(target, region);
+        if(TARGET.intersects(region) && previewColor.getOpacity() > 0)
+        {
+            gc.setStroke(previewColor);
+            gc.setLineWidth(2);
+            gc.strokeRect(TARGET.getMinX() + 1, TARGET.getMinY() + 1,
+                    TARGET.getWidth() - 2, TARGET.getHeight() - 2);
+        }
+        for(final Icon option : options)
+        {
+            drawIcon(option, region);
+        }
+
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setTextAlign(TextAlignment.LEFT);
+        drawText(scoreText, SCORE, Color.BLACK, region);
+        drawText(remainingText, REMAINING, Color.BLACK, region);
+        drawText(feedbackText, FEEDBACK, feedbackColor, region);
+        drawButton("Skip", SKIP_BUTTON, region);
+        drawButton("Chain Mode", CHAIN_BUTTON, region);
+        drawButton("Recipe Book", BOOK_BUTTON, region);
+    }
+
+    private void drawIcon(final Icon icon, final Rectangle2D region)
+    {
+        if(icon.item == null || !icon.bounds.intersects(region))
+        {
+            return;
+        }
+        final double x = icon.bounds.getMinX() + (icon.bounds.getWidth() - icon.size) / 2;
+        final double y =
+                icon.bounds.getMinY() + (icon.bounds.getHeight() - icon.size) / 2;
+        if(icon.sprite != null)
+        {
+            final Rectangle2D frame = icon.sprite.getViewport(icon.frame);
+            gc.drawImage(icon.sprite.getImage(), frame.getMinX(), frame.getMinY(),
+                    frame.getWidth(), frame.getHeight(), x, y, icon.size, icon.size);
+        } else if(icon.image != null)
+        {
+            gc.drawImage(icon.image, x, y);
+        }
+    }
+
+    private void drawText(final String text, final Rectangle2D bounds, final Color color,
+                          final Rectangle2D region)
+    {
+        if(bounds.intersects(region))
+        {
+            gc.setFill(color);
+            gc.fillText(text, bounds.getMinX(),
+                    bounds.getMinY() + bounds.getHeight() / 2);
+        }
+    }
+
+    private void drawButton(final String text, final Rectangle2D bounds,
+                            final Rectangle2D region)
+    {
+        if(bounds.intersects(region))
+        {
+            gc.setFill(BUTTON_COLOR);
+            gc.fillRoundRect(bounds.getMinX(), bounds.getMinY(), bounds.getWidth(),
+                    bounds.getHeight(), 6, 6);
+            gc.setStroke(Color.GRAY);
+            gc.strokeRoundRect(bounds.getMinX() + 0.5, bounds.getMinY() + 0.5,
+                    bounds.getWidth() - 1, bounds.getHeight() - 1, 6, 6);
+            gc.setFill(Color.BLACK);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.fillText(text, bounds.getMinX() + bounds.getWidth() / 2,
+                    bounds.getMinY() + bounds.getHeight() / 2);
+            gc.setTextAlign(TextAlignment.LEFT);
+        }
+    }
+
+    /**
+     * A slot that shows one item icon.
+     */
+    private static final class Icon {
+        private final Rectangle2D bounds;
+        private final int size;
+        private Item item;
+        private Image image;
+        private AnimatedSprite sprite;
+        private int frame = -1;
+
+        private Icon(final Rectangle2D bounds, final int size)
+        {
+            this.bounds = bounds;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One version of the item catalog together with everything derived from it: its tags,
+ * the question generator, crafting tree resolver and search indexes. A catalog is never
+ * changed after it is built. Reloading builds a complete new catalog next to the old
+ * one and swaps the reference, so readers never lock and never see a half-built
+ * version, and games keep the questions of the version they started with. The
+ * resolver and indexes are built on first use, so a catalog nobody searches doesn't
+ * pay for them.
+ * <p>
+ * The items are either lists of objects on the heap or views of a
+ * {@link PackedCatalog}. A packed catalog looks items up by name in its own hash table,
+ * and the indexes read the items they find back through the views, so only the index
+ * structures stay on the heap, not the items and recipes.
+ *
+ * @author Jiarui Xing
+ */
+public final class Catalog {
+    private final int version;
+    private final TagRegistry tags;
+    private final List<MaterialItem> materialItems;
+    private final List<CraftingItem> craftingItems;
+    private final boolean packed;
+    private final QuestionGenerator questionGenerator;
+
+    // Built on first use
+    private volatile CraftingTreeResolver craftingTreeResolver;
+    private volatile IngredientIndex ingredientIndex;
+    private volatile NameIndex nameIndex;
+
+    // Chain tables for each grid size, built on first use of chain mode
+    private final Map<Integer, DependencyGraph> dependencyGraphs;
+
+    /**
+     * Build a catalog and its indexes.
+     *
+     * @param version       Version number, increasing with every reload
+     * @param tags          Tags the recipes were built with; not changed afterwards
+     * @param materialItems Material items
+     * @param craftingItems Crafting items with their recipes
+     * @throws IllegalArgumentException if a recipe uses an item that isn't in the
+     *                                  catalog
+     */
+    public Catalog(final int version, final TagRegistry tags,
+                   final List<MaterialItem> materialItems,
+                   final List<CraftingItem> craftingItems)
+    {
+        this.version = version;
+        this.tags = tags;
+        this.materialItems = List.copyOf(materialItems);
+        this.craftingItems = List.copyOf(craftingItems);
+        packed = false;
+        questionGenerator = new QuestionGenerator(this.materialItems, this.craftingItems);
+        checkIngredients();
+        dependencyGraphs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Build a catalog reading its items from a packed catalog.
+     *
+     * @param version Version number, increasing with every reload
+     * @param tags    Tags the recipes were built with; not changed afterwards
+     * @param items   Packed items with their recipes
+     * @throws IllegalArgumentException if a recipe uses an item that isn't in the
+     *                                  catalog
+     */
+    public Catalog(final int version, final TagRegistry tags, final PackedCatalog items)
+    {
+        this.version = version;
+        this.tags = tags;
+        materialItems = items.getMaterialItems();
+        craftingItems = items.getCraftingItems();
+        packed = true;
+        questionGenerator = new QuestionGenerator(materialItems, craftingItems,
+                items::getItemByName);
+        checkIngredients();
+        dependencyGraphs = new ConcurrentHashMap<>();
+    }
+
+    private void checkIngredients()
+    {
+        for(final CraftingItem item : craftingItems)
+        {
+            for(final Set<String> alternatives : item.getRecipe().getIngredients())
+            {
+                for(final String ingredient : alternatives)
+                {
+                    if(questionGenerator.getItemByName(ingredient) == null)
+                    {
+                        throw new IllegalArgumentException("Unknown ingredient in the " +
+                                "recipe of " + item.getName() + ": " + ingredient);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the version number of the catalog.
+     *
+     * @return Version, 1 for the catalog loaded at startup
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get the tags of the catalog.
+     *
+     * @return TagRegistry the recipes were built with
+     */
+    public TagRegistry getTags()
+    {
+        return tags;
+    }
+
+    /**
+     * Check whether the items are read from a packed catalog.
+     *
+     * @return True if the items are views of a PackedCatalog
+     */
+    public boolean isPacked()
+    {
+        return packed;
+    }
+
+    /**
+     * Get all material items.
+     *
+     * @return Unmodifiable list of material items
+     */
+    public List<MaterialItem> getMaterialItems()
+    {
+        return materialItems;
+    }
+
+    /**
+     * Get all crafting items.
+     *
+     * @return Unmodifiable list of crafting items
+     */
+    public List<CraftingItem> getCraftingItems()
+    {
+        return craftingItems;
+    }
+
+    /**
+     * Get an item by its name. Material items are preferred; crafted intermediates
+     * such as Book are returned when there is no material of that name.
+     *
+     * @param name Item name
+     * @return Item object, or null if no item has this name
+     */
+    public Item getItemByName(final String name)
+    {
+        return questionGenerator.getItemByName(name);
+    }
+
+    /**
+     * Get the crafting items whose recipes fit on a grid.
+     *
+     * @param gridSize Grid size
+     * @return List of crafting items
+     */
+    public List<CraftingItem> getFittingItems(final int gridSize)
+    {
+        final List<CraftingItem> fitting = new ArrayList<>();
+        for(final CraftingItem item : craftingItems)
+        {
+            if(item.getRecipe().fitsIn(gridSize))
+            {
+                fitting.add(item);
+            }
+        }
+        return fitting;
+    }
+
+    /**
+     * Get the dependency graph of the recipes that fit on a grid, building it on
+     * first use.
+     *
+     * @param gridSize Grid size
+     * @return DependencyGraph for the grid size
+     */
+    public DependencyGraph getDependencyGraph(final int gridSize)
+    {
+        return dependencyGraphs.computeIfAbsent(gridSize,
+                size -> new DependencyGraph(getFittingItems(size)));
+    }
+
+    /**
+     * Get the question generator over this catalog.
+     *
+     * @return QuestionGenerator
+     */
+    public QuestionGenerator getQuestionGenerator()
+    {
+        return questionGenerator;
+    }
+
+    /**
+     * Get the resolver for the raw materials needed to craft an item.
+     *
+     * @return CraftingTreeResolver over all crafting items
+     */
+    public CraftingTreeResolver getCraftingTreeResolver()
+    {
+        CraftingTreeResolver resolver = craftingTreeResolver;
+        if(resolver == null)
+        {
+            synchronized(this)
+            {
+                resolver = craftingTreeResolver;
+                if(resolver == null)
+                {
+                    resolver = new CraftingTreeResolver(craftingItems);
+                    craftingTreeResolver = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Get the index of which crafting items use which ingredients.
+     *
+     * @return IngredientIndex over all crafting items
+     */
+    public IngredientIndex getIngredientIndex()
+    {
+        IngredientIndex index = ingredientIndex;
+        if(index == null)
+        {
+            synchronized(this)
+            {
+                index = ingredientIndex;
+                if(index == null)
+                {
+                    index = new IngredientIndex(craftingItems);
+                    ingredientIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the search index over the names of all items.
+     *
+     * @return NameIndex over the catalog
+     */
+    public NameIndex getNameIndex()
+    {
+        NameIndex index = nameIndex;
+        if(index == null)
+        {
+            synchronized(this)
+            {
+                index = nameIndex;
+                if(index == null)
+                {
+                    index = new NameIndex(new AbstractList<Item>() {
+                        @Override
+                        public Item get(final int i)
+                        {
+                            return i < materialItems.size() ? materialItems.get(i) :
+                                    craftingItems.get(i - materialItems.size());
+                        }
+
+                        @Override
+                        public int size()
+                        {
+                            return materialItems.size() + craftingItems.size();
+                        }
+                    });
+                    nameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Changes that turn one catalog manifest into another: the keys of removed entries
+ * and the content of added or changed ones. Entries the receiver already has are
+ * never included, so the size of a delta depends on what changed, not on the size
+ * of the catalog. The encoded form is deflated.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogDelta {
+    private final int version;
+    private final long targetRootHash;
+    private final List<String> removed;
+    private final Map<String, byte[]> changed;
+
+    private CatalogDelta(final int version, final long targetRootHash,
+                         final List<String> removed, final Map<String, byte[]> changed)
+    {
+        this.version = version;
+        this.targetRootHash = targetRootHash;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Find the changes from some entry hashes to a manifest.
+     *
+     * @param base     Content hashes the receiver has, by key
+     * @param target   Manifest to reach
+     * @param contents Content of an entry of the target by key
+     * @return Delta
+     */
+    public static CatalogDelta between(final Map<String, Long> base,
+                                       final CatalogManifest target,
+                                       final Function<String, byte[]> contents)
+    {
+        final List<String> removed = new ArrayList<>();
+        for(final String key : base.keySet())
+        {
+            if(!target.getHashes().containsKey(key))
+            {
+                removed.add(key);
+            }
+        }
+        final Map<String, byte[]> changed = new LinkedHashMap<>();
+        for(final Map.Entry<String, Long> entry : target.getHashes().entrySet())
+        {
+            if(!entry.getValue().equals(base.get(entry.getKey())))
+            {
+                changed.put(entry.getKey(), contents.apply(entry.getKey()));
+            }
+        }
+        return new CatalogDelta(target.getVersion(), target.getRootHash(), removed,
+                changed);
+    }
+
+    /**
+     * Apply the delta to the manifest it was made for.
+     *
+     * @param base Manifest of the receiver
+     * @return Manifest after the changes
+     * @throws IllegalArgumentException if the result is not the manifest the delta
+     *                                  was made for, e.g. because the base differs
+     */
+    public CatalogManifest applyTo(final CatalogManifest base)
+    {
+        final Map<String, Long> hashes = new HashMap<>(base.getHashes());
+        for(final String key : removed)
+        {
+            hashes.remove(key);
+        }
+        for(final Map.Entry<String, byte[]> entry : changed.entrySet())
+        {
+            hashes.put(entry.getKey(), CatalogManifest.hash(entry.getValue()));
+        }
+        final CatalogManifest result = new CatalogManifest(version, hashes);
+        if(result.getRootHash() != targetRootHash)
+        {
+            throw new IllegalArgumentException(
+                    "Catalog delta doesn't match the catalog.");
+        }
+        return result;
+    }
+
+    /**
+     * Get the keys of the removed entries.
+     *
+     * @return Unmodifiable list of keys
+     */
+    public List<String> getRemoved()
+    {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Get the added and changed entries.
+     *
+     * @return Unmodifiable map of contents by key
+     */
+    public Map<String, byte[]> getChanged()
+    {
+        return Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Check if the delta changes nothing.
+     *
+     * @return True if nothing was removed, added or changed
+     */
+    public boolean isEmpty()
+    {
+        return removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Encode the delta.
+     *
+     * @return Deflated delta
+     */
+    public byte[] toBytes()
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try(final DataOutputStream out =
+                    new DataOutputStream(new DeflaterOutputStream(bytes)))
+        {
+            out.writeInt(version);
+            out.writeLong(targetRootHash);
+            out.writeInt(removed.size());
+            for(final String key : removed)
+            {
+                out.writeUTF(key);
+            }
+            out.writeInt(changed.size());
+            for(final Map.Entry<String, byte[]> entry : changed.entrySet())
+            {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } catch(IOException e)
+        {
+            // Not thrown by in-memory streams
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a delta written by {@link #toBytes()}.
+     *
+     * @param data Deflated delta
+     * @return Delta
+     * @throws IOException if the data is not a delta
+     */
+    public static CatalogDelta fromBytes(final byte[] data) throws IOException
+    {
+        try(final DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(data))))
+        {
+            final int version = in.readInt();
+            final long targetRootHash = in.readLong();
+            final List<String> removed = new ArrayList<>();
+            for(int i = in.readInt(); i > 0; i--)
+            {
+                removed.add(in.readUTF());
+            }
+            final Map<String, byte[]> changed = new LinkedHashMap<>();
+            for(int i = in.readInt(); i > 0; i--)
+            {
+                final String key = in.readUTF();
+                final byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                changed.put(key, content);
+            }
+            return new CatalogDelta(version, targetRootHash, removed, changed);
+        }
+    }
+}
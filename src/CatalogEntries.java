@@ -0,0 +1,366 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Splits a catalog into small independent entries for syncing, and rebuilds item
+ * lists from them. Every material, crafting item, tag and image is one entry, so a
+ * change to one item changes one entry. Keys are the kind and the name:
+ * <pre>
+ * material/Wood Planks          image path
+ * crafting/Stick                image path, recipe
+ * tag/#purpur_blocks            member names
+ * image/images/stick.png        image file contents
+ * order/crafting/[first name]   names of a run of items, first name of the next run
+ * </pre>
+ * Recipe slots that are a tag refer to the tag entry by name.
+ * <p>
+ * Item entries don't hold their position, so adding or removing an item doesn't
+ * change the entries after it. The order of each list, which the question generator
+ * depends on, is kept in runs of items linked in sequence; the first run's key has
+ * no name. A run ends before every item whose name hashes to a boundary, so where
+ * the runs split depends only on the names around them, and adding or removing an
+ * item changes one or two runs, however long the catalog is.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogEntries {
+    public static final String MATERIAL = "material/";
+    public static final String CRAFTING = "crafting/";
+    public static final String TAG = "tag/";
+    public static final String IMAGE = "image/";
+    public static final String ORDER = "order/";
+
+    // One name in this many starts a new run of the order; about the mean run length
+    private static final int RUN_DIVISOR = 32;
+
+    private CatalogEntries()
+    {
+    }
+
+    /**
+     * Encode the items of a catalog, without images.
+     *
+     * @param catalog Catalog
+     * @return Entries by key
+     */
+    public static Map<String, byte[]> encode(final Catalog catalog)
+    {
+        final Map<String, byte[]> entries = new HashMap<>();
+        for(final MaterialItem item : catalog.getMaterialItems())
+        {
+            entries.put(MATERIAL + item.getName(), write(out ->
+                    out.writeUTF(item.getImagePath())));
+        }
+        encodeOrder(MATERIAL, catalog.getMaterialItems(), entries);
+        for(final CraftingItem item : catalog.getCraftingItems())
+        {
+            final Recipe recipe = item.getRecipe();
+            entries.put(CRAFTING + item.getName(), write(out ->
+            {
+                out.writeUTF(item.getImagePath());
+                out.writeBoolean(recipe instanceof ShapelessRecipe);
+                out.writeByte(recipe.getGridSize());
+                out.writeShort(recipe.getOutputCount());
+                if(recipe instanceof ShapedRecipe shaped)
+                {
+                    out.writeShort(shaped.getRecipeMap().size());
+                    for(final Map.Entry<Recipe.Position, Set<String>> slot :
+                            shaped.getRecipeMap().entrySet())
+                    {
+                        out.writeByte(slot.getKey().getX());
+                        out.writeByte(slot.getKey().getY());
+                        writeSlot(out, slot.getValue(), entries);
+                    }
+                } else
+                {
+                    out.writeShort(recipe.getIngredients().size());
+                    for(final Set<String> alternatives : recipe.getIngredients())
+                    {
+                        out.writeByte(0);
+                        out.writeByte(0);
+                        writeSlot(out, alternatives, entries);
+                    }
+                }
+            }));
+        }
+        encodeOrder(CRAFTING, catalog.getCraftingItems(), entries);
+        for(final ItemTag tag : catalog.getTags().getTags())
+        {
+            putTag(tag, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Write the order of an item list as linked runs.
+     */
+    private static void encodeOrder(final String kind, final List<? extends Item> items,
+                                    final Map<String, byte[]> entries)
+    {
+        int start = 0;
+        for(int end = 1; end <= items.size(); end++)
+        {
+            if(end < items.size() && !startsRun(items.get(end).getName()))
+            {
+                continue;
+            }
+            final List<? extends Item> run = items.subList(start, end);
+            final String next = end < items.size() ? items.get(end).getName() : null;
+            entries.put(ORDER + kind + (start == 0 ? "" : run.get(0).getName()),
+                    write(out ->
+                    {
+                        out.writeInt(run.size());
+                        for(final Item item : run)
+                        {
+                            out.writeUTF(item.getName());
+                        }
+                        out.writeBoolean(next != null);
+                        if(next != null)
+                        {
+                            out.writeUTF(next);
+                        }
+                    }));
+            start = end;
+        }
+    }
+
+    private static boolean startsRun(final String name)
+    {
+        return Long.remainderUnsigned(
+                CatalogManifest.hash(name.getBytes(StandardCharsets.UTF_8)),
+                RUN_DIVISOR) == 0;
+    }
+
+    /**
+     * Get the image files the items of a catalog use.
+     *
+     * @param catalog Catalog
+     * @return Image paths, each once
+     */
+    public static Set<String> getImagePaths(final Catalog catalog)
+    {
+        final Set<String> paths = new LinkedHashSet<>();
+        for(final Item item : catalog.getMaterialItems())
+        {
+            paths.add(item.getImagePath());
+        }
+        for(final Item item : catalog.getCraftingItems())
+        {
+            paths.add(item.getImagePath());
+        }
+        return paths;
+    }
+
+    /**
+     * Read an image file as an entry.
+     *
+     * @param imagePath Image path
+     * @return Entry, or null if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public static byte[] readImage(final String imagePath) throws IOException
+    {
+        final Path file = Path.of(imagePath);
+        return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+    }
+
+    /**
+     * Rebuild item lists from entries. Tags are defined first, so recipes can use them.
+     *
+     * @param entries       Entries by key; image entries are not needed
+     * @param imageFiles    Local file of an image path, e.g. in a download cache
+     * @param tags          Receives the tags the recipes refer to
+     * @param materialItems Receives the material items in catalog order
+     * @param craftingItems Receives the crafting items in catalog order
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static void decode(final Map<String, byte[]> entries,
+                              final Function<String, String> imageFiles,
+                              final TagRegistry tags,
+                              final List<MaterialItem> materialItems,
+                              final List<CraftingItem> craftingItems)
+    {
+        final Map<String, MaterialItem> materials = new HashMap<>();
+        final Map<String, CraftingItem> crafting = new HashMap<>();
+        try
+        {
+            for(final Map.Entry<String, byte[]> entry : entries.entrySet())
+            {
+                if(entry.getKey().startsWith(TAG))
+                {
+                    final DataInputStream in = read(entry.getValue());
+                    final String[] members = new String[in.readShort()];
+                    for(int i = 0; i < members.length; i++)
+                    {
+                        members[i] = in.readUTF();
+                    }
+                    tags.define(entry.getKey().substring(TAG.length()), members);
+                }
+            }
+            for(final Map.Entry<String, byte[]> entry : entries.entrySet())
+            {
+                final String key = entry.getKey();
+                if(key.startsWith(MATERIAL))
+                {
+                    final String name = key.substring(MATERIAL.length());
+                    final String imagePath =
+                            imageFiles.apply(read(entry.getValue()).readUTF());
+                    materials.put(name, ItemFactory.createMaterialItem(name, imagePath));
+                } else if(key.startsWith(CRAFTING))
+                {
+                    final String name = key.substring(CRAFTING.length());
+                    final DataInputStream in = read(entry.getValue());
+                    final String imagePath = imageFiles.apply(in.readUTF());
+                    final Recipe recipe = readRecipe(in, tags);
+                    crafting.put(name,
+                            ItemFactory.createCraftingItem(name, imagePath, recipe));
+                }
+            }
+            materialItems.addAll(decodeOrder(entries, MATERIAL, materials));
+            craftingItems.addAll(decodeOrder(entries, CRAFTING, crafting));
+        } catch(IOException e)
+        {
+            throw new IllegalArgumentException("Truncated catalog entry.", e);
+        }
+    }
+
+    /**
+     * Put items in catalog order by following the runs of their list.
+     *
+     * @param byName Items of the list by name; emptied
+     */
+    private static <T> List<T> decodeOrder(final Map<String, byte[]> entries,
+                                           final String kind, final Map<String, T> byName)
+            throws IOException
+    {
+        final List<T> ordered = new ArrayList<>(byName.size());
+        String key = ORDER + kind;
+        while(key != null)
+        {
+            final byte[] run = entries.get(key);
+            if(run == null)
+            {
+                if(ordered.isEmpty() && byName.isEmpty())
+                {
+                    break;
+                }
+                throw new IllegalArgumentException("Missing catalog order entry: " + key);
+            }
+            final DataInputStream in = read(run);
+            final int length = in.readInt();
+            if(length <= 0)
+            {
+                throw new IllegalArgumentException("Empty catalog order entry: " + key);
+            }
+            for(int i = 0; i < length; i++)
+            {
+                final String name = in.readUTF();
+                final T item = byName.remove(name);
+                if(item == null)
+                {
+                    throw new IllegalArgumentException(
+                            "Catalog order names an unknown or repeated item: " + name);
+                }
+                ordered.add(item);
+            }
+            key = in.readBoolean() ? ORDER + kind + in.readUTF() : null;
+        }
+        if(!byName.isEmpty())
+        {
+            throw new IllegalArgumentException(
+                    "Catalog order leaves out " + byName.size() + " items.");
+        }
+        return ordered;
+    }
+
+    private static Recipe readRecipe(final DataInputStream in, final TagRegistry tags)
+            throws IOException
+    {
+        final boolean shapeless = in.readBoolean();
+        final int gridSize = in.readByte();
+        final Recipe recipe = shapeless ? new ShapelessRecipe(gridSize, tags) :
+                new ShapedRecipe(gridSize, tags);
+        final int outputCount = in.readShort();
+        for(int s = in.readShort(); s > 0; s--)
+        {
+            final int x = in.readByte();
+            final int y = in.readByte();
+            final String[] names = new String[in.readByte()];
+            for(int n = 0; n < names.length; n++)
+            {
+                names[n] = in.readUTF();
+            }
+            if(recipe instanceof ShapedRecipe shaped)
+            {
+                shaped.addItem(x, y, names);
+            } else
+            {
+                ((ShapelessRecipe) recipe).addIngredient(names);
+            }
+        }
+        recipe.setOutputCount(outputCount);
+        return recipe;
+    }
+
+    /**
+     * Write the alternatives of a slot. A tag is written as its name, and its members
+     * become an entry of their own.
+     */
+    private static void writeSlot(final DataOutputStream out,
+                                  final Set<String> alternatives,
+                                  final Map<String, byte[]> entries) throws IOException
+    {
+        if(alternatives instanceof ItemTag tag)
+        {
+            // A slot of just the tag name resolves to the tag again
+            out.writeByte(1);
+            out.writeUTF(tag.getName());
+            putTag(tag, entries);
+            return;
+        }
+        out.writeByte(alternatives.size());
+        for(final String name : alternatives)
+        {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void putTag(final ItemTag tag, final Map<String, byte[]> entries)
+    {
+        entries.computeIfAbsent(TAG + tag.getName(), key -> write(out ->
+        {
+            out.writeShort(tag.size());
+            for(final String member : tag)
+            {
+                out.writeUTF(member);
+            }
+        }));
+    }
+
+    private static byte[] write(final EntryWriter writer)
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try(final DataOutputStream out = new DataOutputStream(bytes))
+        {
+            writer.write(out);
+        } catch(IOException e)
+        {
+            // Not thrown by in-memory streams
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream read(final byte[] entry)
+    {
+        return new DataInputStream(new ByteArrayInputStream(entry));
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
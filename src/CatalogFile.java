@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads catalog additions and fixes from a text file, so recipes can be changed while
+ * the game is running. Each line is one entry; fields are separated by '|', empty
+ * lines and lines starting with '#' are ignored:
+ * <pre>
+ * material Wood Planks | images/wood_planks.png
+ * tag #purpur_blocks | Purpur Block, Purpur Pillar
+ * shaped Stick | images/stick.png | 4 | 0,0 = Wood Planks; 0,-1 = Wood Planks
+ * shapeless Book | images/book.png | 1 | Paper; Paper; Paper; Leather
+ * </pre>
+ * Shaped slots are "x,y = items" on a 3x3 grid centred on 0,0, shapeless slots are
+ * just the items. Alternatives within a slot are separated by ',' and may be tags. An
+ * entry with the name of an existing item replaces it. Every ingredient must be an
+ * item of the catalog once the file is applied.
+ * <p>
+ * Tags are applied before any items, so that a tag the file redefines also changes
+ * the built-in recipes that refer to it: define the built-in tags, then
+ * {@link #defineTags}, then build the built-in items and {@link #apply} the rest.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogFile {
+    private final Path file;
+    private final List<String> lines;
+
+    // Line number of the last entry of each name, for errors found after parsing
+    private final Map<String, Integer> entryLines;
+
+    private CatalogFile(final Path file, final List<String> lines)
+    {
+        this.file = file;
+        this.lines = lines;
+        entryLines = new HashMap<>();
+        for(int i = 0; i < lines.size(); i++)
+        {
+            final String line = lines.get(i).trim();
+            final int space = line.indexOf(' ');
+            if(space > 0 && line.charAt(0) != '#')
+            {
+                final int bar = line.indexOf('|', space);
+                entryLines.put(line.substring(space + 1, bar < 0 ? line.length() : bar)
+                        .trim(), i + 1);
+            }
+        }
+    }
+
+    /**
+     * Read a catalog file.
+     *
+     * @param file Catalog file; a file that doesn't exist has no entries
+     * @return Entries of the file
+     * @throws IOException if the file can't be read
+     */
+    public static CatalogFile read(final Path file) throws IOException
+    {
+        return new CatalogFile(file, Files.exists(file) ?
+                Files.readAllLines(file, StandardCharsets.UTF_8) : List.of());
+    }
+
+    /**
+     * Define the tags of the file, in file order.
+     *
+     * @param tags Tags of the catalog being built
+     * @throws IllegalArgumentException if a tag line is malformed
+     */
+    public void defineTags(final TagRegistry tags)
+    {
+        applyLines(true, tags, null, null);
+    }
+
+    /**
+     * Apply the item entries of the file to lists of items.
+     *
+     * @param tags          Tags of the catalog being built, already defined
+     * @param materialItems Material items to add to or replace in
+     * @param craftingItems Crafting items to add to or replace in
+     * @throws IllegalArgumentException if a line is malformed or a recipe uses an
+     *                                  item that isn't in the catalog
+     */
+    public void apply(final TagRegistry tags, final List<MaterialItem> materialItems,
+                      final List<CraftingItem> craftingItems)
+    {
+        applyLines(false, tags, materialItems, craftingItems);
+
+        // Entries may refer to items further down, so ingredients are checked last
+        final Set<String> known = new HashSet<>();
+        materialItems.forEach(item -> known.add(item.getName()));
+        craftingItems.forEach(item -> known.add(item.getName()));
+        for(final CraftingItem item : craftingItems)
+        {
+            for(final Set<String> alternatives : item.getRecipe().getIngredients())
+            {
+                for(final String ingredient : alternatives)
+                {
+                    if(!known.contains(ingredient))
+                    {
+                        throw unknownIngredient(item, alternatives, ingredient);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Report an unknown ingredient at the line of the tag or item that brought it in.
+     */
+    private IllegalArgumentException unknownIngredient(final CraftingItem item,
+                                                       final Set<String> alternatives,
+                                                       final String ingredient)
+    {
+        final Integer tagLine = alternatives instanceof ItemTag tag ?
+                entryLines.get(tag.getName()) : null;
+        final Integer line = tagLine != null ? tagLine : entryLines.get(item.getName());
+        final String message = "Unknown ingredient in the recipe of " + item.getName() +
+                               ": " + ingredient;
+        return new IllegalArgumentException(line == null ? file + ": " + message :
+                file + " line " + line + ": " + message);
+    }
+
+    private void applyLines(final boolean tagLines, final TagRegistry tags,
+                            final List<MaterialItem> materialItems,
+                            final List<CraftingItem> craftingItems)
+    {
+        for(int i = 0; i < lines.size(); i++)
+        {
+            final String line = lines.get(i).trim();
+            if(line.isEmpty() || line.charAt(0) == '#' ||
+               line.startsWith("tag ") != tagLines)
+            {
+                continue;
+            }
+            try
+            {
+                applyLine(line, tags, materialItems, craftingItems);
+            } catch(IllegalArgumentException | IndexOutOfBoundsException e)
+            {
+                throw new IllegalArgumentException(
+                        file + " line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void applyLine(final String line, final TagRegistry tags,
+                                  final List<MaterialItem> materialItems,
+                                  final List<CraftingItem> craftingItems)
+    {
+        final int space = line.indexOf(' ');
+        if(space < 0)
+        {
+            throw new IllegalArgumentException("Missing name.");
+        }
+        final String kind = line.substring(0, space);
+        final String[] fields = line.substring(space + 1).split("\\|");
+        for(int f = 0; f < fields.length; f++)
+        {
+            fields[f] = fields[f].trim();
+        }
+        final String name = fields[0];
+
+        switch(kind)
+        {
+            case "material" -> replace(materialItems,
+                    ItemFactory.createMaterialItem(name, field(fields, 1)));
+            case "tag" -> tags.define(name, split(field(fields, 1), ","));
+            case "shaped" ->
+            {
+                final ShapedRecipe recipe = new ShapedRecipe(tags);
+                for(final String slot : split(field(fields, 3), ";"))
+                {
+                    final int equals = slot.indexOf('=');
+                    final String[] position = slot.substring(0, Math.max(0, equals))
+                            .split(",");
+                    if(equals < 0 || position.length != 2)
+                    {
+                        throw new IllegalArgumentException(
+                                "Expected x,y = items: " + slot);
+                    }
+                    recipe.addItem(Integer.parseInt(position[0].trim()),
+                            Integer.parseInt(position[1].trim()),
+                            split(slot.substring(equals + 1), ","));
+                }
+                recipe.setOutputCount(Integer.parseInt(field(fields, 2)));
+                replace(craftingItems,
+                        ItemFactory.createCraftingItem(name, field(fields, 1), recipe));
+            }
+            case "shapeless" ->
+            {
+                final ShapelessRecipe recipe = new ShapelessRecipe(tags);
+                for(final String slot : split(field(fields, 3), ";"))
+                {
+                    recipe.addIngredient(split(slot, ","));
+                }
+                recipe.setOutputCount(Integer.parseInt(field(fields, 2)));
+                replace(craftingItems,
+                        ItemFactory.createCraftingItem(name, field(fields, 1), recipe));
+            }
+            default -> throw new IllegalArgumentException("Unknown entry: " + kind);
+        }
+    }
+
+    private static String field(final String[] fields, final int index)
+    {
+        if(index >= fields.length || fields[index].isEmpty())
+        {
+            throw new IllegalArgumentException("Missing field " + (index + 1) + ".");
+        }
+        return fields[index];
+    }
+
+    private static String[] split(final String text, final String separator)
+    {
+        final String[] parts = text.split(separator);
+        for(int i = 0; i < parts.length; i++)
+        {
+            parts[i] = parts[i].trim();
+        }
+        return parts;
+    }
+
+    /**
+     * Replace the item of the same name, or add the item if there is none.
+     */
+    private static <T extends Item> void replace(final List<T> items, final T item)
+    {
+        for(int i = 0; i < items.size(); i++)
+        {
+            if(items.get(i).getName().equals(item.getName()))
+            {
+                items.set(i, item);
+                return;
+            }
+        }
+        items.add(item);
+    }
+}
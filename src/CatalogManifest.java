@@ -0,0 +1,156 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content hashes of all entries of one catalog version, see {@link CatalogEntries}.
+ * Two manifests with the same root hash describe the same catalog, so a client that
+ * is up to date finds out by comparing one number, and one that is not only needs
+ * the entries whose hashes differ. Hashes are the first 64 bits of SHA-256.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogManifest {
+    private final int version;
+    private final SortedMap<String, Long> hashes;
+    private final long rootHash;
+
+    /**
+     * Create a manifest.
+     *
+     * @param version Catalog version
+     * @param hashes  Content hash of each entry by key
+     */
+    public CatalogManifest(final int version, final Map<String, Long> hashes)
+    {
+        this.version = version;
+        this.hashes = Collections.unmodifiableSortedMap(new TreeMap<>(hashes));
+
+        final MessageDigest digest = sha256();
+        final ByteBuffer hash = ByteBuffer.allocate(Long.BYTES);
+        for(final Map.Entry<String, Long> entry : this.hashes.entrySet())
+        {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(hash.clear().putLong(entry.getValue()).array());
+        }
+        rootHash = ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Create the manifest of a set of entries.
+     *
+     * @param version Catalog version
+     * @param entries Entries by key
+     * @return Manifest
+     */
+    public static CatalogManifest of(final int version, final Map<String, byte[]> entries)
+    {
+        final Map<String, Long> hashes = new HashMap<>();
+        for(final Map.Entry<String, byte[]> entry : entries.entrySet())
+        {
+            hashes.put(entry.getKey(), hash(entry.getValue()));
+        }
+        return new CatalogManifest(version, hashes);
+    }
+
+    /**
+     * Hash the content of an entry.
+     *
+     * @param content Entry content
+     * @return Content hash
+     */
+    public static long hash(final byte[] content)
+    {
+        return ByteBuffer.wrap(sha256().digest(content)).getLong();
+    }
+
+    /**
+     * Get the catalog version.
+     *
+     * @return Version
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get the hash of all entries together.
+     *
+     * @return Root hash
+     */
+    public long getRootHash()
+    {
+        return rootHash;
+    }
+
+    /**
+     * Get the content hashes of the entries.
+     *
+     * @return Unmodifiable map of hashes by key, sorted by key
+     */
+    public SortedMap<String, Long> getHashes()
+    {
+        return hashes;
+    }
+
+    /**
+     * Write the manifest.
+     *
+     * @param out Output
+     * @throws IOException if writing fails
+     */
+    public void write(final DataOutputStream out) throws IOException
+    {
+        out.writeInt(version);
+        out.writeLong(rootHash);
+        out.writeInt(hashes.size());
+        for(final Map.Entry<String, Long> entry : hashes.entrySet())
+        {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Read a manifest written by {@link #write}.
+     *
+     * @param in Input
+     * @return Manifest
+     * @throws IOException if reading fails or the manifest is damaged
+     */
+    public static CatalogManifest read(final DataInputStream in) throws IOException
+    {
+        final int version = in.readInt();
+        final long rootHash = in.readLong();
+        final Map<String, Long> hashes = new HashMap<>();
+        for(int i = in.readInt(); i > 0; i--)
+        {
+            hashes.put(in.readUTF(), in.readLong());
+        }
+        final CatalogManifest manifest = new CatalogManifest(version, hashes);
+        if(manifest.rootHash != rootHash)
+        {
+            throw new IOException("Catalog manifest is damaged.");
+        }
+        return manifest;
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e)
+        {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
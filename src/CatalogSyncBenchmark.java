@@ -0,0 +1,183 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Measures catalog sync over loopback against a catalog grown with synthetic recipes:
+ * a client starting with an empty cache, starting again with nothing changed, after
+ * a reload that changes a few items, after one that removes the first item and
+ * inserts a few, and after a server restart that forgets the versions clients have.
+ * Reports bytes received and time for each, and checks that the client's items
+ * match the server's.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded through
+ * the game controller: {@code java CatalogSyncBenchmark [synthetic items] [changes]}.
+ *
+ * @author Jiarui Xing
+ */
+public class CatalogSyncBenchmark {
+    private static final long SEED = 42;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Optional number of synthetic items and of items changed per reload
+     * @throws Exception if syncing fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int syntheticCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        final int changeCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        final Catalog base = GameController.getInstance(null).getCatalog();
+        final List<CraftingItem> crafting = new ArrayList<>(base.getCraftingItems());
+        final Random random = new Random(SEED);
+        for(int i = 0; i < syntheticCount; i++)
+        {
+            crafting.add(syntheticItem("Synthetic " + i, base, random, 1));
+        }
+        final AtomicReference<Catalog> current = new AtomicReference<>(
+                new Catalog(base.getVersion(), base.getTags(), base.getMaterialItems(),
+                        crafting));
+        System.out.printf("Catalog: %d materials, %d crafting items%n",
+                base.getMaterialItems().size(), crafting.size());
+
+        final Path cacheDir = Files.createTempDirectory("catalog-cache-");
+        final InetSocketAddress address =
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        CatalogSyncServer server = new CatalogSyncServer(current::get, address);
+        server.start();
+        try
+        {
+            InetSocketAddress serverAddress = new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), server.getPort());
+            run("Empty cache", cacheDir, serverAddress, current.get());
+            run("Nothing changed", cacheDir, serverAddress, current.get());
+
+            // Reload with a few recipes changed
+            for(int i = 0; i < changeCount; i++)
+            {
+                final int index = base.getCraftingItems().size() +
+                                  random.nextInt(syntheticCount);
+                crafting.set(index, syntheticItem(crafting.get(index).getName(), base,
+                        random, 2 + i));
+            }
+            current.set(new Catalog(current.get().getVersion() + 1,
+                    base.getTags(), base.getMaterialItems(), crafting));
+            run(changeCount + " items changed", cacheDir, serverAddress, current.get());
+
+            // Reload with items removed and inserted, moving every item after them
+            crafting.remove(base.getCraftingItems().size());
+            final int baseCount = base.getCraftingItems().size();
+            for(int i = 0; i < changeCount; i++)
+            {
+                crafting.add(baseCount + random.nextInt(syntheticCount),
+                        syntheticItem("Inserted " + i, base, random, 1));
+            }
+            current.set(new Catalog(current.get().getVersion() + 1,
+                    base.getTags(), base.getMaterialItems(), crafting));
+            run("1 removed, " + changeCount + " inserted", cacheDir, serverAddress,
+                    current.get());
+
+            // A restarted server only knows the newest version
+            for(int i = 0; i < changeCount; i++)
+            {
+                final int index = base.getCraftingItems().size() +
+                                  random.nextInt(syntheticCount);
+                crafting.set(index, syntheticItem(crafting.get(index).getName(), base,
+                        random, 100 + i));
+            }
+            current.set(new Catalog(current.get().getVersion() + 1,
+                    base.getTags(), base.getMaterialItems(), crafting));
+            server.stop();
+            server = new CatalogSyncServer(current::get, address);
+            server.start();
+            serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    server.getPort());
+            run("Server restarted, " + changeCount + " changed", cacheDir, serverAddress,
+                    current.get());
+        } finally
+        {
+            server.stop();
+            try(final Stream<Path> files = Files.walk(cacheDir))
+            {
+                files.sorted(Comparator.reverseOrder())
+                        .forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Start a client on the cache, sync and load, as a game client does on startup.
+     */
+    private static void run(final String title, final Path cacheDir,
+                            final InetSocketAddress server, final Catalog expected)
+            throws Exception
+    {
+        final long start = System.nanoTime();
+        final CatalogSyncClient client = new CatalogSyncClient(cacheDir);
+        final long received = client.sync(server);
+        final long synced = System.nanoTime();
+        final List<MaterialItem> materialItems = new ArrayList<>();
+        final List<CraftingItem> craftingItems = new ArrayList<>();
+        client.load(new TagRegistry(), materialItems, craftingItems);
+        final long loaded = System.nanoTime();
+
+        System.out.printf("%-32s %,12d bytes  sync %8.1f ms  load %8.1f ms  %s%n", title,
+                received, (synced - start) / 1e6, (loaded - synced) / 1e6,
+                matches(expected, materialItems, craftingItems) ? "match" : "MISMATCH");
+    }
+
+    /**
+     * Check that loaded items are the expected ones, ignoring where images are cached.
+     */
+    private static boolean matches(final Catalog expected,
+                                   final List<MaterialItem> materialItems,
+                                   final List<CraftingItem> craftingItems)
+    {
+        if(materialItems.size() != expected.getMaterialItems().size() ||
+           craftingItems.size() != expected.getCraftingItems().size())
+        {
+            return false;
+        }
+        for(int i = 0; i < craftingItems.size(); i++)
+        {
+            final Recipe loaded = craftingItems.get(i).getRecipe();
+            final Recipe recipe = expected.getCraftingItems().get(i).getRecipe();
+            if(!craftingItems.get(i).getName().equals(
+                    expected.getCraftingItems().get(i).getName()) ||
+               loaded.getOutputCount() != recipe.getOutputCount() ||
+               !new ArrayList<>(loaded.getIngredients()).equals(
+                       new ArrayList<>(recipe.getIngredients())))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a shapeless item from random materials of the catalog.
+     */
+    private static CraftingItem syntheticItem(final String name, final Catalog catalog,
+                                              final Random random, final int outputCount)
+    {
+        final List<MaterialItem> materials = catalog.getMaterialItems();
+        final ShapelessRecipe recipe = new ShapelessRecipe();
+        for(int i = 1 + random.nextInt(4); i > 0; i--)
+        {
+            recipe.addIngredient(
+                    materials.get(random.nextInt(materials.size())).getName());
+        }
+        recipe.setOutputCount(outputCount);
+        return ItemFactory.createCraftingItem(name,
+                materials.get(random.nextInt(materials.size())).getImagePath(), recipe);
+    }
+}
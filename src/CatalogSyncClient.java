@@ -0,0 +1,280 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a local copy of a remote catalog up to date, so a sync only downloads the
+ * entries that changed and starting up with an unchanged catalog costs one small
+ * exchange with the server. The manifest and the item entries are kept together in
+ * one file that is read in one go; images are used straight from the cache, each
+ * under its original file name in a directory named by its content hash, so checks
+ * on the file type and sprite sheet lookups by name work as on local images.
+ * <p>
+ * Images are written before the catalog file that refers to them, and each file is
+ * written under a temporary name first, so an interrupted sync leaves the previous
+ * copy usable. Not thread-safe.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogSyncClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final Path catalogFile;
+    private final Path imageDir;
+    private CatalogManifest manifest;
+
+    // Item entries by key; images are only in the manifest
+    private Map<String, byte[]> entries;
+
+    /**
+     * Open a cache, creating it if needed. A damaged cache is treated as an empty one.
+     *
+     * @param cacheDir Cache directory
+     * @throws IOException if the directory can't be created
+     */
+    public CatalogSyncClient(final Path cacheDir) throws IOException
+    {
+        catalogFile = cacheDir.resolve("catalog.bin");
+        imageDir = cacheDir.resolve("images");
+        Files.createDirectories(imageDir);
+
+        manifest = new CatalogManifest(0, Map.of());
+        entries = new HashMap<>();
+        if(Files.exists(catalogFile))
+        {
+            try
+            {
+                readCatalogFile();
+            } catch(IOException e)
+            {
+                System.err.println("Ignoring damaged catalog cache: " + catalogFile);
+                e.printStackTrace();
+                manifest = new CatalogManifest(0, Map.of());
+                entries = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Bring the cache up to date with a server.
+     *
+     * @param server Address of the catalog server
+     * @return Number of bytes received
+     * @throws IOException if the server can't be reached or sent a bad delta
+     */
+    public long sync(final InetSocketAddress server) throws IOException
+    {
+        final byte[] data;
+        try(final Socket socket = new Socket())
+        {
+            socket.connect(server, CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            final DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+
+            out.writeLong(manifest.getRootHash());
+            out.flush();
+            int status = in.readByte();
+            if(status == CatalogSyncServer.UP_TO_DATE)
+            {
+                return 1;
+            }
+            if(status == CatalogSyncServer.SEND_HASHES)
+            {
+                out.writeInt(manifest.getHashes().size());
+                for(final Map.Entry<String, Long> entry : manifest.getHashes().entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+                out.flush();
+                status = in.readByte();
+            }
+            if(status != CatalogSyncServer.DELTA)
+            {
+                throw new IOException("Unexpected reply from catalog server: " + status);
+            }
+            data = new byte[in.readInt()];
+            in.readFully(data);
+        }
+
+        final CatalogDelta delta = CatalogDelta.fromBytes(data);
+        final CatalogManifest updated;
+        try
+        {
+            updated = delta.applyTo(manifest);
+        } catch(IllegalArgumentException e)
+        {
+            throw new IOException(e.getMessage(), e);
+        }
+        final Map<String, byte[]> updatedEntries = new HashMap<>(entries);
+        updatedEntries.keySet().removeAll(delta.getRemoved());
+        for(final Map.Entry<String, byte[]> entry : delta.getChanged().entrySet())
+        {
+            if(entry.getKey().startsWith(CatalogEntries.IMAGE))
+            {
+                final Path file = imageFile(CatalogManifest.hash(entry.getValue()),
+                        entry.getKey().substring(CatalogEntries.IMAGE.length()));
+                if(!Files.exists(file))
+                {
+                    Files.createDirectories(file.getParent());
+                    writeAtomically(file, entry.getValue());
+                }
+            } else
+            {
+                updatedEntries.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(final DataOutputStream out = new DataOutputStream(bytes))
+        {
+            updated.write(out);
+            out.writeInt(updatedEntries.size());
+            for(final Map.Entry<String, byte[]> entry : updatedEntries.entrySet())
+            {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        writeAtomically(catalogFile, bytes.toByteArray());
+        manifest = updated;
+        entries = updatedEntries;
+        removeUnusedImages();
+        return 1 + Integer.BYTES + data.length;
+    }
+
+    /**
+     * Build item lists from the cache.
+     *
+     * @param tags          Receives the tags the recipes refer to
+     * @param materialItems Receives the material items in catalog order
+     * @param craftingItems Receives the crafting items in catalog order
+     * @throws IOException              if the cache is empty
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public void load(final TagRegistry tags, final List<MaterialItem> materialItems,
+                     final List<CraftingItem> craftingItems) throws IOException
+    {
+        if(entries.isEmpty())
+        {
+            throw new IOException("The catalog cache is empty.");
+        }
+        CatalogEntries.decode(entries, imagePath ->
+        {
+            final Long hash = manifest.getHashes().get(CatalogEntries.IMAGE + imagePath);
+            return hash == null ? imagePath : imageFile(hash, imagePath).toString();
+        }, tags, materialItems, craftingItems);
+    }
+
+    /**
+     * Get the manifest of the cached catalog.
+     *
+     * @return Manifest, empty before the first sync
+     */
+    public CatalogManifest getManifest()
+    {
+        return manifest;
+    }
+
+    /**
+     * Read the manifest and item entries, checking each entry against its hash.
+     */
+    private void readCatalogFile() throws IOException
+    {
+        try(final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(catalogFile))))
+        {
+            manifest = CatalogManifest.read(in);
+            for(int i = in.readInt(); i > 0; i--)
+            {
+                final String key = in.readUTF();
+                final byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                if(!Long.valueOf(CatalogManifest.hash(content))
+                        .equals(manifest.getHashes().get(key)))
+                {
+                    throw new IOException("Catalog entry is damaged: " + key);
+                }
+                entries.put(key, content);
+            }
+        }
+    }
+
+    /**
+     * Get the cache file of an image.
+     *
+     * @param hash      Content hash
+     * @param imagePath Path of the image on the server
+     * @return Original file name in the directory of the hash
+     */
+    private Path imageFile(final long hash, final String imagePath)
+    {
+        final String name = imagePath.substring(
+                Math.max(imagePath.lastIndexOf('/'), imagePath.lastIndexOf('\\')) + 1);
+        return imageDir.resolve(String.format("%016x", hash))
+                .resolve(name.isEmpty() || name.equals(".") || name.equals("..") ?
+                        "image" : name);
+    }
+
+    /**
+     * Delete cached images the manifest no longer refers to, and the directories
+     * they leave empty.
+     */
+    private void removeUnusedImages() throws IOException
+    {
+        final Set<Path> used = new HashSet<>();
+        for(final Map.Entry<String, Long> entry : manifest.getHashes().entrySet())
+        {
+            if(entry.getKey().startsWith(CatalogEntries.IMAGE))
+            {
+                used.add(imageFile(entry.getValue(),
+                        entry.getKey().substring(CatalogEntries.IMAGE.length())));
+            }
+        }
+        final List<Path> paths;
+        try(final Stream<Path> walk = Files.walk(imageDir))
+        {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for(final Path path : paths)
+        {
+            if(path.equals(imageDir))
+            {
+                continue;
+            }
+            if(!Files.isDirectory(path))
+            {
+                if(!used.contains(path))
+                {
+                    Files.deleteIfExists(path);
+                }
+            } else
+            {
+                try(final Stream<Path> children = Files.list(path))
+                {
+                    if(children.findAny().isEmpty())
+                    {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeAtomically(final Path file, final byte[] content)
+            throws IOException
+    {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
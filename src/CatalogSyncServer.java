@@ -0,0 +1,299 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Serves the current catalog to remote clients as deltas against what they have
+ * cached. One exchange per connection:
+ * <pre>
+ * client: root hash of its manifest
+ * server: UP_TO_DATE                        if the hashes are equal
+ *         DELTA length delta                if the client's manifest is a recent one
+ *         SEND_HASHES                       otherwise; the client answers with
+ *                                           count (key, content hash)... and the
+ *                                           server with DELTA length delta
+ * </pre>
+ * The manifests of recent versions are kept by root hash, so a client that was up to
+ * date before a reload sends eight bytes and receives only the changed entries. Each
+ * delta from a recent version is encoded once and shared by all clients asking for
+ * it. Clients whose version the server doesn't know, e.g. after a server restart,
+ * send their hashes instead and still receive only what differs.
+ * <p>
+ * The entries of a catalog version are built when the first client asks for it.
+ * Image files are read again only when their size or modification time changes.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded through
+ * the game controller: {@code java CatalogSyncServer [port] [host]}. The server
+ * listens on loopback unless a host is given, and follows catalog reloads.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogSyncServer {
+    static final int UP_TO_DATE = 0;
+    static final int DELTA = 1;
+    static final int SEND_HASHES = 2;
+
+    // Number of earlier versions clients can get a delta from without sending hashes
+    private static final int HISTORY_SIZE = 16;
+
+    private final Supplier<Catalog> catalogs;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+
+    // Entries of the catalog last served, with the deltas encoded for it so far
+    private Published published;
+
+    // Manifests of recently served versions by root hash, oldest first
+    private final Map<Long, CatalogManifest> history;
+
+    // Image entries by path, with the file size and modification time they were read at
+    private final Map<String, CachedImage> images;
+
+    /**
+     * Open a server.
+     *
+     * @param catalogs Supplies the current catalog
+     * @param address  Address to listen on; port 0 picks a free port
+     * @throws IOException if the port can't be opened
+     */
+    public CatalogSyncServer(final Supplier<Catalog> catalogs,
+                             final InetSocketAddress address) throws IOException
+    {
+        this.catalogs = catalogs;
+        server = new ServerSocket();
+        server.bind(address);
+        final AtomicInteger threadCount = new AtomicInteger();
+        connections = Executors.newCachedThreadPool(task ->
+        {
+            final Thread thread =
+                    new Thread(task, "catalog-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        history = new LinkedHashMap<>();
+        images = new HashMap<>();
+    }
+
+    /**
+     * Start accepting clients. Each connection is served on its own thread.
+     */
+    public void start()
+    {
+        final Thread acceptor = new Thread(this::accept, "catalog-sync-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Stop accepting clients and close the open connections.
+     */
+    public void stop()
+    {
+        try
+        {
+            server.close();
+        } catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * Get the port the server listens on.
+     *
+     * @return Port
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    private void accept()
+    {
+        try
+        {
+            while(true)
+            {
+                final Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        } catch(IOException e)
+        {
+            // Stopped
+        }
+    }
+
+    private void serve(final Socket socket)
+    {
+        try(socket; final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream())))
+        {
+            final long rootHash = in.readLong();
+            final Published current = publish();
+            if(rootHash == current.manifest.getRootHash())
+            {
+                out.writeByte(UP_TO_DATE);
+                out.flush();
+                return;
+            }
+
+            final CatalogManifest base;
+            synchronized(this)
+            {
+                base = history.get(rootHash);
+            }
+            final byte[] delta;
+            if(base != null)
+            {
+                delta = current.deltas.computeIfAbsent(rootHash,
+                        key -> current.deltaFrom(base.getHashes()));
+            } else
+            {
+                out.writeByte(SEND_HASHES);
+                out.flush();
+                final Map<String, Long> hashes = new HashMap<>();
+                for(int i = in.readInt(); i > 0; i--)
+                {
+                    hashes.put(in.readUTF(), in.readLong());
+                }
+                delta = current.deltaFrom(hashes);
+            }
+            out.writeByte(DELTA);
+            out.writeInt(delta.length);
+            out.write(delta);
+            out.flush();
+        } catch(IOException e)
+        {
+            System.err.println(
+                    "Error syncing catalog to " + socket.getRemoteSocketAddress());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the entries of the current catalog, building them if it changed since the
+     * last client.
+     *
+     * @return Published catalog
+     * @throws IOException if an image can't be read
+     */
+    private synchronized Published publish() throws IOException
+    {
+        final Catalog catalog = catalogs.get();
+        if(published != null && published.catalog == catalog)
+        {
+            return published;
+        }
+
+        final Map<String, byte[]> entries = CatalogEntries.encode(catalog);
+        final Map<String, CachedImage> used = new HashMap<>();
+        for(final String imagePath : CatalogEntries.getImagePaths(catalog))
+        {
+            final CachedImage image = readImage(imagePath);
+            if(image != null)
+            {
+                entries.put(CatalogEntries.IMAGE + imagePath, image.content);
+                used.put(imagePath, image);
+            }
+        }
+        images.keySet().retainAll(used.keySet());
+        images.putAll(used);
+
+        published = new Published(catalog, CatalogManifest.of(catalog.getVersion(),
+                entries), entries);
+        history.remove(published.manifest.getRootHash());
+        history.put(published.manifest.getRootHash(), published.manifest);
+        if(history.size() > HISTORY_SIZE)
+        {
+            history.remove(history.keySet().iterator().next());
+        }
+        return published;
+    }
+
+    private CachedImage readImage(final String imagePath) throws IOException
+    {
+        final Path file = Path.of(imagePath);
+        if(!Files.isRegularFile(file))
+        {
+            return null;
+        }
+        final long size = Files.size(file);
+        final long modified = Files.getLastModifiedTime(file).toMillis();
+        final CachedImage cached = images.get(imagePath);
+        if(cached != null && cached.size == size && cached.modified == modified)
+        {
+            return cached;
+        }
+        return new CachedImage(size, modified, CatalogEntries.readImage(imagePath));
+    }
+
+    /**
+     * Run a server for the game's catalog until the process is killed, accepting
+     * clients on the main thread.
+     *
+     * @param args Optional port and host to listen on
+     * @throws IOException if the port can't be opened
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        final InetAddress host = args.length > 1 ? InetAddress.getByName(args[1]) :
+                InetAddress.getLoopbackAddress();
+        final GameController controller = GameController.getInstance(null);
+        final CatalogSyncServer server = new CatalogSyncServer(controller::getCatalog,
+                new InetSocketAddress(host, port));
+        System.out.println("Catalog server listening on " + host.getHostAddress() + ":" +
+                           server.getPort());
+        System.out.flush();
+        server.accept();
+    }
+
+    private static final class Published {
+        private final Catalog catalog;
+        private final CatalogManifest manifest;
+        private final Map<String, byte[]> entries;
+
+        // Encoded deltas from recent versions by their root hash
+        private final Map<Long, byte[]> deltas;
+
+        private Published(final Catalog catalog, final CatalogManifest manifest,
+                          final Map<String, byte[]> entries)
+        {
+            this.catalog = catalog;
+            this.manifest = manifest;
+            this.entries = entries;
+            deltas = new ConcurrentHashMap<>();
+        }
+
+        private byte[] deltaFrom(final Map<String, Long> base)
+        {
+            return CatalogDelta.between(base, manifest, entries::get).toBytes();
+        }
+    }
+
+    private static final class CachedImage {
+        private final long size;
+        private final long modified;
+        private final byte[] content;
+
+        private CachedImage(final long size, final long modified, final byte[] content)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.content = content;
+        }
+    }
+}
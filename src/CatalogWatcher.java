@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the catalog file and runs a reload when it is created, changed or deleted.
+ * Editors often write a file in several steps, so changes are collected until the
+ * file has been quiet for a moment and then reloaded once. The reload runs on the
+ * watcher thread, away from the game.
+ *
+ * @author Jiarui Xing
+ */
+public final class CatalogWatcher {
+    // Quiet time after the last change before reloading
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final Runnable reload;
+    private final WatchService watchService;
+    private final Thread watcher;
+
+    /**
+     * Start watching a file.
+     *
+     * @param file   Catalog file; it doesn't need to exist yet
+     * @param reload Task run after the file has changed
+     * @throws IOException if the file's directory can't be watched
+     */
+    public CatalogWatcher(final Path file, final Runnable reload) throws IOException
+    {
+        this.file = file.toAbsolutePath();
+        this.reload = reload;
+        watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        watcher = new Thread(this::run, "catalog-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stop watching.
+     */
+    public void stop()
+    {
+        try
+        {
+            watchService.close();
+        } catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while(true)
+            {
+                if(!concernsFile(watchService.take()))
+                {
+                    continue;
+                }
+
+                // Wait until the writes stop
+                WatchKey key;
+                while((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) !=
+                      null)
+                {
+                    concernsFile(key);
+                }
+                try
+                {
+                    reload.run();
+                } catch(RuntimeException e)
+                {
+                    System.err.println("Error reloading catalog: " + file);
+                    e.printStackTrace();
+                }
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e)
+        {
+            // Stopped
+        }
+    }
+
+    /**
+     * Check if any event of a key is about the catalog file, and re-arm the key.
+     *
+     * @param key Signalled key
+     * @return True if the file changed
+     */
+    private boolean concernsFile(final WatchKey key)
+    {
+        boolean concerns = false;
+        for(final WatchEvent<?> event : key.pollEvents())
+        {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW ||
+               file.getFileName().equals(event.context()))
+            {
+                concerns = true;
+            }
+        }
+        key.reset();
+        return concerns;
+    }
+}
@@ -0,0 +1,361 @@
+import java.util.Arrays;
+
+/**
+ * Set of non-negative ints stored the way roaring bitmaps do: values are grouped by
+ * their upper 16 bits, and each group keeps its lower 16 bits either as a sorted
+ * char array while it is sparse, or as a 65536-bit bitmap once it holds more than
+ * {@link #ARRAY_LIMIT} values. Intersections work group by group and only on the
+ * groups both sides have, so they cost about the size of the smaller set.
+ *
+ * @author Jiarui Xing
+ */
+public final class CompressedBitmap {
+    // Values per group above which a sorted array takes more space than a bitmap
+    private static final int ARRAY_LIMIT = 4096;
+
+    private static final int BITMAP_WORDS = 1 << 16 >>> 6;
+
+    // Upper 16 bits of each group, sorted, and the matching containers
+    private char[] keys;
+    private Container[] containers;
+    private int size = 0;
+    private int cardinality = 0;
+
+    public CompressedBitmap()
+    {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value Value to add (not negative)
+     */
+    public void add(final int value)
+    {
+        if(value < 0)
+        {
+            throw new IllegalArgumentException("Values must not be negative.");
+        }
+        final char high = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, high);
+        if(index < 0)
+        {
+            index = -index - 1;
+            if(size == keys.length)
+            {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(containers, index, containers, index + 1, size - index);
+            keys[index] = high;
+            containers[index] = new ArrayContainer();
+            size++;
+        }
+        final int before = containers[index].cardinality();
+        containers[index] = containers[index].add((char) value);
+        cardinality += containers[index].cardinality() - before;
+    }
+
+    /**
+     * Check if a value is in the set.
+     *
+     * @param value Value to look up
+     * @return True if present
+     */
+    public boolean contains(final int value)
+    {
+        if(value < 0)
+        {
+            return false;
+        }
+        final int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Intersect with another bitmap.
+     *
+     * @param other Bitmap to intersect with
+     * @return New bitmap with the values in both
+     */
+    public CompressedBitmap and(final CompressedBitmap other)
+    {
+        final CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while(i < size && j < other.size)
+        {
+            if(keys[i] < other.keys[j])
+            {
+                i++;
+            } else if(keys[i] > other.keys[j])
+            {
+                j++;
+            } else
+            {
+                final Container both = containers[i].and(other.containers[j]);
+                if(both.cardinality() > 0)
+                {
+                    result.append(keys[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of values.
+     *
+     * @return Cardinality
+     */
+    public int getCardinality()
+    {
+        return cardinality;
+    }
+
+    /**
+     * Check if the set is empty.
+     *
+     * @return True if there are no values
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Get all values in ascending order.
+     *
+     * @return Sorted values
+     */
+    public int[] toArray()
+    {
+        final int[] values = new int[cardinality];
+        int offset = 0;
+        for(int i = 0; i < size; i++)
+        {
+            offset = containers[i].copyTo(values, offset, keys[i] << 16);
+        }
+        return values;
+    }
+
+    private void append(final char key, final Container container)
+    {
+        if(size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+        cardinality += container.cardinality();
+    }
+
+    /**
+     * Lower 16 bits of the values of one group.
+     */
+    private abstract static class Container {
+        /**
+         * Add a value, switching representation if needed.
+         *
+         * @param low Lower 16 bits
+         * @return This container, or its replacement
+         */
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract Container and(Container other);
+
+        abstract int cardinality();
+
+        /**
+         * Write the full values of this group into an array.
+         *
+         * @param out    Output array
+         * @param offset First index to write
+         * @param base   Upper bits of the group, already shifted
+         * @return Index after the last value written
+         */
+        abstract int copyTo(int[] out, int offset, int base);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int count = 0;
+
+        @Override
+        Container add(final char low)
+        {
+            final int index = Arrays.binarySearch(values, 0, count, low);
+            if(index >= 0)
+            {
+                return this;
+            }
+            if(count == ARRAY_LIMIT)
+            {
+                final BitmapContainer bitmap = new BitmapContainer();
+                for(int i = 0; i < count; i++)
+                {
+                    bitmap.add(values[i]);
+                }
+                return bitmap.add(low);
+            }
+            if(count == values.length)
+            {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            final int insert = -index - 1;
+            System.arraycopy(values, insert, values, insert + 1, count - insert);
+            values[insert] = low;
+            count++;
+            return this;
+        }
+
+        @Override
+        boolean contains(final char low)
+        {
+            return Arrays.binarySearch(values, 0, count, low) >= 0;
+        }
+
+        @Override
+        Container and(final Container other)
+        {
+            final ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, count)];
+            if(other instanceof ArrayContainer array)
+            {
+                // Merge the two sorted arrays
+                int i = 0;
+                int j = 0;
+                while(i < count && j < array.count)
+                {
+                    if(values[i] < array.values[j])
+                    {
+                        i++;
+                    } else if(values[i] > array.values[j])
+                    {
+                        j++;
+                    } else
+                    {
+                        result.values[result.count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else
+            {
+                for(int i = 0; i < count; i++)
+                {
+                    if(other.contains(values[i]))
+                    {
+                        result.values[result.count++] = values[i];
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return count;
+        }
+
+        @Override
+        int copyTo(final int[] out, final int offset, final int base)
+        {
+            for(int i = 0; i < count; i++)
+            {
+                out[offset + i] = base | values[i];
+            }
+            return offset + count;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int count = 0;
+
+        @Override
+        Container add(final char low)
+        {
+            final long bit = 1L << low;
+            if((words[low >>> 6] & bit) == 0)
+            {
+                words[low >>> 6] |= bit;
+                count++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(final char low)
+        {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Container and(final Container other)
+        {
+            if(other instanceof ArrayContainer)
+            {
+                return other.and(this);
+            }
+            final BitmapContainer bitmap = (BitmapContainer) other;
+            final BitmapContainer result = new BitmapContainer();
+            for(int i = 0; i < BITMAP_WORDS; i++)
+            {
+                result.words[i] = words[i] & bitmap.words[i];
+                result.count += Long.bitCount(result.words[i]);
+            }
+            if(result.count > ARRAY_LIMIT)
+            {
+                return result;
+            }
+
+            // Sparse results go back to an array
+            final ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(1, result.count)];
+            for(int i = 0; i < BITMAP_WORDS; i++)
+            {
+                long word = result.words[i];
+                while(word != 0)
+                {
+                    array.values[array.count++] =
+                            (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return count;
+        }
+
+        @Override
+        int copyTo(final int[] out, final int offset, final int base)
+        {
+            int index = offset;
+            for(int i = 0; i < BITMAP_WORDS; i++)
+            {
+                long word = words[i];
+                while(word != 0)
+                {
+                    out[index++] = base | i << 6 | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -6,6 +6,9 @@
 public class CraftingItem extends Item implements Craftable {
     private final Recipe recipe;
 
+    // Set once the catalog has been scored
+    private volatile DifficultyScore difficulty;
+
     public CraftingItem(final String name, final String imagePath, final Recipe recipe)
     {
         super(name, imagePath);
@@ -17,4 +20,25 @@ public class CraftingItem extends Item implements Craftable {
     {
         return recipe;
     }
+
+    /**
+     * Get the difficulty score of the item on the standard grid. Catalogs are scored
+     * in the background once they are built, unless they are packed.
+     *
+     * @return DifficultyScore, or null if the item has not been scored yet
+     */
+    public DifficultyScore getDifficulty()
+    {
+        return difficulty;
+    }
+
+    /**
+     * Store the difficulty score of the item.
+     *
+     * @param difficulty Score computed by a SolutionCounter
+     */
+    public void setDifficulty(final DifficultyScore difficulty)
+    {
+        this.difficulty = difficulty;
+    }
 }
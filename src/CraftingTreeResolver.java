@@ -0,0 +1,234 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the raw materials needed to craft an item when some ingredients are
+ * crafted items themselves. An item is raw if no crafting item of that name exists.
+ * Where a slot accepts alternatives, the first declared alternative is used.
+ * <p>
+ * The recipe graph is sorted topologically once when the resolver is built. Items on
+ * a cycle, such as ingots crafted from blocks crafted from ingots, can't be broken
+ * down and count as raw wherever they are used, so the rest of the catalog still
+ * resolves. A query then walks the order once, pushing demand from each item down to
+ * its ingredients and rounding up to whole crafts. Because of the rounding, costs of
+ * sub-trees can't simply be added up, so whole answers are memoized instead.
+ *
+ * @author Jiarui Xing
+ */
+public class CraftingTreeResolver {
+    // Ingredient counts per craft for each crafted item, in topological order
+    private final String[] order;
+    private final Map<String, Integer> orderIndex;
+    private final List<Map<String, Integer>> ingredientCounts;
+    private final int[] outputCounts;
+
+    // Raw materials for one of each item, filled on first query
+    private final Map<String, Map<String, Long>> cache;
+
+    // Cycles found while sorting, each from the repeated item back to itself
+    private final List<List<String>> cycles;
+
+    /**
+     * Build the resolver for a set of crafting items.
+     *
+     * @param craftingItems All crafting items of the catalog
+     */
+    public CraftingTreeResolver(final List<CraftingItem> craftingItems)
+    {
+        final Map<String, CraftingItem> itemsByName = new LinkedHashMap<>();
+        for(final CraftingItem item : craftingItems)
+        {
+            itemsByName.putIfAbsent(item.getName(), item);
+        }
+
+        // Depth-first post-order puts every item after its ingredients
+        final List<String> postOrder = new ArrayList<>();
+        final Set<String> done = new HashSet<>();
+        final Deque<String> path = new ArrayDeque<>();
+        final List<List<String>> foundCycles = new ArrayList<>();
+        for(final String name : itemsByName.keySet())
+        {
+            visit(name, itemsByName, done, path, postOrder, foundCycles);
+        }
+        cycles = List.copyOf(foundCycles);
+
+        // Reverse it so consumers come before the items they consume. Every cycle
+        // goes through a reported one, so leaving those items out leaves no cycles.
+        final Set<String> onCycles = new HashSet<>();
+        for(final List<String> cycle : cycles)
+        {
+            onCycles.addAll(cycle);
+        }
+        postOrder.removeAll(onCycles);
+        Collections.reverse(postOrder);
+        order = postOrder.toArray(new String[0]);
+        orderIndex = new HashMap<>();
+        ingredientCounts = new ArrayList<>();
+        outputCounts = new int[order.length];
+        for(int i = 0; i < order.length; i++)
+        {
+            final Recipe recipe = itemsByName.get(order[i]).getRecipe();
+            orderIndex.put(order[i], i);
+            ingredientCounts.add(countPrimaryIngredients(recipe));
+            outputCounts[i] = recipe.getOutputCount();
+        }
+        cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Visit an item and its crafted ingredients depth-first.
+     *
+     * @param name        Item to visit
+     * @param itemsByName Crafting items by name
+     * @param done        Items already in the post-order
+     * @param path        Items on the current path, for cycle detection
+     * @param postOrder   Output list
+     * @param cycles      Receives the cycles found
+     */
+    private static void visit(final String name,
+                              final Map<String, CraftingItem> itemsByName,
+                              final Set<String> done,
+                              final Deque<String> path,
+                              final List<String> postOrder,
+                              final List<List<String>> cycles)
+    {
+        if(done.contains(name) || !itemsByName.containsKey(name))
+        {
+            return;
+        }
+        if(path.contains(name))
+        {
+            final List<String> cycle = new ArrayList<>();
+            for(final String onPath : path)
+            {
+                cycle.add(0, onPath);
+                if(onPath.equals(name))
+                {
+                    break;
+                }
+            }
+            cycle.add(name);
+            cycles.add(List.copyOf(cycle));
+            return;
+        }
+
+        path.push(name);
+        final Recipe recipe = itemsByName.get(name).getRecipe();
+        for(final String ingredient : countPrimaryIngredients(recipe).keySet())
+        {
+            visit(ingredient, itemsByName, done, path, postOrder, cycles);
+        }
+        path.pop();
+
+        done.add(name);
+        postOrder.add(name);
+    }
+
+    /**
+     * Count the preferred ingredient of every slot of a recipe.
+     *
+     * @param recipe Recipe to count
+     * @return Map of ingredient name to amount per craft
+     */
+    private static Map<String, Integer> countPrimaryIngredients(final Recipe recipe)
+    {
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        for(final Set<String> alternatives : recipe.getIngredients())
+        {
+            if(!alternatives.isEmpty())
+            {
+                counts.merge(alternatives.iterator().next(), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Get the raw materials needed to craft one of an item.
+     *
+     * @param name Item name
+     * @return Map of raw material name to amount, sorted by name
+     */
+    public Map<String, Long> getRawMaterials(final String name)
+    {
+        return cache.computeIfAbsent(name, key -> resolve(key, 1));
+    }
+
+    /**
+     * Get the raw materials needed to craft a number of an item. Crafts are whole,
+     * so leftovers of intermediate items are not reused across separate queries.
+     *
+     * @param name     Item name
+     * @param quantity Number of items wanted
+     * @return Map of raw material name to amount, sorted by name
+     */
+    public Map<String, Long> getRawMaterials(final String name, final long quantity)
+    {
+        return quantity == 1 ? getRawMaterials(name) : resolve(name, quantity);
+    }
+
+    /**
+     * Push demand for an item down the topological order to the raw materials.
+     *
+     * @param name     Item name
+     * @param quantity Number of items wanted
+     * @return Map of raw material name to amount, sorted by name
+     */
+    private Map<String, Long> resolve(final String name, final long quantity)
+    {
+        final Map<String, Long> raw = new TreeMap<>();
+        final Integer start = orderIndex.get(name);
+        if(start == null)
+        {
+            // Not craftable: the item itself is the raw material
+            raw.put(name, quantity);
+            return Collections.unmodifiableMap(raw);
+        }
+
+        final long[] demand = new long[order.length];
+        demand[start] = quantity;
+        for(int i = start; i < order.length; i++)
+        {
+            if(demand[i] == 0)
+            {
+                continue;
+            }
+            final long crafts = (demand[i] + outputCounts[i] - 1) / outputCounts[i];
+            for(final Map.Entry<String, Integer> entry :
+                    ingredientCounts.get(i).entrySet())
+            {
+                final long amount = crafts * entry.getValue();
+                final Integer index = orderIndex.get(entry.getKey());
+                if(index != null)
+                {
+                    demand[index] += amount;
+                } else
+                {
+                    raw.merge(entry.getKey(), amount, Long::sum);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(raw);
+    }
+
+    /**
+     * Get the recipe cycles found. Their items count as raw materials.
+     *
+     * @return Cycles as item names, e.g. Iron Ingot, Iron Block, Iron Ingot
+     */
+    public List<List<String>> getCycles()
+    {
+        return cycles;
+    }
+
+    /**
+     * Get all crafting items not on a cycle in topological order, each item before its
+     * ingredients.
+     *
+     * @return Item names in topological order
+     */
+    public List<String> getTopologicalOrder()
+    {
+        return List.of(order);
+    }
+}
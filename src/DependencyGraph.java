@@ -0,0 +1,216 @@
+import java.util.*;
+
+/**
+ * Immutable graph of which crafting items are used in which recipes. All chains of
+ * crafting items up to {@link #MAX_CHAIN_LENGTH}, where each item is an ingredient of
+ * the next, are enumerated once when the graph is built and grouped by length and
+ * difficulty, so a chain can be picked at random without searching.
+ *
+ * @author Jiarui Xing
+ */
+public final class DependencyGraph {
+    public static final int MAX_CHAIN_LENGTH = 4;
+
+    /**
+     * Difficulty of a chain, rated by the average number of ingredients per step.
+     */
+    public enum Difficulty {
+        EASY, MEDIUM, HARD;
+
+        /**
+         * Rate a chain by the average number of filled cells of its recipes.
+         *
+         * @param totalCells Filled cells summed over the chain
+         * @param length     Number of items in the chain
+         * @return Difficulty
+         */
+        static Difficulty of(final int totalCells, final int length)
+        {
+            final double average = (double) totalCells / length;
+            if(average < 3.5)
+            {
+                return EASY;
+            }
+            return average < 6 ? MEDIUM : HARD;
+        }
+    }
+
+    private final CraftingItem[] items;
+
+    // usedIn[i] lists the items whose recipes accept item i
+    private final int[][] usedIn;
+
+    // chains[length][difficulty] holds the chains as item indices, final item last
+    private final int[][][][] chains;
+
+    /**
+     * Build the graph and its chain tables.
+     *
+     * @param craftingItems Crafting items to include
+     */
+    public DependencyGraph(final List<CraftingItem> craftingItems)
+    {
+        items = craftingItems.toArray(new CraftingItem[0]);
+
+        final Map<String, Integer> indexByName = new HashMap<>();
+        for(int i = 0; i < items.length; i++)
+        {
+            indexByName.putIfAbsent(items[i].getName(), i);
+        }
+
+        // Invert the ingredient lists: an edge from each ingredient to its consumer
+        final List<Set<Integer>> consumers = new ArrayList<>();
+        for(int i = 0; i < items.length; i++)
+        {
+            consumers.add(new TreeSet<>());
+        }
+        for(int i = 0; i < items.length; i++)
+        {
+            for(final Set<String> alternatives : items[i].getRecipe().getIngredients())
+            {
+                for(final String name : alternatives)
+                {
+                    final Integer ingredient = indexByName.get(name);
+                    if(ingredient != null && ingredient != i)
+                    {
+                        consumers.get(ingredient).add(i);
+                    }
+                }
+            }
+        }
+        usedIn = new int[items.length][];
+        for(int i = 0; i < items.length; i++)
+        {
+            usedIn[i] = consumers.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Enumerate every simple path up to the maximum length
+        final List<List<List<int[]>>> tables = new ArrayList<>();
+        for(int length = 0; length <= MAX_CHAIN_LENGTH; length++)
+        {
+            final List<List<int[]>> byDifficulty = new ArrayList<>();
+            for(int d = 0; d < Difficulty.values().length; d++)
+            {
+                byDifficulty.add(new ArrayList<>());
+            }
+            tables.add(byDifficulty);
+        }
+        final int[] path = new int[MAX_CHAIN_LENGTH];
+        final boolean[] onPath = new boolean[items.length];
+        for(int i = 0; i < items.length; i++)
+        {
+            extend(i, 0, 0, path, onPath, tables);
+        }
+
+        chains = new int[MAX_CHAIN_LENGTH + 1][Difficulty.values().length][][];
+        for(int length = 0; length <= MAX_CHAIN_LENGTH; length++)
+        {
+            for(int d = 0; d < Difficulty.values().length; d++)
+            {
+                chains[length][d] = tables.get(length).get(d).toArray(new int[0][]);
+            }
+        }
+    }
+
+    /**
+     * Add an item to the current path, record the path and extend it further.
+     *
+     * @param item       Item to append
+     * @param depth      Current path length
+     * @param totalCells Filled cells of the items already on the path
+     * @param path       Path buffer
+     * @param onPath     Items already on the path
+     * @param tables     Output tables by length and difficulty
+     */
+    private void extend(final int item, final int depth, final int totalCells,
+                        final int[] path, final boolean[] onPath,
+                        final List<List<List<int[]>>> tables)
+    {
+        path[depth] = item;
+        onPath[item] = true;
+        final int length = depth + 1;
+        final int cells = totalCells + items[item].getRecipe().getIngredients().size();
+        tables.get(length).get(Difficulty.of(cells, length).ordinal())
+                .add(Arrays.copyOf(path, length));
+
+        if(length < MAX_CHAIN_LENGTH)
+        {
+            for(final int consumer : usedIn[item])
+            {
+                if(!onPath[consumer])
+                {
+                    extend(consumer, length, cells, path, onPath, tables);
+                }
+            }
+        }
+        onPath[item] = false;
+    }
+
+    /**
+     * Pick a random chain of the given length and difficulty.
+     *
+     * @param length     Number of items in the chain (1 to MAX_CHAIN_LENGTH)
+     * @param difficulty Wanted difficulty
+     * @param random     Source of randomness
+     * @return Crafting items in crafting order, or an empty list if none exists
+     */
+    public List<CraftingItem> sampleChain(final int length, final Difficulty difficulty,
+                                          final Random random)
+    {
+        if(length < 1 || length > MAX_CHAIN_LENGTH)
+        {
+            return List.of();
+        }
+        final int[][] candidates = chains[length][difficulty.ordinal()];
+        if(candidates.length == 0)
+        {
+            return List.of();
+        }
+        final int[] chain = candidates[random.nextInt(candidates.length)];
+        final List<CraftingItem> result = new ArrayList<>(chain.length);
+        for(final int index : chain)
+        {
+            result.add(items[index]);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Get the number of precomputed chains of a length and difficulty.
+     *
+     * @param length     Number of items in the chain
+     * @param difficulty Difficulty
+     * @return Number of chains
+     */
+    public int getChainCount(final int length, final Difficulty difficulty)
+    {
+        if(length < 1 || length > MAX_CHAIN_LENGTH)
+        {
+            return 0;
+        }
+        return chains[length][difficulty.ordinal()].length;
+    }
+
+    /**
+     * Get the crafting items whose recipes accept the given item.
+     *
+     * @param item Ingredient item
+     * @return Items that can be crafted from it
+     */
+    public List<CraftingItem> getConsumers(final CraftingItem item)
+    {
+        for(int i = 0; i < items.length; i++)
+        {
+            if(items[i] == item)
+            {
+                final List<CraftingItem> result = new ArrayList<>();
+                for(final int consumer : usedIn[i])
+                {
+                    result.add(items[consumer]);
+                }
+                return result;
+            }
+        }
+        return List.of();
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Difficulty of a question, measured on the grids that can be built from its options:
+ * how many are accepted, and how many wrong grids lie one move away from an accepted
+ * one. Many near misses per solution mean many ways to be almost right.
+ *
+ * @author Jiarui Xing
+ */
+public final class DifficultyScore {
+    private final long solutions;
+    private final long nearMisses;
+
+    /**
+     * Create a score.
+     *
+     * @param solutions  Number of distinct accepted grids
+     * @param nearMisses Number of distinct rejected grids one move off a solution
+     */
+    public DifficultyScore(final long solutions, final long nearMisses)
+    {
+        this.solutions = solutions;
+        this.nearMisses = nearMisses;
+    }
+
+    /**
+     * Get the number of distinct grids built from the options that are accepted.
+     *
+     * @return Solution count
+     */
+    public long getSolutions()
+    {
+        return solutions;
+    }
+
+    /**
+     * Get the number of distinct rejected grids that are one move, i.e. a swap of
+     * two cells, away from a solution.
+     *
+     * @return Near-miss count
+     */
+    public long getNearMisses()
+    {
+        return nearMisses;
+    }
+
+    /**
+     * Get the score: log2 of one plus the near misses per solution. Higher is harder;
+     * an item without solutions scores infinity.
+     *
+     * @return Difficulty score
+     */
+    public double getScore()
+    {
+        if(solutions == 0)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.log(1 + (double) nearMisses / solutions) / Math.log(2);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%.2f (%d solutions, %d near misses)", getScore(),
+                solutions, nearMisses);
+    }
+}
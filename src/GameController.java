@@ -1,7 +1,11 @@
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Controls the game logic, handles player actions, and updates the game state.
@@ -11,17 +15,35 @@ import java.util.*;
 public class GameController {
     private static GameController instance;
 
-    private int totalQuestions = 10;
+    private static final int QUESTIONS_PER_GAME = 10;
 
-    private int score = 0;
-    private int currentQuestion = 0;
-    private CraftingItem currentItem;
-    private List<Item> optionItems;
-    private final Map<Recipe.Position, String> playerRecipe;
+    // Pause between the feedback on an answer and the next question
+    private static final long FEEDBACK_DELAY_MILLIS = 1000;
 
-    private final List<CraftingItem> craftingItems;
-    private final List<MaterialItem> materialItems;
-    private List<CraftingItem> availableItems;
+    // Seed of the option sets difficulty is scored on, so every build of a catalog
+    // gets the same scores
+    private static final long DIFFICULTY_SEED = 0x5EEDL;
+
+    // Width and height of the crafting grid
+    private int gridSize = Recipe.DEFAULT_GRID_SIZE;
+
+    // State of the local player's current game
+    private GameSession session;
+
+    // Time allowed per question, or 0 for no limit
+    private long questionTimeLimitMillis = 0;
+    private TimerWheel.Timeout questionTimeout;
+
+    // Current catalog version; replaced as a whole when the catalog file changes
+    private final AtomicReference<Catalog> catalog;
+    private final Path catalogFile;
+
+    // Whether loaded catalogs are packed off the heap, for very large catalogs
+    private final boolean packCatalog;
+
+    // Catalog server and local copy of its catalog; null when the catalog is local
+    private final InetSocketAddress catalogServer;
+    private final CatalogSyncClient catalogCache;
 
     // Game statistics
     private int gamesPlayed = 0;
@@ -29,18 +51,48 @@ public class GameController {
 
     private final MinecraftItem gameUi;
 
-    // Track attempts left for the current question
-    private int attemptsLeft = 2;
-
     // Private constructor for Singleton pattern
     private GameController(final MinecraftItem gameUi)
     {
         this.gameUi = gameUi;
-        craftingItems = new ArrayList<>();
-        materialItems = new ArrayList<>();
-        playerRecipe = new HashMap<>();
+        catalogFile = Path.of(System.getProperty("minecraftitem.catalog", "catalog.txt"));
+        packCatalog = "packed".equals(System.getProperty("minecraftitem.catalogStore"));
+        catalogServer = parseServer(System.getProperty("minecraftitem.catalogServer"));
+        catalogCache = catalogServer == null ? null : openCatalogCache(Path.of(
+                System.getProperty("minecraftitem.catalogCache", "catalog-cache")));
+        Catalog loaded;
+        try
+        {
+            loaded = buildCatalog(1);
+        } catch(IOException | RuntimeException e)
+        {
+            System.err.println("Error loading catalog: " + catalogFile);
+            e.printStackTrace();
+
+            // Start with the built-in items only
+            final TagRegistry tags = new TagRegistry();
+            final List<MaterialItem> materialItems = new ArrayList<>();
+            final List<CraftingItem> craftingItems = new ArrayList<>();
+            defineTags(tags);
+            loadItems(tags, materialItems, craftingItems);
+            loaded = new Catalog(1, tags, materialItems, craftingItems);
+        }
+        catalog = new AtomicReference<>(loaded);
+        scoreDifficulties(loaded);
+        if(catalogServer != null)
+        {
+            // The server decides when the catalog changes
+            return;
+        }
 
-        loadItems();
+        try
+        {
+            new CatalogWatcher(catalogFile, this::reloadCatalog);
+        } catch(IOException e)
+        {
+            System.err.println("Catalog changes won't be picked up: " + catalogFile);
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -59,9 +111,150 @@ public class GameController {
     }
 
     /**
-     * Load items and recipes.
+     * Build a catalog from the built-in items and the catalog file, or, with a catalog
+     * server, from the local copy after bringing it up to date. If the server can't be
+     * reached, the local copy is used as it is. With the system property
+     * minecraftitem.catalogStore set to packed, the items are then packed into a
+     * {@link PackedCatalog} and the loaded objects are dropped.
+     *
+     * @param version Version number of the new catalog
+     * @return New catalog
+     * @throws IOException              if the catalog file or local copy can't be read
+     * @throws IllegalArgumentException if the catalog file is malformed
+     */
+    private Catalog buildCatalog(final int version) throws IOException
+    {
+        final TagRegistry tags = new TagRegistry();
+        final List<MaterialItem> materialItems = new ArrayList<>();
+        final List<CraftingItem> craftingItems = new ArrayList<>();
+        if(catalogCache != null)
+        {
+            try
+            {
+                catalogCache.sync(catalogServer);
+            } catch(IOException e)
+            {
+                System.err.println("Using the cached catalog; could not sync with " +
+                                   catalogServer);
+                e.printStackTrace();
+            }
+            catalogCache.load(tags, materialItems, craftingItems);
+        } else
+        {
+            // File tags replace built-in ones before any recipe refers to them
+            final CatalogFile file = CatalogFile.read(catalogFile);
+            defineTags(tags);
+            file.defineTags(tags);
+            loadItems(tags, materialItems, craftingItems);
+            file.apply(tags, materialItems, craftingItems);
+        }
+        if(packCatalog)
+        {
+            // Crafting trees aren't resolved up front, so cycles aren't reported
+            return new Catalog(version, tags,
+                    PackedCatalog.pack(materialItems, craftingItems));
+        }
+        final Catalog built = new Catalog(version, tags, materialItems, craftingItems);
+        for(final List<String> cycle : built.getCraftingTreeResolver().getCycles())
+        {
+            System.err.println("Recipe cycle, its items count as raw materials: " +
+                               String.join(" -> ", cycle));
+        }
+        return built;
+    }
+
+    /**
+     * Parse the address of the catalog server.
+     *
+     * @param server Address as host:port, or null for none
+     * @return Address, or null to use the local catalog
+     */
+    private static InetSocketAddress parseServer(final String server)
+    {
+        if(server == null)
+        {
+            return null;
+        }
+        final int colon = server.lastIndexOf(':');
+        try
+        {
+            final int port = Integer.parseInt(server.substring(colon + 1));
+            if(colon > 0 && port > 0 && port <= 0xFFFF)
+            {
+                return new InetSocketAddress(server.substring(0, colon), port);
+            }
+        } catch(NumberFormatException e)
+        {
+            // Reported below
+        }
+        System.err.println("Using the local catalog; the catalog server must be given " +
+                           "as host:port: " + server);
+        return null;
+    }
+
+    private static CatalogSyncClient openCatalogCache(final Path cacheDir)
+    {
+        try
+        {
+            return new CatalogSyncClient(cacheDir);
+        } catch(IOException e)
+        {
+            System.err.println("Could not open the catalog cache: " + cacheDir);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild the catalog from its sources and publish it. Games in progress keep the
+     * catalog they started with; games started afterwards use the new one. If the
+     * new catalog can't be built, the current one stays. May be called from any
+     * thread; readers are never blocked.
+     */
+    public synchronized void reloadCatalog()
+    {
+        try
+        {
+            final Catalog rebuilt = buildCatalog(catalog.get().getVersion() + 1);
+            catalog.set(rebuilt);
+            scoreDifficulties(rebuilt);
+        } catch(IOException | RuntimeException e)
+        {
+            System.err.println("Error reloading catalog: " + catalogFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the current catalog version.
+     *
+     * @return Catalog used by games started now
      */
-    private void loadItems()
+    public Catalog getCatalog()
+    {
+        return catalog.get();
+    }
+
+    /**
+     * Define the built-in tags for recipe slots that accept any of several items.
+     *
+     * @param tags Tags of the catalog being built
+     */
+    private static void defineTags(final TagRegistry tags)
+    {
+        tags.define("#purpur_blocks", "Purpur Block", "Purpur Pillar");
+    }
+
+    /**
+     * Load the built-in items and recipes.
+     *
+     * @param tags          Tags the recipes refer to, already defined
+     * @param materialItems List to add the material items to
+     * @param craftingItems List to add the crafting items to
+     */
+    private static void loadItems(final TagRegistry tags,
+                                  final List<MaterialItem> materialItems,
+                                  final List<CraftingItem> craftingItems)
     {
         // Load material items using ItemFactory
         materialItems.add(
@@ -150,17 +343,17 @@ public class GameController {
         materialItems.add(ItemFactory.createMaterialItem("Sugar", "images/sugar.png"));
         materialItems.add(ItemFactory.createMaterialItem("Wheat", "images/wheat.png"));
 
-
         // Load crafting items with recipes using ItemFactory
         // Stick
-        final Recipe stickRecipe = new Recipe();
+        final ShapedRecipe stickRecipe = new ShapedRecipe();
         stickRecipe.addItem(0, 0, "Wood Planks");
         stickRecipe.addItem(0, -1, "Wood Planks");
+        stickRecipe.setOutputCount(4);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Stick", "images/stick.png", stickRecipe));
 
         // Diamond Axe
-        final Recipe diamondAxeRecipe = new Recipe();
+        final ShapedRecipe diamondAxeRecipe = new ShapedRecipe();
         diamondAxeRecipe.addItem(0, 1, "Diamond");
         diamondAxeRecipe.addItem(1, 1, "Diamond");
         diamondAxeRecipe.addItem(1, 0, "Diamond");
@@ -171,7 +364,7 @@ public class GameController {
                         diamondAxeRecipe));
 
         // Iron Sword
-        final Recipe ironSwordRecipe = new Recipe();
+        final ShapedRecipe ironSwordRecipe = new ShapedRecipe();
         ironSwordRecipe.addItem(0, 1, "Iron Ingot");
         ironSwordRecipe.addItem(0, 0, "Iron Ingot");
         ironSwordRecipe.addItem(0, -1, "Stick");
@@ -180,7 +373,7 @@ public class GameController {
                         ironSwordRecipe));
 
         // Bow
-        final Recipe bowRecipe = new Recipe();
+        final ShapedRecipe bowRecipe = new ShapedRecipe();
         bowRecipe.addItem(-1, 0, "Stick");
         bowRecipe.addItem(0, 1, "Stick");
         bowRecipe.addItem(0, -1, "Stick");
@@ -191,15 +384,25 @@ public class GameController {
                 ItemFactory.createCraftingItem("Bow", "images/bow.png", bowRecipe));
 
         // Arrow
-        final Recipe arrowRecipe = new Recipe();
+        final ShapedRecipe arrowRecipe = new ShapedRecipe();
         arrowRecipe.addItem(0, 1, "Flint");
         arrowRecipe.addItem(0, 0, "Stick");
         arrowRecipe.addItem(0, -1, "Feather");
+        arrowRecipe.setOutputCount(4);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Arrow", "images/arrow.png", arrowRecipe));
 
+        // Book
+        final ShapelessRecipe bookRecipe = new ShapelessRecipe();
+        bookRecipe.addIngredient("Paper");
+        bookRecipe.addIngredient("Paper");
+        bookRecipe.addIngredient("Paper");
+        bookRecipe.addIngredient("Leather");
+        craftingItems.add(
+                ItemFactory.createCraftingItem("Book", "images/book.png", bookRecipe));
+
         // Enchanting Table
-        final Recipe enchantingTableRecipe = new Recipe();
+        final ShapedRecipe enchantingTableRecipe = new ShapedRecipe();
         enchantingTableRecipe.addItem(-1, -1, "Obsidian");
         enchantingTableRecipe.addItem(-1, 0, "Diamond");
         enchantingTableRecipe.addItem(0, -1, "Obsidian");
@@ -211,15 +414,16 @@ public class GameController {
                 "images/enchanting_table.gif", enchantingTableRecipe));
 
         // Andesite
-        final Recipe andesiteRecipe = new Recipe();
+        final ShapedRecipe andesiteRecipe = new ShapedRecipe();
         andesiteRecipe.addItem(-1, 0, "Diorite");
         andesiteRecipe.addItem(0, 0, "Cobblestone");
+        andesiteRecipe.setOutputCount(2);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Andesite", "images/andesite.png",
                         andesiteRecipe));
 
         // Beacon
-        final Recipe beaconRecipe = new Recipe();
+        final ShapedRecipe beaconRecipe = new ShapedRecipe();
         beaconRecipe.addItem(-1, -1, "Obsidian");
         beaconRecipe.addItem(-1, 0, "Glass");
         beaconRecipe.addItem(-1, 1, "Glass");
@@ -233,7 +437,7 @@ public class GameController {
                 beaconRecipe));
 
         // Beehive
-        final Recipe beehiveRecipe = new Recipe();
+        final ShapedRecipe beehiveRecipe = new ShapedRecipe();
         beehiveRecipe.addItem(-1, -1, "Wood Planks");
         beehiveRecipe.addItem(-1, 0, "Honeycomb");
         beehiveRecipe.addItem(-1, 1, "Wood Planks");
@@ -247,7 +451,7 @@ public class GameController {
                 beehiveRecipe));
 
         // Cake
-        final Recipe cakeRecipe = new Recipe();
+        final ShapedRecipe cakeRecipe = new ShapedRecipe();
         cakeRecipe.addItem(-1, -1, "Wheat");
         cakeRecipe.addItem(-1, 0, "Sugar");
         cakeRecipe.addItem(-1, 1, "Milk Bucket");
@@ -261,7 +465,7 @@ public class GameController {
                 ItemFactory.createCraftingItem("Cake", "images/cake.png", cakeRecipe));
 
         // Calibrated Sculk Sensor
-        final Recipe calibratedSculkSensorRecipe = new Recipe();
+        final ShapedRecipe calibratedSculkSensorRecipe = new ShapedRecipe();
         calibratedSculkSensorRecipe.addItem(-1, 0, "Amethyst Shard");
         calibratedSculkSensorRecipe.addItem(0, 0, "Sculk Sensor");
         calibratedSculkSensorRecipe.addItem(0, 1, "Amethyst Shard");
@@ -270,54 +474,57 @@ public class GameController {
                 "images/calibrated_sculk_sensor.gif", calibratedSculkSensorRecipe));
 
         // Candle
-        final Recipe candleRecipe = new Recipe();
+        final ShapedRecipe candleRecipe = new ShapedRecipe();
         candleRecipe.addItem(0, 0, "Honeycomb");
         candleRecipe.addItem(0, 1, "String");
         craftingItems.add(ItemFactory.createCraftingItem("Candle", "images/candle.png",
                 candleRecipe));
 
         // Chiseled Stone Brick
-        final Recipe chiseledStoneBrickRecipe = new Recipe();
+        final ShapedRecipe chiseledStoneBrickRecipe = new ShapedRecipe();
         chiseledStoneBrickRecipe.addItem(0, 0, "Stone Brick Slab");
         chiseledStoneBrickRecipe.addItem(0, -1, "Stone Brick Slab");
         craftingItems.add(ItemFactory.createCraftingItem("Chiseled Stone Brick",
                 "images/chiseled_stone_brick.png", chiseledStoneBrickRecipe));
 
         // Diorite
-        final Recipe dioriteRecipe = new Recipe();
+        final ShapedRecipe dioriteRecipe = new ShapedRecipe();
         dioriteRecipe.addItem(-1, -1, "Nether Quartz");
         dioriteRecipe.addItem(-1, 0, "Cobblestone");
         dioriteRecipe.addItem(0, -1, "Cobblestone");
         dioriteRecipe.addItem(0, 0, "Nether Quartz");
+        dioriteRecipe.setOutputCount(2);
         craftingItems.add(ItemFactory.createCraftingItem("Diorite", "images/diorite.png",
                 dioriteRecipe));
 
         // End Rod
-        final Recipe endRodRecipe = new Recipe();
+        final ShapedRecipe endRodRecipe = new ShapedRecipe();
         endRodRecipe.addItem(0, -1, "Popped Chorus Fruit");
         endRodRecipe.addItem(0, 0, "Blaze Rod");
+        endRodRecipe.setOutputCount(4);
         craftingItems.add(ItemFactory.createCraftingItem("End Rod", "images/end_rod.png",
                 endRodRecipe));
 
         // Granite
-        final Recipe graniteRecipe = new Recipe();
+        final ShapedRecipe graniteRecipe = new ShapedRecipe();
         graniteRecipe.addItem(-1, 0, "Diorite");
         graniteRecipe.addItem(0, 0, "Nether Quartz");
         craftingItems.add(ItemFactory.createCraftingItem("Granite", "images/granite.png",
                 graniteRecipe));
 
         // Lead
-        final Recipe leadRecipe = new Recipe();
+        final ShapedRecipe leadRecipe = new ShapedRecipe();
         leadRecipe.addItem(-1, 0, "String");
         leadRecipe.addItem(-1, 1, "String");
         leadRecipe.addItem(0, 0, "Slimeball");
         leadRecipe.addItem(0, 1, "String");
         leadRecipe.addItem(1, -1, "String");
+        leadRecipe.setOutputCount(2);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Lead", "images/lead.png", leadRecipe));
 
         // Lodestone
-        final Recipe lodestoneRecipe = new Recipe();
+        final ShapedRecipe lodestoneRecipe = new ShapedRecipe();
         lodestoneRecipe.addItem(-1, -1, "Chiseled Stone Brick");
         lodestoneRecipe.addItem(-1, 0, "Chiseled Stone Brick");
         lodestoneRecipe.addItem(-1, 1, "Chiseled Stone Brick");
@@ -332,7 +539,7 @@ public class GameController {
                         lodestoneRecipe));
 
         // Magma Block
-        final Recipe magmaBlockRecipe = new Recipe();
+        final ShapedRecipe magmaBlockRecipe = new ShapedRecipe();
         magmaBlockRecipe.addItem(-1, -1, "Magma Cream");
         magmaBlockRecipe.addItem(-1, 0, "Magma Cream");
         magmaBlockRecipe.addItem(0, -1, "Magma Cream");
@@ -342,7 +549,7 @@ public class GameController {
                         magmaBlockRecipe));
 
         // Netherite Ingot
-        final Recipe netheriteIngotRecipe = new Recipe();
+        final ShapedRecipe netheriteIngotRecipe = new ShapedRecipe();
         netheriteIngotRecipe.addItem(-1, -1, "Gold Ingot");
         netheriteIngotRecipe.addItem(-1, 0, "Netherite Scrap");
         netheriteIngotRecipe.addItem(-1, 1, "Netherite Scrap");
@@ -355,7 +562,7 @@ public class GameController {
                 "images/netherite_ingot.png", netheriteIngotRecipe));
 
         // Observer
-        final Recipe observerRecipe = new Recipe();
+        final ShapedRecipe observerRecipe = new ShapedRecipe();
         observerRecipe.addItem(-1, -1, "Cobblestone");
         observerRecipe.addItem(-1, 0, "Redstone Dust");
         observerRecipe.addItem(-1, 1, "Cobblestone");
@@ -370,7 +577,7 @@ public class GameController {
                         observerRecipe));
 
         // Piston
-        final Recipe pistonRecipe = new Recipe();
+        final ShapedRecipe pistonRecipe = new ShapedRecipe();
         pistonRecipe.addItem(-1, -1, "Cobblestone");
         pistonRecipe.addItem(-1, 0, "Cobblestone");
         pistonRecipe.addItem(-1, 1, "Wood Planks");
@@ -384,33 +591,35 @@ public class GameController {
                 pistonRecipe));
 
         // Purpur Block
-        final Recipe purpurBlockRecipe = new Recipe();
+        final ShapedRecipe purpurBlockRecipe = new ShapedRecipe();
         purpurBlockRecipe.addItem(-1, -1, "Popped Chorus Fruit");
         purpurBlockRecipe.addItem(-1, 0, "Popped Chorus Fruit");
         purpurBlockRecipe.addItem(0, -1, "Popped Chorus Fruit");
         purpurBlockRecipe.addItem(0, 0, "Popped Chorus Fruit");
+        purpurBlockRecipe.setOutputCount(4);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Purpur Block", "images/purpur_block.png",
                         purpurBlockRecipe));
 
         // Purpur Pillar
-        final Recipe purpurPillarRecipe = new Recipe();
+        final ShapedRecipe purpurPillarRecipe = new ShapedRecipe();
         purpurPillarRecipe.addItem(0, -1, "Purpur Slab");
         purpurPillarRecipe.addItem(0, 0, "Purpur Slab");
         craftingItems.add(ItemFactory.createCraftingItem("Purpur Pillar",
                 "images/purpur_pillar.png", purpurPillarRecipe));
 
         // Purpur Slab
-        final Recipe purpurSlabRecipe = new Recipe();
-        purpurSlabRecipe.addItem(-1, -1, "Purpur Block", "Purpur Pillar");
-        purpurSlabRecipe.addItem(0, -1, "Purpur Block", "Purpur Pillar");
-        purpurSlabRecipe.addItem(1, -1, "Purpur Block", "Purpur Pillar");
+        final ShapedRecipe purpurSlabRecipe = new ShapedRecipe(tags);
+        purpurSlabRecipe.addItem(-1, -1, "#purpur_blocks");
+        purpurSlabRecipe.addItem(0, -1, "#purpur_blocks");
+        purpurSlabRecipe.addItem(1, -1, "#purpur_blocks");
+        purpurSlabRecipe.setOutputCount(6);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Purpur Slab", "images/purpur_slab.png",
                         purpurSlabRecipe));
 
         // Redstone Comparator
-        final Recipe redstoneComparatorRecipe = new Recipe();
+        final ShapedRecipe redstoneComparatorRecipe = new ShapedRecipe();
         redstoneComparatorRecipe.addItem(-1, -1, "Stone");
         redstoneComparatorRecipe.addItem(-1, 0, "Redstone Torch");
         redstoneComparatorRecipe.addItem(0, -1, "Stone");
@@ -423,7 +632,7 @@ public class GameController {
                         "images/redstone_comparator.png", redstoneComparatorRecipe));
 
         // Redstone Repeater
-        final Recipe redstoneRepeaterRecipe = new Recipe();
+        final ShapedRecipe redstoneRepeaterRecipe = new ShapedRecipe();
         redstoneRepeaterRecipe.addItem(-1, -1, "Stone");
         redstoneRepeaterRecipe.addItem(-1, 0, "Redstone Torch");
         redstoneRepeaterRecipe.addItem(0, -1, "Stone");
@@ -435,7 +644,7 @@ public class GameController {
                         "images/redstone_repeater.png", redstoneRepeaterRecipe));
 
         // Redstone Torch
-        final Recipe redstoneTorchRecipe = new Recipe();
+        final ShapedRecipe redstoneTorchRecipe = new ShapedRecipe();
         redstoneTorchRecipe.addItem(0, -1, "Stick");
         redstoneTorchRecipe.addItem(0, 0, "Redstone Dust");
         craftingItems.add(
@@ -443,7 +652,7 @@ public class GameController {
                         "images/redstone_torch.png", redstoneTorchRecipe));
 
         // Spyglass
-        final Recipe SpyglassRecipe = new Recipe();
+        final ShapedRecipe SpyglassRecipe = new ShapedRecipe();
         SpyglassRecipe.addItem(0, -1, "Copper Ingot");
         SpyglassRecipe.addItem(0, 0, "Copper Ingot");
         SpyglassRecipe.addItem(0, 1, "Amethyst Shard");
@@ -452,18 +661,19 @@ public class GameController {
                         "images/spyglass.png", SpyglassRecipe));
 
         // Tinted Glass
-        final Recipe tintedGlassRecipe = new Recipe();
+        final ShapedRecipe tintedGlassRecipe = new ShapedRecipe();
         tintedGlassRecipe.addItem(-1, 0, "Amethyst Shard");
         tintedGlassRecipe.addItem(0, -1, "Amethyst Shard");
         tintedGlassRecipe.addItem(0, 0, "Glass");
         tintedGlassRecipe.addItem(0, 1, "Amethyst Shard");
         tintedGlassRecipe.addItem(1, 0, "Amethyst Shard");
+        tintedGlassRecipe.setOutputCount(2);
         craftingItems.add(
                 ItemFactory.createCraftingItem("Tinted Glass",
                         "images/tinted_glass.png", tintedGlassRecipe));
 
         // TNT
-        final Recipe tntRecipe = new Recipe();
+        final ShapedRecipe tntRecipe = new ShapedRecipe();
         tntRecipe.addItem(-1, -1, "Gunpowder");
         tntRecipe.addItem(-1, 0, "Sand");
         tntRecipe.addItem(-1, 1, "Gunpowder");
@@ -483,144 +693,220 @@ public class GameController {
     public void startGame()
     {
         gamesPlayed++;
-        score = 0;
-        currentQuestion = 0;
-
-        // Initialize available items and shuffle
-        availableItems = new ArrayList<>(craftingItems);
-        Collections.shuffle(availableItems);
 
-        // Set totalQuestions to min(10, available items)
-        totalQuestions = Math.min(10, availableItems.size());
+        // Ask up to 10 random items that fit on the grid
+        final Catalog current = catalog.get();
+        session = new GameSession(current.getQuestionGenerator().createQuestions(
+                current.getFittingItems(gridSize), QUESTIONS_PER_GAME, new Random()),
+                gridSize);
 
         nextQuestion();
     }
 
     /**
-     * Generate the next question.
+     * Start a game in chain mode: the player crafts a sequence of items where each
+     * item is an ingredient of the next, ending with the final target. If no chain of
+     * the requested length and difficulty exists, another difficulty or a shorter
+     * chain is used.
+     *
+     * @param length     Number of items to craft
+     * @param difficulty Wanted difficulty
      */
-    public void nextQuestion()
+    public void startChainGame(final int length,
+                               final DependencyGraph.Difficulty difficulty)
     {
-        if(currentQuestion >= totalQuestions || availableItems.isEmpty())
+        final Catalog current = catalog.get();
+        final DependencyGraph graph = current.getDependencyGraph(gridSize);
+        final Random rand = new Random();
+        List<CraftingItem> chain = graph.sampleChain(length, difficulty, rand);
+        for(int l = Math.min(length, DependencyGraph.MAX_CHAIN_LENGTH);
+            chain.isEmpty() && l >= 1; l--)
         {
-            endGame();
-            return;
+            for(final DependencyGraph.Difficulty d : DependencyGraph.Difficulty.values())
+            {
+                if(chain.isEmpty())
+                {
+                    chain = graph.sampleChain(l, d, rand);
+                }
+            }
         }
 
-        currentQuestion++;
-        // Reset attempts
-        attemptsLeft = 2;
+        gamesPlayed++;
 
-        // Randomly select a crafting item
-        currentItem = availableItems.remove(0);
+        // Questions follow the chain in crafting order
+        final List<Question> questions = new ArrayList<>();
+        for(final CraftingItem item : chain)
+        {
+            questions.add(current.getQuestionGenerator().createQuestion(item, rand));
+        }
+        session = new GameSession(questions, gridSize);
 
-        // Generate options
-        generateOptions();
+        nextQuestion();
+    }
 
-        // Reset player recipe
-        playerRecipe.clear();
+    /**
+     * Create a tournament in which many players answer the same question sequence.
+     * The same seed always gives the same questions for this catalog.
+     *
+     * @param seed          Seed of the question sequence
+     * @param questionCount Number of questions
+     * @return New Tournament on the current grid size and question time limit
+     */
+    public Tournament createTournament(final long seed, final int questionCount)
+    {
+        return new Tournament(createQuestions(seed, questionCount), gridSize,
+                questionTimeLimitMillis);
+    }
 
-        // Update the UI accordingly
-        gameUi.updateUi();
+    /**
+     * Create a question sequence for the current grid size. The same seed always gives
+     * the same questions for this catalog, also in another process.
+     *
+     * @param seed          Seed of the question sequence
+     * @param questionCount Number of questions
+     * @return Questions
+     */
+    public List<Question> createQuestions(final long seed, final int questionCount)
+    {
+        final Catalog current = catalog.get();
+        return current.getQuestionGenerator().createQuestions(
+                current.getFittingItems(gridSize), questionCount, new Random(seed));
     }
 
     /**
-     * Generate options including correct materials and distractors.
+     * Get the dependency graph of the recipes that fit on the current grid.
+     *
+     * @return DependencyGraph for the current grid size
      */
-    private void generateOptions()
+    public DependencyGraph getDependencyGraph()
     {
-        optionItems = new ArrayList<>();
-        final Set<String> materialNames = new HashSet<>();
+        return catalog.get().getDependencyGraph(gridSize);
+    }
 
-        // Add correct materials
-        for(final Set<String> itemNames : currentItem.getRecipe().getRecipeMap().values())
+    /**
+     * Generate the next question.
+     */
+    public void nextQuestion()
+    {
+        cancelQuestionTimeout();
+        if(!session.nextQuestion())
         {
-            for(final String itemName : itemNames)
-            {
-                if(!materialNames.contains(itemName))
-                {
-                    materialNames.add(itemName);
-                    optionItems.add(getMaterialItemByName(itemName));
-                }
-            }
+            endGame();
+            return;
         }
-
-        // Add distractor materials
-        final Random rand = new Random();
-        while(optionItems.size() < 9 && optionItems.size() < materialItems.size())
+        if(questionTimeLimitMillis > 0)
         {
-            final MaterialItem material =
-                    materialItems.get(rand.nextInt(materialItems.size()));
-            if(!materialNames.contains(material.getName()))
-            {
-                materialNames.add(material.getName());
-                optionItems.add(material);
-            }
+            final int questionNumber = session.getQuestionNumber();
+            questionTimeout = TimerWheel.getInstance().schedule(
+                    () -> Platform.runLater(() -> timeUp(questionNumber)),
+                    questionTimeLimitMillis);
         }
 
-        // Shuffle options
-        Collections.shuffle(optionItems);
+        // Update the UI accordingly
+        gameUi.requestUiUpdate();
     }
 
     /**
-     * Get a material item by its name.
+     * Move on from a question after its feedback has been shown. Does nothing if the
+     * game has already moved on, e.g. because the player skipped meanwhile.
      *
-     * @param name Material item name
-     * @return MaterialItem object
+     * @param questionNumber Number of the question the feedback was for
      */
-    private MaterialItem getMaterialItemByName(final String name)
+    public void advanceFrom(final int questionNumber)
     {
-        for(final MaterialItem item : materialItems)
+        if(session.getQuestionNumber() == questionNumber && !session.isFinished())
         {
-            if(item.getName().equals(name))
-            {
-                return item;
-            }
+            nextQuestion();
         }
-        return null;
     }
 
     /**
      * Handle the player's action when they place an item on the crafting grid.
      *
-     * @param gridX    Grid X-coordinate (0 to 2)
-     * @param gridY    Grid Y-coordinate (0 to 2)
+     * @param gridX    Grid X-coordinate (0 to grid size - 1)
+     * @param gridY    Grid Y-coordinate (0 to grid size - 1)
      * @param itemName Name of the item placed
      */
     public void placeItemOnGrid(final int gridX, final int gridY, final String itemName)
     {
-        // Convert grid coordinates to recipe positions (-1, 0, 1)
-        final int x = gridX - 1;
-        final int y = 1 - gridY;
+        session.placeItemOnGrid(gridX, gridY, itemName);
+    }
+
+    /**
+     * Check if the player's grid crafts the current item right now.
+     *
+     * @return True if submitting would succeed
+     */
+    public boolean isGridMatching()
+    {
+        return session.isGridMatching();
+    }
+
+    /**
+     * Check if the current item can still be crafted by adding items to the grid.
+     *
+     * @return True if every placed item fits the recipe
+     */
+    public boolean isGridCompletable()
+    {
+        return session.isGridCompletable();
+    }
 
-        final Recipe.Position position = new Recipe.Position(x, y);
-        if(itemName != null)
+    /**
+     * Submit the player's recipe and check if it matches the correct recipe. After a
+     * correct answer or the last failed attempt, the UI shows the feedback and the
+     * game moves on after a pause.
+     */
+    public void submitRecipe()
+    {
+        final GameSession.SubmitResult result = session.submitRecipe();
+        if(result == GameSession.SubmitResult.CORRECT)
         {
-            playerRecipe.put(position, itemName);
+            gameUi.displayFeedback(true, false);
         } else
         {
-            playerRecipe.remove(position);
+            gameUi.displayFeedback(false, result == GameSession.SubmitResult.RETRY);
+        }
+        if(result != GameSession.SubmitResult.RETRY)
+        {
+            cancelQuestionTimeout();
+            scheduleAdvance(session.getQuestionNumber());
         }
     }
 
     /**
-     * Submit the player's recipe and check if it matches the correct recipe.
+     * End a question whose time limit ran out, unless the game has moved on.
+     *
+     * @param questionNumber Number of the question the limit was for
      */
-    public void submitRecipe()
+    private void timeUp(final int questionNumber)
     {
-        final boolean isCorrect = checkRecipe();
-        if(isCorrect)
+        if(session.getQuestionNumber() == questionNumber && !session.isFinished())
         {
-            score++;
-            gameUi.displayFeedback(true, false);
-        } else
+            gameUi.displayTimeUp();
+            scheduleAdvance(questionNumber);
+        }
+    }
+
+    /**
+     * Move on from a question once the feedback pause is over. The timer wheel fires
+     * off the JavaFX thread, so the move itself is handed back to it.
+     *
+     * @param questionNumber Number of the question to move on from
+     */
+    private void scheduleAdvance(final int questionNumber)
+    {
+        TimerWheel.getInstance().schedule(
+                () -> Platform.runLater(() -> advanceFrom(questionNumber)),
+                FEEDBACK_DELAY_MILLIS);
+    }
+
+    private void cancelQuestionTimeout()
+    {
+        if(questionTimeout != null)
         {
-            attemptsLeft--;
-            gameUi.displayFeedback(false, attemptsLeft > 0);
-            if(attemptsLeft <= 0)
-            {
-                nextQuestion();
-            }
+            questionTimeout.cancel();
+            questionTimeout = null;
         }
     }
 
@@ -633,209 +919,161 @@ public class GameController {
     }
 
     /**
-     * Check if the player's recipe matches the correct recipe, considering allowed
-     * transformations.
-     *
-     * @return True if correct, False otherwise
+     * End the game and show statistics.
      */
-    private boolean checkRecipe()
+    private void endGame()
     {
-        final Map<Recipe.Position, Set<String>> correctRecipe =
-                currentItem.getRecipe().getRecipeMap();
+        totalScore += session.getScore();
+        final double averageScore = (double) totalScore / gamesPlayed;
 
-        // Generate all allowed transformations of the correct recipe
-        final List<Map<Recipe.Position, Set<String>>> transformedRecipes =
-                generateTransformedRecipes(correctRecipe);
+        // Build statistics string
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Game Statistics:").append("\nGames Played: ").append(gamesPlayed)
+                .append("\nTotal Score: ").append(totalScore)
+                .append("\nAverage Score per Game: ")
+                .append(String.format("%.2f", averageScore));
 
-        // Compare player's recipe with each transformed recipe
-        for(final Map<Recipe.Position, Set<String>> transformedRecipe :
-                transformedRecipes)
+        // Show statistics
+        Platform.runLater(() ->
         {
-            if(recipesMatch(playerRecipe, transformedRecipe))
-            {
-                return true;
-            }
-        }
-        return false;
+            final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Game Statistics");
+            alert.setHeaderText(null);
+            alert.setContentText(sb.toString());
+            alert.showAndWait();
+
+            // Ask if the player wants to play again
+            gameUi.askToPlayAgain();
+        });
     }
 
     /**
-     * Generate all allowed transformations (translations and horizontal flips) of the
-     * recipe.
+     * Get the time allowed per question.
      *
-     * @param recipe Original recipe map
-     * @return List of transformed recipes
+     * @return Time limit in milliseconds, or 0 for no limit
      */
-    List<Map<Recipe.Position, Set<String>>> generateTransformedRecipes(
-            final Map<Recipe.Position, Set<String>> recipe)
+    public long getQuestionTimeLimitMillis()
     {
-        final List<Map<Recipe.Position, Set<String>>> transformedRecipes =
-                new ArrayList<>();
-
-        // Possible translations
-        final int[] dx = {-1, 0, 1};
-        final int[] dy = {-1, 0, 1};
-
-        for(final int tx : dx)
-        {
-            for(final int ty : dy)
-            {
-                if(canTranslate(recipe, tx, ty))
-                {
-                    final Map<Recipe.Position, Set<String>> translatedRecipe =
-                            translateRecipe(recipe, tx, ty);
-                    transformedRecipes.add(translatedRecipe);
-
-                    // Add horizontal flip of the translated recipe
-                    final Map<Recipe.Position, Set<String>> flippedRecipe =
-                            horizontalFlipRecipe(translatedRecipe);
-                    if(isWithinBounds(flippedRecipe))
-                    {
-                        transformedRecipes.add(flippedRecipe);
-                    }
-                }
-            }
-        }
+        return questionTimeLimitMillis;
+    }
 
-        return transformedRecipes;
+    /**
+     * Set the time allowed per question, starting with the next question. When it
+     * runs out, the question counts as failed.
+     *
+     * @param questionTimeLimitMillis Time limit in milliseconds, or 0 for no limit
+     */
+    public void setQuestionTimeLimitMillis(final long questionTimeLimitMillis)
+    {
+        this.questionTimeLimitMillis = Math.max(0, questionTimeLimitMillis);
     }
 
     /**
-     * Check if translating the recipe by (dx, dy) keeps all positions within bounds.
+     * Score the difficulty of every crafting item of a newly built catalog on the
+     * standard grid and store the scores with its items. Runs in the background;
+     * items have no score until their turn comes. Packed catalogs are not scored,
+     * since their item views are dropped and decoded again without the score.
      *
-     * @param recipe Original recipe map
-     * @param dx     Translation in X-direction
-     * @param dy     Translation in Y-direction
-     * @return True if translation keeps all positions within bounds, False otherwise
+     * @param scored Catalog to score
      */
-    private boolean canTranslate(final Map<Recipe.Position, Set<String>> recipe,
-                                 final int dx,
-                                 final int dy)
+    private static void scoreDifficulties(final Catalog scored)
     {
-        for(final Recipe.Position pos : recipe.keySet())
+        if(scored.isPacked())
+        {
+            return;
+        }
+        final Thread scorer = new Thread(() ->
         {
-            final int newX = pos.getX() + dx;
-            final int newY = pos.getY() + dy;
-            if(newX < -1 || newX > 1 || newY < -1 || newY > 1)
+            try
+            {
+                new SolutionCounter(Recipe.DEFAULT_GRID_SIZE).scoreCatalog(
+                        scored.getCraftingItems(), scored.getQuestionGenerator(),
+                        DIFFICULTY_SEED);
+            } catch(RuntimeException e)
             {
-                return false;
+                System.err.println("Error scoring catalog version " +
+                                   scored.getVersion());
+                e.printStackTrace();
             }
-        }
-        return true;
+        }, "difficulty-scoring-" + scored.getVersion());
+        scorer.setDaemon(true);
+        scorer.start();
     }
 
     /**
-     * Translate the recipe by given offsets.
+     * Get the index of which crafting items use which ingredients.
      *
-     * @param recipe Original recipe
-     * @param dx     Offset in X-direction
-     * @param dy     Offset in Y-direction
-     * @return Translated recipe
+     * @return IngredientIndex over all crafting items
      */
-    private Map<Recipe.Position, Set<String>> translateRecipe(
-            final Map<Recipe.Position, Set<String>> recipe, final int dx, final int dy)
+    public IngredientIndex getIngredientIndex()
     {
-        final Map<Recipe.Position, Set<String>> newRecipe = new HashMap<>();
-        for(final Map.Entry<Recipe.Position, Set<String>> entry : recipe.entrySet())
-        {
-            final int newX = entry.getKey().getX() + dx;
-            final int newY = entry.getKey().getY() + dy;
-            newRecipe.put(new Recipe.Position(newX, newY), entry.getValue());
-        }
-        return newRecipe;
+        return catalog.get().getIngredientIndex();
     }
 
     /**
-     * Perform a horizontal flip of the recipe.
+     * Get an ingredient item by its name.
      *
-     * @param recipe Original recipe
-     * @return Horizontally flipped recipe
+     * @param name Item name
+     * @return Item object, or null if no item has this name
      */
-    private Map<Recipe.Position, Set<String>> horizontalFlipRecipe(
-            final Map<Recipe.Position, Set<String>> recipe)
+    public Item getItemByName(final String name)
     {
-        final Map<Recipe.Position, Set<String>> newRecipe = new HashMap<>();
-        for(final Map.Entry<Recipe.Position, Set<String>> entry : recipe.entrySet())
-        {
-            final int newX = -entry.getKey().getX();
-            final int newY = entry.getKey().getY();
-            newRecipe.put(new Recipe.Position(newX, newY), entry.getValue());
-        }
-        return newRecipe;
+        return catalog.get().getItemByName(name);
     }
 
     /**
-     * Check if all positions in the recipe are within bounds.
+     * Get the search index over the names of all material and crafting items.
      *
-     * @param recipe Recipe map to check
-     * @return True if all positions are within bounds, False otherwise
+     * @return NameIndex over the catalog
      */
-    private boolean isWithinBounds(final Map<Recipe.Position, Set<String>> recipe)
+    public NameIndex getNameIndex()
     {
-        for(final Recipe.Position pos : recipe.keySet())
-        {
-            if(pos.getX() < -1 || pos.getX() > 1 || pos.getY() < -1 || pos.getY() > 1)
-            {
-                return false;
-            }
-        }
-        return true;
+        return catalog.get().getNameIndex();
     }
 
     /**
-     * Check if two recipes match exactly, considering acceptable materials.
+     * Get all crafting items of the catalog.
      *
-     * @param playerRecipe  Player's recipe
-     * @param correctRecipe Correct recipe
-     * @return True if recipes match, False otherwise
+     * @return Unmodifiable list of crafting items
      */
-    private boolean recipesMatch(final Map<Recipe.Position, String> playerRecipe,
-                                 final Map<Recipe.Position, Set<String>> correctRecipe)
+    public List<CraftingItem> getCraftingItems()
     {
-        if(playerRecipe.size() != correctRecipe.size())
-        {
-            return false;
-        }
-        for(final Map.Entry<Recipe.Position, Set<String>> entry :
-                correctRecipe.entrySet())
-        {
-            final String playerItemName = playerRecipe.get(entry.getKey());
-            final Set<String> acceptableItems = entry.getValue();
-            if(playerItemName == null || !acceptableItems.contains(playerItemName))
-            {
-                return false;
-            }
-        }
-        return true;
+        return catalog.get().getCraftingItems();
     }
 
     /**
-     * End the game and show statistics.
+     * Get the resolver for the raw materials needed to craft an item.
+     *
+     * @return CraftingTreeResolver over all crafting items
      */
-    private void endGame()
+    public CraftingTreeResolver getCraftingTreeResolver()
     {
-        totalScore += score;
-        final double averageScore = (double) totalScore / gamesPlayed;
+        return catalog.get().getCraftingTreeResolver();
+    }
 
-        // Build statistics string
-        final StringBuilder sb = new StringBuilder();
-        sb.append("Game Statistics:").append("\nGames Played: ").append(gamesPlayed)
-                .append("\nTotal Score: ").append(totalScore)
-                .append("\nAverage Score per Game: ")
-                .append(String.format("%.2f", averageScore));
+    /**
+     * Get the size of the crafting grid.
+     *
+     * @return Grid width and height in cells
+     */
+    public int getGridSize()
+    {
+        return gridSize;
+    }
 
-        // Show statistics
-        Platform.runLater(() ->
+    /**
+     * Set the size of the crafting grid, e.g. 2 for inventory crafting. Takes effect
+     * when the next game starts; only recipes that fit on the grid are asked.
+     *
+     * @param gridSize Grid width and height in cells
+     */
+    public void setGridSize(final int gridSize)
+    {
+        if(gridSize < 1)
         {
-            final Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("Game Statistics");
-            alert.setHeaderText(null);
-            alert.setContentText(sb.toString());
-            alert.showAndWait();
-
-            // Ask if the player wants to play again
-            gameUi.askToPlayAgain();
-        });
+            throw new IllegalArgumentException("Grid size must be positive.");
+        }
+        this.gridSize = gridSize;
     }
 
     /**
@@ -845,7 +1083,7 @@ public class GameController {
      */
     public CraftingItem getCurrentItem()
     {
-        return currentItem;
+        return session.getCurrentItem();
     }
 
     /**
@@ -855,7 +1093,17 @@ public class GameController {
      */
     public List<Item> getOptionItems()
     {
-        return optionItems;
+        return session.getOptionItems();
+    }
+
+    /**
+     * Get the number of the current question, counting from 1.
+     *
+     * @return Question number
+     */
+    public int getQuestionNumber()
+    {
+        return session.getQuestionNumber();
     }
 
     /**
@@ -865,7 +1113,7 @@ public class GameController {
      */
     public int getScore()
     {
-        return score;
+        return session.getScore();
     }
 
     /**
@@ -875,6 +1123,6 @@ public class GameController {
      */
     public int getRemainingQuestions()
     {
-        return totalQuestions - currentQuestion;
+        return session.getRemainingQuestions();
     }
 }
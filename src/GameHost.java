@@ -0,0 +1,64 @@
+/**
+ * Hosts tournament players: joins them and runs their actions. Implemented by a
+ * tournament in this process and by a router that forwards to game nodes, so players
+ * and bots work the same on one node and on many.
+ *
+ * @author Jiarui Xing
+ */
+public interface GameHost {
+    /**
+     * Add a player and show them the first question.
+     *
+     * @param playerId Unique player ID
+     * @return True if the player joined, False if the ID is already taken
+     */
+    boolean join(String playerId);
+
+    /**
+     * Place an item on a player's grid, or clear a cell.
+     *
+     * @param playerId Player ID
+     * @param gridX    Grid X-coordinate
+     * @param gridY    Grid Y-coordinate
+     * @param itemName Name of the item placed, or null to clear the cell
+     */
+    void placeItemOnGrid(String playerId, int gridX, int gridY, String itemName);
+
+    /**
+     * Submit a player's grid.
+     *
+     * @param playerId Player ID
+     * @return Outcome of the attempt, or null if the player has finished
+     */
+    GameSession.SubmitResult submitRecipe(String playerId);
+
+    /**
+     * Skip a player's current question.
+     *
+     * @param playerId Player ID
+     */
+    void skipQuestion(String playerId);
+
+    /**
+     * Get a player's current question.
+     *
+     * @param playerId Player ID
+     * @return Question, or null if the player has finished
+     */
+    Question getQuestion(String playerId);
+
+    /**
+     * Get a player's score.
+     *
+     * @param playerId Player ID
+     * @return Current score
+     */
+    int getScore(String playerId);
+
+    /**
+     * Get the size of the crafting grid.
+     *
+     * @return Grid size
+     */
+    int getGridSize();
+}
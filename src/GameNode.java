@@ -0,0 +1,280 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One game node of a cluster: hosts a tournament and serves it to routers over TCP.
+ * Each request is one line of tab-separated fields, a command followed by its
+ * arguments, and gets one line back, "OK" with the results or "ERR" with a message:
+ * <pre>
+ * INFO                        -> OK gridSize fingerprint
+ * JOIN player                 -> OK true|false
+ * PLACE player x y [item]     -> OK
+ * SUBMIT player               -> OK CORRECT|RETRY|FAILED|-
+ * SKIP player                 -> OK
+ * QUESTION player             -> OK question index, or -1 when finished
+ * SCORE player                -> OK score
+ * PLAYERS                     -> OK player count
+ * RESIDENT                    -> OK resident session count
+ * LIST                        -> OK player...
+ * EXPORT player               -> OK session in Base64; the player stays until
+ *                                REMOVE or CANCEL
+ * IMPORT player session       -> OK true|false
+ * REMOVE player               -> OK
+ * CANCEL player               -> OK
+ * </pre>
+ * Questions are never sent: every node and router builds the same question list from
+ * the same seed and catalog, and the fingerprint lets a router check that they agree.
+ * Items are sent by name; names that aren't in the catalog are rejected. Fields can't
+ * contain tabs or line breaks, so routers reject such player IDs and item names
+ * before sending them.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded through
+ * the game controller: {@code java GameNode [port] [seed] [questions] [idle millis]}.
+ * Port 0 picks a free port; the node prints the address it listens on once it is
+ * ready. With an idle time, idle sessions are passivated to a temporary file.
+ *
+ * @author Jiarui Xing
+ */
+public final class GameNode {
+    private final Tournament tournament;
+    private final Supplier<Catalog> catalogs;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+
+    /**
+     * Open a node on the loopback interface.
+     *
+     * @param tournament Tournament to host
+     * @param catalogs   Supplies the current catalog, to check item names against
+     * @param port       Port, or 0 for any free port
+     * @throws IOException if the port can't be opened
+     */
+    public GameNode(final Tournament tournament, final Supplier<Catalog> catalogs,
+                    final int port) throws IOException
+    {
+        this.tournament = tournament;
+        this.catalogs = catalogs;
+        server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        final AtomicInteger threadCount = new AtomicInteger();
+        connections = Executors.newCachedThreadPool(task ->
+        {
+            final Thread thread =
+                    new Thread(task, "game-node-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start accepting routers. Each connection is served on its own thread.
+     */
+    public void start()
+    {
+        final Thread acceptor = new Thread(this::accept, "game-node-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Stop accepting routers and close the open connections.
+     */
+    public void stop()
+    {
+        try
+        {
+            server.close();
+        } catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * Get the port the node listens on.
+     *
+     * @return Port
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Identify a question list, so a router can check that a node built the same one.
+     *
+     * @param questions Questions
+     * @return Fingerprint
+     */
+    static long fingerprint(final List<Question> questions)
+    {
+        final StringBuilder names = new StringBuilder();
+        for(final Question question : questions)
+        {
+            names.append(question.getItem().getName()).append('\n');
+        }
+        return HashRing.hash(names.toString());
+    }
+
+    private void accept()
+    {
+        try
+        {
+            while(true)
+            {
+                final Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        } catch(IOException e)
+        {
+            // Stopped
+        }
+    }
+
+    private void serve(final Socket socket)
+    {
+        try(socket; final BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            final Writer out = new BufferedWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            socket.setTcpNoDelay(true);
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                String reply;
+                try
+                {
+                    reply = "OK" + handle(line.split("\t", -1));
+                } catch(RuntimeException e)
+                {
+                    reply = "ERR\t" + String.valueOf(e.getMessage()).replace('\n', ' ');
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+            }
+        } catch(SocketException e)
+        {
+            // Router went away
+        } catch(IOException e)
+        {
+            System.err.println("Error serving router: " +
+                               socket.getRemoteSocketAddress());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run one request.
+     *
+     * @param fields Command and arguments
+     * @return Results, each preceded by a tab
+     */
+    private String handle(final String[] fields)
+    {
+        return switch(fields[0])
+        {
+            case "INFO" -> "\t" + tournament.getGridSize() + "\t" +
+                           fingerprint(tournament.getQuestions());
+            case "JOIN" -> "\t" + tournament.join(fields[1]);
+            case "PLACE" ->
+            {
+                final String itemName =
+                        fields.length > 4 && !fields[4].isEmpty() ? fields[4] : null;
+                if(itemName != null && catalogs.get().getItemByName(itemName) == null)
+                {
+                    throw new IllegalArgumentException("Unknown item: " + itemName);
+                }
+                tournament.placeItemOnGrid(fields[1], Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), itemName);
+                yield "";
+            }
+            case "SUBMIT" ->
+            {
+                final GameSession.SubmitResult result =
+                        tournament.submitRecipe(fields[1]);
+                yield "\t" + (result == null ? "-" : result.name());
+            }
+            case "SKIP" ->
+            {
+                tournament.skipQuestion(fields[1]);
+                yield "";
+            }
+            case "QUESTION" ->
+            {
+                final Question question = tournament.getQuestion(fields[1]);
+                yield "\t" + (question == null ? -1 :
+                        tournament.getQuestions().indexOf(question));
+            }
+            case "SCORE" -> "\t" + tournament.getScore(fields[1]);
+            case "PLAYERS" -> "\t" + tournament.getPlayerCount();
+            case "RESIDENT" -> "\t" + tournament.getResidentSessionCount();
+            case "LIST" ->
+            {
+                final StringBuilder ids = new StringBuilder();
+                for(final String playerId : tournament.getPlayerIds())
+                {
+                    ids.append('\t').append(playerId);
+                }
+                yield ids.toString();
+            }
+            case "EXPORT" -> "\t" + Base64.getEncoder()
+                    .encodeToString(tournament.exportSession(fields[1]));
+            case "IMPORT" -> "\t" + tournament.importSession(fields[1],
+                    Base64.getDecoder().decode(fields[2]));
+            case "REMOVE" ->
+            {
+                tournament.removePlayer(fields[1]);
+                yield "";
+            }
+            case "CANCEL" ->
+            {
+                tournament.cancelExport(fields[1]);
+                yield "";
+            }
+            default ->
+                    throw new IllegalArgumentException("Unknown command: " + fields[0]);
+        };
+    }
+
+    /**
+     * Run a node until the process is killed, accepting routers on the main thread.
+     *
+     * @param args Optional port, seed, questions per game and idle time in milliseconds
+     * @throws IOException if the port or session store can't be opened
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        final long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        final int questions = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        final GameController controller = GameController.getInstance(null);
+        final Tournament tournament = controller.createTournament(seed, questions);
+        if(args.length > 3)
+        {
+            final Path storeFile = Files.createTempFile("game-node-", ".sessions");
+            tournament.enablePassivation(new SessionStore(storeFile),
+                    Long.parseLong(args[3]), Runtime.getRuntime().maxMemory() / 4);
+        }
+        final GameNode node = new GameNode(tournament, controller::getCatalog, port);
+        System.out.println("Game node listening on " +
+                           InetAddress.getLoopbackAddress().getHostAddress() + ":" +
+                           node.getPort());
+        System.out.flush();
+        node.accept();
+    }
+}
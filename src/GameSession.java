@@ -0,0 +1,370 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one player working through a list of questions: the current question, the
+ * items placed on the grid, the score and the remaining attempts. A session has no
+ * UI; callers decide when to move on to the next question.
+ *
+ * @author Jiarui Xing
+ */
+public class GameSession {
+    public static final int ATTEMPTS_PER_QUESTION = 2;
+
+    // Format of toBytes, bumped on incompatible changes
+    private static final int FORMAT = 2;
+
+    /**
+     * Outcome of submitting a grid.
+     */
+    public enum SubmitResult {
+        // The grid crafts the item; the score was increased
+        CORRECT,
+        // Wrong, but attempts remain for this question
+        RETRY,
+        // Wrong and no attempts remain
+        FAILED
+    }
+
+    private final List<Question> questions;
+    private final int gridSize;
+
+    private int currentQuestion = 0;
+    private Question question;
+    private final Map<Recipe.Position, String> playerRecipe;
+
+    // Kept up to date on every placement; answers submits without the matcher
+    private LiveMatch liveMatch;
+    private int score = 0;
+    private int attemptsLeft = ATTEMPTS_PER_QUESTION;
+
+    /**
+     * Create a session. Call {@link #nextQuestion()} to show the first question.
+     *
+     * @param questions Questions in order; may be shared with other sessions
+     * @param gridSize  Size of the crafting grid
+     */
+    public GameSession(final List<Question> questions, final int gridSize)
+    {
+        this.questions = questions;
+        this.gridSize = gridSize;
+        playerRecipe = new HashMap<>();
+    }
+
+    /**
+     * Move on to the next question, clearing the grid.
+     *
+     * @return True if there was another question, False if the session is finished
+     */
+    public boolean nextQuestion()
+    {
+        if(currentQuestion >= questions.size())
+        {
+            question = null;
+            return false;
+        }
+        question = questions.get(currentQuestion++);
+        attemptsLeft = ATTEMPTS_PER_QUESTION;
+        playerRecipe.clear();
+        liveMatch = new LiveMatch(question.getItem().getRecipe(), gridSize);
+        return true;
+    }
+
+    /**
+     * Place an item on the grid, or clear a cell.
+     *
+     * @param gridX    Grid X-coordinate (0 to grid size - 1)
+     * @param gridY    Grid Y-coordinate (0 to grid size - 1)
+     * @param itemName Name of the item placed, or null to clear the cell
+     */
+    public void placeItemOnGrid(final int gridX, final int gridY, final String itemName)
+    {
+        final Recipe.Position position =
+                Recipe.Position.fromGrid(gridX, gridY, gridSize);
+        if(itemName != null)
+        {
+            playerRecipe.put(position, itemName);
+        } else
+        {
+            playerRecipe.remove(position);
+        }
+        if(liveMatch != null)
+        {
+            liveMatch.place(gridX, gridY, itemName);
+        }
+    }
+
+    /**
+     * Check the grid against the current question's recipe.
+     *
+     * @return Outcome of the attempt
+     */
+    public SubmitResult submitRecipe()
+    {
+        if(liveMatch.matches())
+        {
+            score++;
+            return SubmitResult.CORRECT;
+        }
+        attemptsLeft--;
+        return attemptsLeft > 0 ? SubmitResult.RETRY : SubmitResult.FAILED;
+    }
+
+    /**
+     * Check if the grid crafts the current item right now, without submitting.
+     *
+     * @return True if the grid matches
+     */
+    public boolean isGridMatching()
+    {
+        return liveMatch != null && liveMatch.matches();
+    }
+
+    /**
+     * Check if the current item can still be crafted by adding items to the grid.
+     *
+     * @return True if every placed item fits the recipe
+     */
+    public boolean isGridCompletable()
+    {
+        return liveMatch != null && liveMatch.isCompletable();
+    }
+
+    /**
+     * Check if all questions have been used up.
+     *
+     * @return True if there is no current question
+     */
+    public boolean isFinished()
+    {
+        return question == null;
+    }
+
+    /**
+     * Get the current question.
+     *
+     * @return Question, or null before the first or after the last question
+     */
+    public Question getQuestion()
+    {
+        return question;
+    }
+
+    /**
+     * Get the current item to craft.
+     *
+     * @return Current CraftingItem, or null if there is no current question
+     */
+    public CraftingItem getCurrentItem()
+    {
+        return question == null ? null : question.getItem();
+    }
+
+    /**
+     * Get the options of the current question.
+     *
+     * @return List of Items, or an empty list if there is no current question
+     */
+    public List<Item> getOptionItems()
+    {
+        return question == null ? List.of() : question.getOptionItems();
+    }
+
+    /**
+     * Get the items currently on the grid.
+     *
+     * @return Map of occupied positions to item names
+     */
+    public Map<Recipe.Position, String> getPlayerRecipe()
+    {
+        return playerRecipe;
+    }
+
+    /**
+     * Get the current score.
+     *
+     * @return Number of correctly crafted items
+     */
+    public int getScore()
+    {
+        return score;
+    }
+
+    /**
+     * Get the remaining attempts for the current question.
+     *
+     * @return Attempts left
+     */
+    public int getAttemptsLeft()
+    {
+        return attemptsLeft;
+    }
+
+    /**
+     * Get the number of the current question, counting from 1. Changes every time
+     * the session moves on, so it identifies the question an action was meant for.
+     *
+     * @return Question number, or 0 before the first question
+     */
+    public int getQuestionNumber()
+    {
+        return currentQuestion;
+    }
+
+    /**
+     * Get the number of questions not yet shown.
+     *
+     * @return Remaining questions
+     */
+    public int getRemainingQuestions()
+    {
+        return questions.size() - currentQuestion;
+    }
+
+    /**
+     * Get the size of the crafting grid.
+     *
+     * @return Grid size
+     */
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    /**
+     * Estimate the heap used by this session, not counting the shared questions.
+     *
+     * @return Approximate size in bytes
+     */
+    public long estimateFootprint()
+    {
+        return 64 + playerRecipe.size() * 64L +
+               (liveMatch == null ? 0 : liveMatch.estimateFootprint());
+    }
+
+    /**
+     * Write the state of the session in a compact binary form: the question number,
+     * counters and the occupied cells, with each distinct item name written once. The
+     * questions themselves are not written. The form does not depend on the process,
+     * so sessions can move between game nodes with the same question list.
+     *
+     * @return Serialized session
+     */
+    public byte[] toBytes()
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try(final DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeByte(FORMAT);
+            out.writeShort(currentQuestion);
+            out.writeBoolean(question != null);
+            out.writeShort(score);
+            out.writeByte(attemptsLeft);
+
+            final List<String> names = new ArrayList<>();
+            for(final String name : playerRecipe.values())
+            {
+                if(!names.contains(name))
+                {
+                    names.add(name);
+                }
+            }
+            out.writeByte(names.size());
+            for(final String name : names)
+            {
+                out.writeUTF(name);
+            }
+            out.writeShort(playerRecipe.size());
+            for(final Map.Entry<Recipe.Position, String> entry : playerRecipe.entrySet())
+            {
+                final Recipe.Position position = entry.getKey();
+                final int row = Recipe.Position.max(gridSize) - position.getY();
+                final int col = position.getX() - Recipe.Position.min(gridSize);
+                out.writeShort(row * gridSize + col);
+                out.writeByte(names.indexOf(entry.getValue()));
+            }
+        } catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restore a session written by {@link #toBytes()}.
+     *
+     * @param questions Questions the session was created with
+     * @param gridSize  Size of the crafting grid
+     * @param data      Serialized session
+     * @return Session in the same state
+     * @throws IllegalArgumentException if the data is not a serialized session
+     */
+    public static GameSession fromBytes(final List<Question> questions,
+                                        final int gridSize, final byte[] data)
+    {
+        if(data == null)
+        {
+            throw new IllegalArgumentException("No session data.");
+        }
+        final GameSession session = new GameSession(questions, gridSize);
+        final int cellCount = gridSize * gridSize;
+        try(final DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(data)))
+        {
+            if(in.readByte() != FORMAT)
+            {
+                throw new IllegalArgumentException("Unknown session format.");
+            }
+            session.currentQuestion = in.readShort();
+            final boolean hasQuestion = in.readBoolean();
+            check(session.currentQuestion >= (hasQuestion ? 1 : 0) &&
+                  session.currentQuestion <= questions.size(), "question number");
+            if(hasQuestion)
+            {
+                session.question = questions.get(session.currentQuestion - 1);
+                session.liveMatch =
+                        new LiveMatch(session.question.getItem().getRecipe(), gridSize);
+            }
+            session.score = in.readShort();
+            session.attemptsLeft = in.readByte();
+            check(session.score >= 0 && session.attemptsLeft >= 0, "counters");
+
+            final String[] names = new String[in.readUnsignedByte()];
+            check(names.length <= cellCount, "name count");
+            for(int i = 0; i < names.length; i++)
+            {
+                names[i] = in.readUTF();
+            }
+            final int placedCount = in.readUnsignedShort();
+            check(placedCount <= cellCount, "cell count");
+            for(int i = 0; i < placedCount; i++)
+            {
+                final int cell = in.readUnsignedShort();
+                final int name = in.readUnsignedByte();
+                check(cell < cellCount, "cell index");
+                check(name < names.length, "name index");
+                session.placeItemOnGrid(cell % gridSize, cell / gridSize, names[name]);
+            }
+        } catch(IOException e)
+        {
+            throw new IllegalArgumentException("Truncated session data.", e);
+        }
+        return session;
+    }
+
+    private static void check(final boolean valid, final String field)
+    {
+        if(!valid)
+        {
+            throw new IllegalArgumentException("Invalid session data: " + field);
+        }
+    }
+}
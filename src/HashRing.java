@@ -0,0 +1,162 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent-hash ring that assigns keys, such as player IDs, to nodes. Every node is
+ * placed on the ring at many points, and a key belongs to the node at the first point
+ * at or after the key's hash. Adding or removing a node only moves the keys next to
+ * that node's points, roughly one node's share, and the points keep the shares even.
+ * <p>
+ * A ring is immutable; adding or removing a node gives a new ring, so lookups need no
+ * locking and a router can compare the owners before and after a change.
+ *
+ * @author Jiarui Xing
+ */
+public final class HashRing {
+    // Points per node; more points give more even shares
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final List<String> nodes;
+
+    // Sorted point hashes and the node at each point
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * Create a ring.
+     *
+     * @param nodes        Node names, e.g. addresses
+     * @param virtualNodes Points per node
+     */
+    public HashRing(final Collection<String> nodes, final int virtualNodes)
+    {
+        this.virtualNodes = virtualNodes;
+        this.nodes = List.copyOf(new LinkedHashSet<>(nodes));
+
+        final long[][] placed = new long[this.nodes.size() * virtualNodes][];
+        for(int n = 0; n < this.nodes.size(); n++)
+        {
+            for(int v = 0; v < virtualNodes; v++)
+            {
+                placed[n * virtualNodes + v] =
+                        new long[]{hash(this.nodes.get(n) + "#" + v), n};
+            }
+        }
+        // Order by hash, then by node so that colliding points resolve the same way
+        Arrays.sort(placed, Comparator.<long[]>comparingLong(point -> point[0])
+                .thenComparing(point -> this.nodes.get((int) point[1])));
+        points = new long[placed.length];
+        owners = new String[placed.length];
+        for(int i = 0; i < placed.length; i++)
+        {
+            points[i] = placed[i][0];
+            owners[i] = this.nodes.get((int) placed[i][1]);
+        }
+    }
+
+    /**
+     * Create a ring with the default number of points per node.
+     *
+     * @param nodes Node names
+     */
+    public HashRing(final Collection<String> nodes)
+    {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Get a ring with one more node.
+     *
+     * @param node Node name
+     * @return New ring, or this ring if the node is already on it
+     */
+    public HashRing withNode(final String node)
+    {
+        if(nodes.contains(node))
+        {
+            return this;
+        }
+        final List<String> changed = new ArrayList<>(nodes);
+        changed.add(node);
+        return new HashRing(changed, virtualNodes);
+    }
+
+    /**
+     * Get a ring without a node.
+     *
+     * @param node Node name
+     * @return New ring, or this ring if the node is not on it
+     */
+    public HashRing withoutNode(final String node)
+    {
+        if(!nodes.contains(node))
+        {
+            return this;
+        }
+        final List<String> changed = new ArrayList<>(nodes);
+        changed.remove(node);
+        return new HashRing(changed, virtualNodes);
+    }
+
+    /**
+     * Get the node that owns a key.
+     *
+     * @param key Key, e.g. a player ID
+     * @return Node name
+     * @throws IllegalStateException if the ring has no nodes
+     */
+    public String getNode(final String key)
+    {
+        if(points.length == 0)
+        {
+            throw new IllegalStateException("The ring has no nodes.");
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if(index < 0)
+        {
+            index = -index - 1;
+        } else
+        {
+            // Equal hashes are adjacent; take the first
+            while(index > 0 && points[index - 1] == points[index])
+            {
+                index--;
+            }
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Get the nodes on the ring.
+     *
+     * @return Unmodifiable list of node names, in the order they were added
+     */
+    public List<String> getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Hash a string to 64 bits: FNV-1a over the UTF-8 bytes, then a finalizer that
+     * spreads similar strings such as "node#1" and "node#2" across the ring.
+     *
+     * @param text Text to hash
+     * @return Hash
+     */
+    static long hash(final String text)
+    {
+        long h = 0xcbf29ce484222325L;
+        for(final byte b : text.getBytes(StandardCharsets.UTF_8))
+        {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,129 @@
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of images decoded directly at the size they are displayed at, so that image
+ * views never scale at render time and only the displayed size is kept in memory.
+ * Least recently used entries are dropped once the cache is full. Must only be used
+ * on the JavaFX application thread.
+ *
+ * @author Jiarui Xing
+ */
+public final class IconCache {
+    private static final int MAX_ENTRIES = 256;
+
+    private static final Map<String, Image> cache =
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Image> eldest)
+                {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private IconCache()
+    {
+    }
+
+    /**
+     * Get a square image at the given size.
+     *
+     * @param imagePath Relative path to the image (e.g., "images/wood_planks.png")
+     * @param size      Width and height in pixels
+     * @return Image or null if loading fails
+     */
+    public static Image get(final String imagePath, final int size)
+    {
+        return get(imagePath, size, size);
+    }
+
+    /**
+     * Get an image scaled to the given width and height.
+     *
+     * @param imagePath Relative path to the image
+     * @param width     Width in pixels
+     * @param height    Height in pixels
+     * @return Image or null if loading fails
+     */
+    public static Image get(final String imagePath, final int width, final int height)
+    {
+        final String key = imagePath + "@" + width + "x" + height;
+        Image image = cache.get(key);
+        if(image == null)
+        {
+            image = load(imagePath, width, height);
+            if(image != null)
+            {
+                cache.put(key, image);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Get a square image at the given size without waiting for it to be decoded. A new
+     * image is decoded on a background thread and shows up in image views once it is
+     * ready, so scrolling lists never stall on disk reads. Not suitable for canvas
+     * drawing, which would draw the image before it has loaded.
+     *
+     * @param imagePath Relative path to the image
+     * @param size      Width and height in pixels
+     * @return Image, possibly still loading, or null if the file doesn't exist
+     */
+    public static Image getAsync(final String imagePath, final int size)
+    {
+        final String key = imagePath + "@" + size + "x" + size;
+        final Image loaded = cache.get(key);
+        if(loaded != null)
+        {
+            return loaded;
+        }
+        final String asyncKey = key + "/async";
+        Image image = cache.get(asyncKey);
+        if(image == null)
+        {
+            final File file = new File(imagePath);
+            if(!file.exists())
+            {
+                return null;
+            }
+            image = new Image(file.toURI().toString(), size, size, false, true, true);
+            cache.put(asyncKey, image);
+        }
+        return image;
+    }
+
+    /**
+     * Decode an image at the requested size.
+     *
+     * @param imagePath Relative path to the image
+     * @param width     Width in pixels
+     * @param height    Height in pixels
+     * @return Image or null if loading fails
+     */
+    private static Image load(final String imagePath, final int width, final int height)
+    {
+        try
+        {
+            final File file = new File(imagePath);
+            if(file.exists())
+            {
+                final Image image =
+                        new Image(file.toURI().toString(), width, height, false, true);
+                return image.isError() ? null : image;
+            } else
+            {
+                System.err.println("Image not found: " + imagePath);
+                return null;
+            }
+        } catch(Exception e)
+        {
+            System.err.println("Error loading image: " + imagePath);
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.*;
+
+/**
+ * Inverted index from ingredient to the crafting items whose recipes use it, for the
+ * recipe book. Built once when the catalog is loaded: every crafting item gets a
+ * number, and every ingredient maps to a compressed bitmap of the numbers of the
+ * items that accept it in any slot. "Uses A and B" is the intersection of the two
+ * bitmaps, starting from the smaller one.
+ *
+ * @author Jiarui Xing
+ */
+public final class IngredientIndex {
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final List<CraftingItem> items;
+    private final Map<Integer, CompressedBitmap> usedIn;
+
+    /**
+     * Index a catalog. The list is kept and read again for the items a query finds,
+     * so it must not change.
+     *
+     * @param craftingItems All crafting items
+     */
+    public IngredientIndex(final List<CraftingItem> craftingItems)
+    {
+        items = craftingItems;
+        usedIn = new HashMap<>();
+        for(int i = 0; i < items.size(); i++)
+        {
+            final Recipe recipe = items.get(i).getRecipe();
+            for(final Set<String> alternatives : recipe.getIngredients())
+            {
+                for(final String name : alternatives)
+                {
+                    usedIn.computeIfAbsent(ItemIds.of(name), id -> new CompressedBitmap())
+                            .add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the crafting items whose recipes use all of the given ingredients.
+     *
+     * @param ingredients Ingredient items
+     * @return Matching crafting items in catalog order
+     */
+    public List<CraftingItem> getItemsUsing(final Item... ingredients)
+    {
+        final int[] ids = new int[ingredients.length];
+        for(int i = 0; i < ingredients.length; i++)
+        {
+            ids[i] = ingredients[i].getId();
+        }
+        return toItems(query(ids));
+    }
+
+    /**
+     * Get the crafting items whose recipes use all of the given ingredients.
+     *
+     * @param ingredientNames Ingredient names
+     * @return Matching crafting items in catalog order
+     */
+    public List<CraftingItem> getItemsUsing(final String... ingredientNames)
+    {
+        final int[] ids = new int[ingredientNames.length];
+        for(int i = 0; i < ingredientNames.length; i++)
+        {
+            ids[i] = ItemIds.find(ingredientNames[i]);
+        }
+        return toItems(query(ids));
+    }
+
+    /**
+     * Count the crafting items whose recipes use all of the given ingredients.
+     *
+     * @param ingredientNames Ingredient names
+     * @return Number of matching items
+     */
+    public int countItemsUsing(final String... ingredientNames)
+    {
+        final int[] ids = new int[ingredientNames.length];
+        for(int i = 0; i < ingredientNames.length; i++)
+        {
+            ids[i] = ItemIds.find(ingredientNames[i]);
+        }
+        return query(ids).getCardinality();
+    }
+
+    /**
+     * Intersect the bitmaps of some ingredients, smallest first.
+     *
+     * @param ids Ingredient IDs
+     * @return Item numbers using all of them
+     */
+    private CompressedBitmap query(final int[] ids)
+    {
+        if(ids.length == 0)
+        {
+            return EMPTY;
+        }
+        final CompressedBitmap[] bitmaps = new CompressedBitmap[ids.length];
+        for(int i = 0; i < ids.length; i++)
+        {
+            bitmaps[i] = usedIn.getOrDefault(ids[i], EMPTY);
+        }
+        Arrays.sort(bitmaps, Comparator.comparingInt(CompressedBitmap::getCardinality));
+        CompressedBitmap result = bitmaps[0];
+        for(int i = 1; i < bitmaps.length && !result.isEmpty(); i++)
+        {
+            result = result.and(bitmaps[i]);
+        }
+        return result;
+    }
+
+    private List<CraftingItem> toItems(final CompressedBitmap bitmap)
+    {
+        final List<CraftingItem> result = new ArrayList<>();
+        for(final int i : bitmap.toArray())
+        {
+            result.add(items.get(i));
+        }
+        return result;
+    }
+}
@@ -7,11 +7,23 @@
 public abstract class Item {
     protected final String name;
     protected final String imagePath;
+    protected final int id;
 
     public Item(final String name, final String imagePath)
     {
         this.name = name;
         this.imagePath = imagePath;
+        this.id = ItemIds.of(name);
+    }
+
+    /**
+     * Get the ID of the item. Items with the same name share an ID.
+     *
+     * @return item ID
+     */
+    public int getId()
+    {
+        return id;
     }
 
     /**
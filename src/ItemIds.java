@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns compact integer IDs to item names so that recipes can be compared as ints
+ * instead of strings. IDs are stable for the lifetime of the process; 0 is reserved
+ * for an empty grid cell.
+ * <p>
+ * Only names from the catalog and its recipes get IDs. Names that come from players
+ * are looked up with {@link #find}, which never assigns one, so untrusted input can't
+ * grow the table.
+ *
+ * @author Jiarui Xing
+ */
+public final class ItemIds {
+    public static final int EMPTY = 0;
+
+    // Returned by find for a name without an ID; no recipe accepts such an item
+    public static final int UNKNOWN = -1;
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final List<String> names = new ArrayList<>(List.of(""));
+
+    private ItemIds()
+    {
+    }
+
+    /**
+     * Get the ID of an item name, assigning a new one on first use.
+     *
+     * @param name Item name, or null for an empty cell
+     * @return Item ID
+     */
+    public static int of(final String name)
+    {
+        if(name == null)
+        {
+            return EMPTY;
+        }
+        final Integer id = ids.get(name);
+        return id != null ? id : intern(name);
+    }
+
+    /**
+     * Get the ID of an item name without assigning one.
+     *
+     * @param name Item name, or null for an empty cell
+     * @return Item ID, or {@link #UNKNOWN} if the name has none
+     */
+    public static int find(final String name)
+    {
+        if(name == null)
+        {
+            return EMPTY;
+        }
+        final Integer id = ids.get(name);
+        return id != null ? id : UNKNOWN;
+    }
+
+    /**
+     * Get the item name for an ID.
+     *
+     * @param id Item ID, not {@link #UNKNOWN}
+     * @return Item name, or null for {@link #EMPTY}
+     */
+    public static synchronized String nameOf(final int id)
+    {
+        return id == EMPTY ? null : names.get(id);
+    }
+
+    /**
+     * Get the number of IDs assigned so far, including {@link #EMPTY}.
+     *
+     * @return Size of the ID space
+     */
+    public static synchronized int size()
+    {
+        return names.size();
+    }
+
+    private static synchronized int intern(final String name)
+    {
+        final Integer existing = ids.get(name);
+        if(existing != null)
+        {
+            return existing;
+        }
+        final int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+        return id;
+    }
+}
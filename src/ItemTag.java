@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+ * Named group of interchangeable items, such as "#purpur_blocks", that recipe slots
+ * refer to instead of listing every alternative. Tags are defined in the
+ * {@link TagRegistry} of the catalog being built, and a tag may include other tags
+ * defined before it. Members are resolved once, when the tag is defined, into a
+ * bitset over item IDs; the tag is immutable afterwards, so every recipe slot that
+ * refers to it shares the same instance and checking a placed item is one bit test.
+ * <p>
+ * A tag is also a read-only set of item names in declaration order, so code that
+ * walks the alternatives of a slot works on tagged slots unchanged.
+ *
+ * @author Jiarui Xing
+ */
+public final class ItemTag extends AbstractSet<String> {
+    // Tag names start with this character
+    public static final char PREFIX = '#';
+
+    private final String name;
+    private final String[] members;
+    private final int[] sortedIds;
+    private final long[] words;
+
+    ItemTag(final String name, final Collection<String> members)
+    {
+        this.name = name;
+        this.members = members.toArray(new String[0]);
+        sortedIds = new int[this.members.length];
+        for(int i = 0; i < sortedIds.length; i++)
+        {
+            sortedIds[i] = ItemIds.of(this.members[i]);
+        }
+        Arrays.sort(sortedIds);
+        words = new long[sortedIds.length == 0 ? 0 :
+                (sortedIds[sortedIds.length - 1] >>> 6) + 1];
+        for(final int id : sortedIds)
+        {
+            words[id >>> 6] |= 1L << id;
+        }
+    }
+
+    /**
+     * Check if a name refers to a tag rather than an item.
+     *
+     * @param name Item or tag name
+     * @return True for a tag name
+     */
+    public static boolean isReference(final String name)
+    {
+        return !name.isEmpty() && name.charAt(0) == PREFIX;
+    }
+
+    /**
+     * Check if an item belongs to this tag.
+     *
+     * @param id Item ID
+     * @return True if the item is a member
+     */
+    public boolean contains(final int id)
+    {
+        return id > 0 && id >>> 6 < words.length && (words[id >>> 6] & 1L << id) != 0;
+    }
+
+    @Override
+    public boolean contains(final Object o)
+    {
+        return o instanceof String item && contains(ItemIds.find(item));
+    }
+
+    /**
+     * Get the IDs of the members.
+     *
+     * @return Sorted member IDs, shared; must not be modified
+     */
+    int[] getSortedIds()
+    {
+        return sortedIds;
+    }
+
+    /**
+     * Get the name of the tag.
+     *
+     * @return Tag name, starting with '#'
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+        return Collections.unmodifiableList(Arrays.asList(members)).iterator();
+    }
+
+    @Override
+    public int size()
+    {
+        return members.length;
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+/**
+ * Collects latency samples and reports percentiles. Not thread-safe: give each
+ * thread its own recorder and merge them at the end.
+ *
+ * @author Jiarui Xing
+ */
+public final class LatencyRecorder {
+    private long[] samples;
+    private int count = 0;
+
+    public LatencyRecorder()
+    {
+        samples = new long[1024];
+    }
+
+    /**
+     * Add a sample.
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(final long nanos)
+    {
+        if(count == samples.length)
+        {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /**
+     * Add all samples of another recorder.
+     *
+     * @param other Recorder to merge in
+     */
+    public void merge(final LatencyRecorder other)
+    {
+        if(count + other.count > samples.length)
+        {
+            samples = Arrays.copyOf(samples, Math.max(count + other.count, count * 2));
+        }
+        System.arraycopy(other.samples, 0, samples, count, other.count);
+        count += other.count;
+    }
+
+    /**
+     * Get the number of samples.
+     *
+     * @return Sample count
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Get a percentile of the samples, by the nearest-rank method.
+     *
+     * @param percentile Percentile (0 to 100)
+     * @return Latency in nanoseconds, or 0 if there are no samples
+     */
+    public long getPercentile(final double percentile)
+    {
+        if(count == 0)
+        {
+            return 0;
+        }
+        Arrays.sort(samples, 0, count);
+        final int rank = (int) Math.ceil(percentile / 100 * count);
+        return samples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+}
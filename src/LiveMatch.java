@@ -0,0 +1,365 @@
+import java.util.*;
+
+/**
+ * Incremental match state of one crafting grid against one recipe, updated on every
+ * placement so that "does the grid craft the item" and "can it still be completed"
+ * are answered without running the matcher.
+ * <p>
+ * A shaped recipe can sit on the grid in a few variants: every translation where its
+ * bounding box fits, and the mirrored orientation. For each variant the tracker
+ * counts the occupied cells that hold an acceptable item of that variant. The grid
+ * can still be completed if some variant accounts for every occupied cell, and
+ * matches if that variant also has all its cells filled. A placement only touches
+ * the variants covering the clicked cell, and a histogram of the counters keeps the
+ * best one at hand.
+ * <p>
+ * A shapeless recipe keeps how many of each item are still missing and how many are
+ * placed in excess. Shapeless recipes with alternative ingredients are checked by
+ * assignment, which only looks at the few placed items.
+ *
+ * @author Jiarui Xing
+ */
+public final class LiveMatch {
+    private final Layout layout;
+
+    // Item ID per grid cell (row-major from the top left), 0 for empty
+    private final int[] placed;
+    private final long[] occupancy;
+    private int occupied = 0;
+
+    // Shaped: correct cells per variant, variants per count, and the best count
+    private final int[] correct;
+    private final int[] histogram;
+    private int maxCorrect = 0;
+
+    // Shapeless: ingredients not yet placed and items placed beyond the recipe
+    private final Map<Integer, Integer> placedCounts;
+    private int missing;
+    private int excess = 0;
+
+    /**
+     * Start tracking an empty grid.
+     *
+     * @param recipe   Recipe to match against
+     * @param gridSize Size of the crafting grid
+     */
+    public LiveMatch(final Recipe recipe, final int gridSize)
+    {
+        layout = recipe.getLiveLayout(gridSize);
+        placed = new int[gridSize * gridSize];
+        occupancy = new long[(placed.length + 63) / 64];
+        correct = new int[layout.variantCount];
+        histogram = new int[layout.cellCount + 1];
+        histogram[0] = layout.variantCount;
+        placedCounts = new HashMap<>();
+        missing = layout.cellCount;
+    }
+
+    /**
+     * Record a change of one cell.
+     *
+     * @param gridX    Grid X-coordinate (0 to grid size - 1)
+     * @param gridY    Grid Y-coordinate (0 to grid size - 1)
+     * @param itemName Name of the item placed, or null if the cell was cleared
+     */
+    public void place(final int gridX, final int gridY, final String itemName)
+    {
+        final int cell = gridY * layout.gridSize + gridX;
+        final int oldId = placed[cell];
+        final int newId = ItemIds.find(itemName);
+        if(oldId == newId)
+        {
+            return;
+        }
+        placed[cell] = newId;
+        if(oldId == ItemIds.EMPTY)
+        {
+            occupied++;
+            occupancy[cell >> 6] |= 1L << cell;
+        } else if(newId == ItemIds.EMPTY)
+        {
+            occupied--;
+            occupancy[cell >> 6] &= ~(1L << cell);
+        }
+
+        if(layout.shapeless)
+        {
+            if(oldId != ItemIds.EMPTY)
+            {
+                removeShapeless(oldId);
+            }
+            if(newId != ItemIds.EMPTY)
+            {
+                addShapeless(newId);
+            }
+            return;
+        }
+
+        final int[] variants = layout.coverVariants[cell];
+        final int[][] accepted = layout.coverIds[cell];
+        final ItemTag[] tags = layout.coverTags[cell];
+        for(int i = 0; i < variants.length; i++)
+        {
+            final boolean was = oldId != ItemIds.EMPTY &&
+                                ShapedMatcher.accepts(accepted[i], tags[i], oldId);
+            final boolean is = newId != ItemIds.EMPTY &&
+                               ShapedMatcher.accepts(accepted[i], tags[i], newId);
+            if(was != is)
+            {
+                final int v = variants[i];
+                histogram[correct[v]]--;
+                correct[v] += is ? 1 : -1;
+                histogram[correct[v]]++;
+                maxCorrect = Math.max(maxCorrect, correct[v]);
+            }
+        }
+        while(maxCorrect > 0 && histogram[maxCorrect] == 0)
+        {
+            maxCorrect--;
+        }
+    }
+
+    private void addShapeless(final int id)
+    {
+        final int count = placedCounts.merge(id, 1, Integer::sum);
+        if(count <= layout.requiredCounts.getOrDefault(id, 0))
+        {
+            missing--;
+        } else
+        {
+            excess++;
+        }
+    }
+
+    private void removeShapeless(final int id)
+    {
+        final int count = placedCounts.merge(id, -1, Integer::sum);
+        if(count < layout.requiredCounts.getOrDefault(id, 0))
+        {
+            missing++;
+        } else
+        {
+            excess--;
+        }
+    }
+
+    /**
+     * Check if the grid crafts the recipe right now.
+     *
+     * @return True if the grid matches
+     */
+    public boolean matches()
+    {
+        if(layout.cellCount == 0 || occupied != layout.cellCount)
+        {
+            return false;
+        }
+        if(!layout.shapeless)
+        {
+            return maxCorrect == layout.cellCount;
+        }
+        if(layout.requiredCounts != null)
+        {
+            return missing == 0 && excess == 0;
+        }
+        return !hasUnknown() && layout.shapelessRecipe.matches(placedNames());
+    }
+
+    /**
+     * Check if the recipe can still be completed by adding items, without removing
+     * or replacing any.
+     *
+     * @return True if every placed item fits the recipe
+     */
+    public boolean isCompletable()
+    {
+        if(layout.cellCount == 0 || occupied > layout.cellCount)
+        {
+            return false;
+        }
+        if(!layout.shapeless)
+        {
+            return layout.variantCount > 0 && maxCorrect == occupied;
+        }
+        if(layout.requiredCounts != null)
+        {
+            return excess == 0;
+        }
+        return !hasUnknown() && layout.shapelessRecipe.canHold(placedNames());
+    }
+
+    /**
+     * Check if a cell holds an item.
+     *
+     * @param gridX Grid X-coordinate (0 to grid size - 1)
+     * @param gridY Grid Y-coordinate (0 to grid size - 1)
+     * @return True if occupied
+     */
+    public boolean isOccupied(final int gridX, final int gridY)
+    {
+        final int cell = gridY * layout.gridSize + gridX;
+        return (occupancy[cell >> 6] & 1L << cell) != 0;
+    }
+
+    /**
+     * Get the number of occupied cells.
+     *
+     * @return Occupied cell count
+     */
+    public int getOccupiedCount()
+    {
+        return occupied;
+    }
+
+    /**
+     * Estimate the heap used by this tracker, not counting the shared layout.
+     *
+     * @return Approximate size in bytes
+     */
+    public long estimateFootprint()
+    {
+        return 96 + placed.length * 4L + occupancy.length * 8L + correct.length * 4L +
+               histogram.length * 4L + placedCounts.size() * 48L;
+    }
+
+    /**
+     * Check if an item without an ID is placed, which no recipe accepts.
+     */
+    private boolean hasUnknown()
+    {
+        return placedCounts.getOrDefault(ItemIds.UNKNOWN, 0) > 0;
+    }
+
+    private List<String> placedNames()
+    {
+        final List<String> names = new ArrayList<>(occupied);
+        for(final int id : placed)
+        {
+            if(id != ItemIds.EMPTY)
+            {
+                names.add(ItemIds.nameOf(id));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Immutable per-recipe tables for one grid size, shared by all trackers of that
+     * recipe.
+     */
+    static final class Layout {
+        private final int gridSize;
+        private final int cellCount;
+        private final boolean shapeless;
+
+        // Shaped: for each grid cell, the variants covering it and what they accept
+        private final int variantCount;
+        private final int[][] coverVariants;
+        private final int[][][] coverIds;
+        private final ItemTag[][] coverTags;
+
+        // Shapeless: required count per item ID, or null if alternatives exist
+        private final ShapelessRecipe shapelessRecipe;
+        private final Map<Integer, Integer> requiredCounts;
+
+        /**
+         * Build the tables of a recipe.
+         *
+         * @param recipe   Recipe to compile
+         * @param gridSize Size of the crafting grid
+         */
+        Layout(final Recipe recipe, final int gridSize)
+        {
+            this.gridSize = gridSize;
+            final int cells = gridSize * gridSize;
+            coverVariants = new int[cells][];
+            coverIds = new int[cells][][];
+            coverTags = new ItemTag[cells][];
+
+            if(recipe instanceof ShapelessRecipe shapelessRecipe)
+            {
+                shapeless = true;
+                this.shapelessRecipe = shapelessRecipe;
+                cellCount = shapelessRecipe.getIngredients().size();
+                variantCount = 0;
+                final int[] ids = shapelessRecipe.getSortedIds();
+                if(ids == null)
+                {
+                    requiredCounts = null;
+                } else
+                {
+                    requiredCounts = new HashMap<>();
+                    for(final int id : ids)
+                    {
+                        requiredCounts.merge(id, 1, Integer::sum);
+                    }
+                }
+                return;
+            }
+
+            shapeless = false;
+            shapelessRecipe = null;
+            requiredCounts = null;
+            final ShapedMatcher shape = ((ShapedRecipe) recipe).getMatcher();
+            cellCount = shape.getCellCount();
+            final int width = shape.getWidth();
+            final int height = shape.getHeight();
+
+            // Collect the covered cells of every orientation and translation
+            final List<List<Integer>> variants = new ArrayList<>();
+            final List<List<int[]>> ids = new ArrayList<>();
+            final List<List<ItemTag>> tags = new ArrayList<>();
+            for(int cell = 0; cell < cells; cell++)
+            {
+                variants.add(new ArrayList<>());
+                ids.add(new ArrayList<>());
+                tags.add(new ArrayList<>());
+            }
+            int count = 0;
+            final int orientations = shape.isSymmetric() ? 1 : 2;
+            for(int o = 0; o < orientations && cellCount > 0; o++)
+            {
+                for(int top = 0; top + height <= gridSize; top++)
+                {
+                    for(int left = 0; left + width <= gridSize; left++)
+                    {
+                        for(int row = 0; row < height; row++)
+                        {
+                            for(int col = 0; col < width; col++)
+                            {
+                                final int[] accepted = shape.getCell(o == 1, row, col);
+                                if(accepted != null)
+                                {
+                                    final int cell = (top + row) * gridSize + left + col;
+                                    variants.get(cell).add(count);
+                                    ids.get(cell).add(accepted);
+                                    tags.get(cell).add(
+                                            shape.getCellTag(o == 1, row, col));
+                                }
+                            }
+                        }
+                        count++;
+                    }
+                }
+            }
+            variantCount = count;
+            for(int cell = 0; cell < cells; cell++)
+            {
+                coverVariants[cell] =
+                        variants.get(cell).stream().mapToInt(Integer::intValue).toArray();
+                coverIds[cell] = ids.get(cell).toArray(new int[0][]);
+                coverTags[cell] = tags.get(cell).toArray(new ItemTag[0]);
+            }
+        }
+
+        /**
+         * Get the grid size the tables were built for.
+         *
+         * @return Grid size
+         */
+        int getGridSize()
+        {
+            return gridSize;
+        }
+    }
+}
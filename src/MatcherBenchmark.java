@@ -0,0 +1,188 @@
+import java.util.*;
+
+/**
+ * Compares checking grids one at a time with {@link Recipe#matches(Map)} against
+ * checking them in packed batches with {@link BatchMatcher}, over every recipe of the
+ * catalog. Half of the generated grids are correct placements (translated, mirrored,
+ * any alternative) and half are one cell off. Both paths must agree on every grid.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded
+ * through the game controller: {@code java MatcherBenchmark [grids per recipe]}.
+ *
+ * @author Jiarui Xing
+ */
+public class MatcherBenchmark {
+    private static final int DEFAULT_GRIDS_PER_RECIPE = 20_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Run the benchmark and print the throughput of both paths.
+     *
+     * @param args Optional number of grids per recipe
+     */
+    public static void main(final String[] args)
+    {
+        final int gridsPerRecipe =
+                args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GRIDS_PER_RECIPE;
+        final GameController controller = GameController.getInstance(null);
+        final int gridSize = controller.getGridSize();
+        final int cells = gridSize * gridSize;
+        final Random random = new Random(42);
+
+        final List<Recipe> recipes = new ArrayList<>();
+        final List<BatchMatcher> matchers = new ArrayList<>();
+        final List<List<Map<Recipe.Position, String>>> maps = new ArrayList<>();
+        final List<int[]> packed = new ArrayList<>();
+        for(final CraftingItem item : controller.getCraftingItems())
+        {
+            final Recipe recipe = item.getRecipe();
+            if(!recipe.fitsIn(gridSize))
+            {
+                continue;
+            }
+            final List<Map<Recipe.Position, String>> grids = new ArrayList<>();
+            final int[] batch = new int[gridsPerRecipe * cells];
+            for(int g = 0; g < gridsPerRecipe; g++)
+            {
+                final Map<Recipe.Position, String> grid =
+                        randomGrid(recipe, gridSize, random, g % 2 == 1);
+                grids.add(grid);
+                BatchMatcher.pack(grid, gridSize, batch, g * cells);
+            }
+            recipes.add(recipe);
+            matchers.add(new BatchMatcher(recipe, gridSize));
+            maps.add(grids);
+            packed.add(batch);
+        }
+        final long total = (long) recipes.size() * gridsPerRecipe;
+        System.out.println(recipes.size() + " recipes, " + total + " grids per round");
+
+        final boolean[] results = new boolean[gridsPerRecipe];
+        for(int round = 1; round <= ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            int singleMatches = 0;
+            for(int r = 0; r < recipes.size(); r++)
+            {
+                for(final Map<Recipe.Position, String> grid : maps.get(r))
+                {
+                    if(recipes.get(r).matches(grid))
+                    {
+                        singleMatches++;
+                    }
+                }
+            }
+            final long singleNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int batchMatches = 0;
+            for(int r = 0; r < recipes.size(); r++)
+            {
+                batchMatches +=
+                        matchers.get(r).matchAll(packed.get(r), gridsPerRecipe, results);
+            }
+            final long batchNanos = System.nanoTime() - start;
+
+            System.out.printf("Round %d: per grid %.1f M/s, batch %.1f M/s (%.1fx)%n",
+                    round, total * 1e3 / singleNanos, total * 1e3 / batchNanos,
+                    (double) singleNanos / batchNanos);
+            if(singleMatches != batchMatches)
+            {
+                throw new IllegalStateException("Match counts differ: " + singleMatches +
+                                                " vs " + batchMatches);
+            }
+        }
+
+        // Compare grid by grid once the timing is done
+        for(int r = 0; r < recipes.size(); r++)
+        {
+            matchers.get(r).matchAll(packed.get(r), gridsPerRecipe, results);
+            for(int g = 0; g < gridsPerRecipe; g++)
+            {
+                if(results[g] != recipes.get(r).matches(maps.get(r).get(g)))
+                {
+                    throw new IllegalStateException("Results differ on grid " + g +
+                                                    ": " + maps.get(r).get(g));
+                }
+            }
+        }
+        System.out.println("Both paths agree on every grid.");
+    }
+
+    /**
+     * Place a recipe on a grid at a random position and orientation.
+     *
+     * @param recipe   Recipe to place
+     * @param gridSize Size of the crafting grid
+     * @param random   Source of randomness
+     * @param spoil    True to change one cell afterwards
+     * @return Map of occupied positions to placed item names
+     */
+    private static Map<Recipe.Position, String> randomGrid(final Recipe recipe,
+                                                           final int gridSize,
+                                                           final Random random,
+                                                           final boolean spoil)
+    {
+        final String[] cells = new String[gridSize * gridSize];
+        final List<String> names = new ArrayList<>();
+        if(recipe instanceof ShapelessRecipe)
+        {
+            final List<Integer> free = new ArrayList<>();
+            for(int i = 0; i < cells.length; i++)
+            {
+                free.add(i);
+            }
+            Collections.shuffle(free, random);
+            int next = 0;
+            for(final Set<String> alternatives : recipe.getIngredients())
+            {
+                cells[free.get(next++)] = pick(alternatives, random);
+                names.addAll(alternatives);
+            }
+        } else
+        {
+            final ShapedMatcher shape = ((ShapedRecipe) recipe).getMatcher();
+            final boolean mirrored = random.nextBoolean();
+            final int top = random.nextInt(gridSize - shape.getHeight() + 1);
+            final int left = random.nextInt(gridSize - shape.getWidth() + 1);
+            for(int row = 0; row < shape.getHeight(); row++)
+            {
+                for(int col = 0; col < shape.getWidth(); col++)
+                {
+                    final int[] ids = shape.getCell(mirrored, row, col);
+                    if(ids != null)
+                    {
+                        final String name =
+                                ItemIds.nameOf(ids[random.nextInt(ids.length)]);
+                        cells[(top + row) * gridSize + left + col] = name;
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        if(spoil)
+        {
+            // Empty a cell, fill an empty one, or swap in another ingredient
+            final int cell = random.nextInt(cells.length);
+            cells[cell] = cells[cell] != null && random.nextBoolean() ? null :
+                    names.get(random.nextInt(names.size()));
+        }
+
+        final Map<Recipe.Position, String> grid = new HashMap<>();
+        for(int i = 0; i < cells.length; i++)
+        {
+            if(cells[i] != null)
+            {
+                grid.put(Recipe.Position.fromGrid(i % gridSize, i / gridSize, gridSize),
+                        cells[i]);
+            }
+        }
+        return grid;
+    }
+
+    private static String pick(final Set<String> alternatives, final Random random)
+    {
+        final List<String> list = new ArrayList<>(alternatives);
+        return list.get(random.nextInt(list.size()));
+    }
+}
@@ -1,9 +1,9 @@
-import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Cursor;
+import javafx.scene.Group;
 import javafx.scene.ImageCursor;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -11,11 +11,12 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
-import java.io.File;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Main class for the MinecraftItem game. Extends JavaFX Application and implements the
@@ -24,6 +25,9 @@ import java.util.List;
  * @author Jiarui Xing
  */
 public class MinecraftItem extends Application implements Game {
+    // Display sizes of option and target icons, and of items on the grid
+    private static final int ICON_SIZE = 64;
+    private static final int CELL_ICON_SIZE = 60;
 
     private GameController gameController;
 
@@ -34,14 +38,30 @@ public class MinecraftItem extends Application implements Game {
     private Label scoreLabel;
     private Label remainingLabel;
     private Label feedbackLabel;
+    private StackPane itemDisplayCell;
 
     private Stage primaryStage;
 
+    // Set when the single-canvas renderer is used instead of the scene graph
+    private CanvasRenderer canvasRenderer;
+
+    // Recipe book window, created when first opened
+    private RecipeBook recipeBook;
+
+    // Merges state-change notifications into one refresh per pulse
+    private final UiUpdateScheduler uiUpdates = new UiUpdateScheduler(this::updateUi);
+
     // Currently selected item
     private String selectedItemName = null;
     private String selectedItemImagePath = null;
     private ImageCursor selectedCursor = null;
 
+    // Cursors by item ID, so selecting an option never touches the disk, and the
+    // catalog version they were made for; a reload may change an item's image
+    private final Map<Integer, ImageCursor> cursorCache = new HashMap<>();
+    private int cursorCatalogVersion = 0;
+    private int cursorSize = 0;
+
     @Override
     public void start(final Stage primaryStage) throws Exception
     {
@@ -51,6 +71,12 @@ public class MinecraftItem extends Application implements Game {
         final Image appIcon = new Image("file:images/crafting_table.png");
         primaryStage.getIcons().add(appIcon);
 
+        if(isCanvasRendererSelected())
+        {
+            startCanvasRenderer();
+            return;
+        }
+
         // Initialize UI components
         initUiComponents();
 
@@ -82,7 +108,7 @@ public class MinecraftItem extends Application implements Game {
         centerPane.getChildren().add(craftingGrid);
 
         // Create item display cell
-        final StackPane itemDisplayCell = createItemDisplayCell();
+        itemDisplayCell = createItemDisplayCell();
         // Manually set item display cell position relative to background image
         itemDisplayCell.setLayoutX(368);
         itemDisplayCell.setLayoutY(104);
@@ -95,8 +121,6 @@ public class MinecraftItem extends Application implements Game {
 
         // Add item to craft ImageView to item display cell
         itemToCraftImageView = new ImageView();
-        itemToCraftImageView.setFitWidth(64);
-        itemToCraftImageView.setFitHeight(64);
         itemToCraftImageView.setVisible(false);
         itemDisplayCell.getChildren().add(itemToCraftImageView);
 
@@ -110,13 +134,19 @@ public class MinecraftItem extends Application implements Game {
         remainingLabel = new Label("Remaining Questions: 10");
         final Button skipButton = new Button("Skip");
         skipButton.setOnAction(e -> gameController.skipQuestion());
+        final Button chainButton = new Button("Chain Mode");
+        chainButton.setOnAction(
+                e -> gameController.startChainGame(3, DependencyGraph.Difficulty.MEDIUM));
+        final Button bookButton = new Button("Recipe Book");
+        bookButton.setOnAction(e -> openRecipeBook());
 
         // Initialize feedback label
         feedbackLabel = new Label("");
 
         // Add components to control area
         controlArea.getChildren()
-                .addAll(scoreLabel, remainingLabel, skipButton, feedbackLabel);
+                .addAll(scoreLabel, remainingLabel, skipButton, chainButton,
+                        bookButton, feedbackLabel);
         mainLayout.setBottom(controlArea);
 
         // Set the scene with specified size
@@ -125,9 +155,8 @@ public class MinecraftItem extends Application implements Game {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        // Start the game
+        // Start the game; the UI refreshes through the scheduler
         gameController.startGame();
-        updateUi();
 
         // Add click event to itemDisplayCell
         itemDisplayCell.setOnMouseClicked(event ->
@@ -139,6 +168,37 @@ public class MinecraftItem extends Application implements Game {
         });
     }
 
+    /**
+     * Check if the single-canvas renderer was chosen at startup, either with the
+     * parameter --renderer=canvas or the system property minecraftitem.renderer.
+     *
+     * @return True for the canvas renderer, False for the scene-graph UI
+     */
+    private boolean isCanvasRendererSelected()
+    {
+        final String renderer = getParameters() == null ? null :
+                getParameters().getNamed().get("renderer");
+        return "canvas".equalsIgnoreCase(renderer != null ? renderer :
+                System.getProperty("minecraftitem.renderer", "scene"));
+    }
+
+    /**
+     * Show the game using the single-canvas renderer and start it.
+     */
+    private void startCanvasRenderer()
+    {
+        canvasRenderer = new CanvasRenderer(gameController, this);
+        final Scene scene = new Scene(new Group(canvasRenderer.getCanvas()),
+                CanvasRenderer.WIDTH, CanvasRenderer.HEIGHT);
+        scene.setFill(Color.web("#c6c6c6"));
+        primaryStage.setTitle("MinecraftItem");
+        primaryStage.setScene(scene);
+        primaryStage.show();
+
+        // Start the game; the UI refreshes through the scheduler
+        gameController.startGame();
+    }
+
     /**
      * Initialize UI components, including top options and crafting grid.
      */
@@ -158,12 +218,10 @@ public class MinecraftItem extends Application implements Game {
     private ImageView createBackgroundImageView()
     {
         final ImageView bgImageView = new ImageView();
-        final Image bgImage = loadImage("images/background.png");
+        final Image bgImage = IconCache.get("images/background.png", 472, 266);
         if(bgImage != null)
         {
             bgImageView.setImage(bgImage);
-            bgImageView.setFitWidth(472);
-            bgImageView.setFitHeight(266);
         } else
         {
             // If background image fails to load, set a default background color
@@ -187,7 +245,7 @@ public class MinecraftItem extends Application implements Game {
     }
 
     /**
-     * Create the crafting grid (3x3 GridPane).
+     * Create the crafting grid (3x3 GridPane by default).
      *
      * @return Configured GridPane
      */
@@ -198,9 +256,10 @@ public class MinecraftItem extends Application implements Game {
         grid.setVgap(8);
         grid.setAlignment(Pos.CENTER);
 
-        for(int row = 0; row < 3; row++)
+        final int size = gameController.getGridSize();
+        for(int row = 0; row < size; row++)
         {
-            for(int col = 0; col < 3; col++)
+            for(int col = 0; col < size; col++)
             {
                 final StackPane cell = createCraftingCell(col, row);
                 grid.add(cell, col, row);
@@ -230,17 +289,16 @@ public class MinecraftItem extends Application implements Game {
                 if(selectedItemName != null && selectedItemImagePath != null)
                 {
                     // Place the selected item in the cell
-                    final Image image = loadImage(selectedItemImagePath);
-                    if(image != null)
+                    final ImageView imageView =
+                            createItemView(selectedItemImagePath, CELL_ICON_SIZE);
+                    if(imageView != null)
                     {
-                        ImageView imageView = new ImageView(image);
-                        imageView.setFitWidth(60);
-                        imageView.setFitHeight(60);
                         cell.getChildren().clear();
                         cell.getChildren().add(imageView);
 
                         // Update game controller
                         gameController.placeItemOnGrid(col, row, selectedItemName);
+                        updateMatchPreview();
                     }
                     // Reset cursor and selection
                     resetCursor();
@@ -249,43 +307,82 @@ public class MinecraftItem extends Application implements Game {
                     // If no item is selected, remove the item from the cell
                     cell.getChildren().clear();
                     gameController.placeItemOnGrid(col, row, null);
+                    updateMatchPreview();
                 }
             } else if(event.getButton() == MouseButton.SECONDARY)
             {
                 // Right-click to remove the item from the cell
                 cell.getChildren().clear();
                 gameController.placeItemOnGrid(col, row, null);
+                updateMatchPreview();
             }
         });
         return cell;
     }
 
     /**
-     * Update the UI components with the current game state.
+     * Show the recipe book window, creating it the first time.
+     */
+    public void openRecipeBook()
+    {
+        if(recipeBook == null)
+        {
+            recipeBook = new RecipeBook(gameController, primaryStage);
+        }
+        recipeBook.show();
+    }
+
+    /**
+     * Ask for the UI to be refreshed. Requests made before the refresh runs are
+     * merged into one, which reads the latest game state. May be called from any
+     * thread.
      */
-    public void updateUi()
+    public void requestUiUpdate()
     {
+        uiUpdates.publish();
+    }
+
+    /**
+     * Update the UI components with the current game state. Runs through the
+     * scheduler; use {@link #requestUiUpdate()} instead of calling it directly.
+     */
+    private void updateUi()
+    {
+        if(canvasRenderer != null)
+        {
+            canvasRenderer.updateUi();
+            return;
+        }
+
         // Update the top candidate items (1x9)
         topOptionsBox.getChildren().clear();
         final List<Item> options = gameController.getOptionItems();
         for(final Item item : options)
         {
-            final Image itemImage = loadImage(item.getImagePath());
-            final Button button = getButton(item, itemImage);
+            final Button button = getButton(item);
             topOptionsBox.getChildren().add(button);
+
+            // Build the cursor now rather than on the first click
+            getCursor(item);
         }
 
         // Update the item to craft display
         final String imagePath = gameController.getCurrentItem().getImagePath();
-        final Image image = loadImage(imagePath);
-        if(image != null)
+        final AnimatedSprite sprite = isAnimated(imagePath) ?
+                AnimatedSprite.get(imagePath, ICON_SIZE) : null;
+        final Image image = sprite == null ? IconCache.get(imagePath, ICON_SIZE) : null;
+        if(sprite != null)
         {
+            AnimationClock.getInstance().bind(itemToCraftImageView, sprite);
+            itemToCraftImageView.setVisible(true);
+        } else if(image != null)
+        {
+            AnimationClock.getInstance().unbind(itemToCraftImageView);
             itemToCraftImageView.setImage(image);
-            itemToCraftImageView.setFitWidth(64);
-            itemToCraftImageView.setFitHeight(64);
             itemToCraftImageView.setVisible(true);
         } else
         {
+            AnimationClock.getInstance().unbind(itemToCraftImageView);
             itemToCraftImageView.setImage(null);
             itemToCraftImageView.setVisible(false);
         }
@@ -307,22 +404,46 @@ public class MinecraftItem extends Application implements Game {
         // Reset cursor and selection
         resetCursor();
 
-        // Clear feedback label
+        // Clear feedback label and the match preview
         feedbackLabel.setText("");
+        updateMatchPreview();
+    }
+
+    /**
+     * Outline the item to craft by how the grid compares to its recipe, like the
+     * result slot in the game.
+     */
+    private void updateMatchPreview()
+    {
+        itemDisplayCell.setStyle("-fx-background-color: transparent; -fx-border-color: " +
+                                 getMatchPreviewColor() + ";");
+    }
+
+    /**
+     * Get the outline color of the item to craft: green if the grid crafts it now,
+     * red if it can no longer be completed.
+     *
+     * @return CSS color name
+     */
+    String getMatchPreviewColor()
+    {
+        if(gameController.isGridMatching())
+        {
+            return "green";
+        }
+        return gameController.isGridCompletable() ? "transparent" : "red";
     }
 
     /**
      * Create a button for the given item with its image.
      *
-     * @param item      The item to create a button for
-     * @param itemImage The image of the item
+     * @param item The item to create a button for
      * @return Configured Button
      */
-    private Button getButton(final Item item, final Image itemImage)
+    private Button getButton(final Item item)
     {
-        final ImageView imageView = new ImageView(itemImage);
-        imageView.setFitWidth(64);
-        imageView.setFitHeight(64);
+        final ImageView itemView = createItemView(item.getImagePath(), ICON_SIZE);
+        final ImageView imageView = itemView != null ? itemView : new ImageView();
         final Button button = new Button();
         button.setGraphic(imageView);
         button.setStyle("-fx-background-color: transparent;");
@@ -331,11 +452,10 @@ public class MinecraftItem extends Application implements Game {
             // Handle item selection
             selectedItemName = item.getName();
             selectedItemImagePath = item.getImagePath();
-            final Image cursorImage = loadImage(selectedItemImagePath);
-            if(cursorImage != null)
+            final ImageCursor cursor = getCursor(item);
+            if(cursor != null)
             {
-                selectedCursor = new ImageCursor(cursorImage, cursorImage.getWidth() / 2,
-                        cursorImage.getHeight() / 2);
+                selectedCursor = cursor;
                 primaryStage.getScene().setCursor(selectedCursor);
             }
         });
@@ -354,30 +474,83 @@ public class MinecraftItem extends Application implements Game {
     }
 
     /**
-     * Load an image from the given path.
+     * Create a view of an item image at the given size. Images are decoded at that
+     * size, and animated images are shown from a pre-decoded sprite driven by the
+     * shared animation clock, so the view never scales.
      *
-     * @param imagePath Relative path to the image (e.g., "images/wood_planks.png")
-     * @return Image object or null if loading fails
+     * @param imagePath Relative path to the image
+     * @param size      Display width and height
+     * @return ImageView, or null if the image can't be loaded
      */
-    private Image loadImage(final String imagePath)
+    private ImageView createItemView(final String imagePath, final int size)
     {
-        try
+        if(isAnimated(imagePath))
         {
-            final File file = new File(imagePath);
-            if(file.exists())
+            final AnimatedSprite sprite = AnimatedSprite.get(imagePath, size);
+            if(sprite != null)
             {
-                return new Image(file.toURI().toString());
-            } else
+                return AnimationClock.getInstance().createView(sprite);
+            }
+        }
+        final Image image = IconCache.get(imagePath, size);
+        return image == null ? null : new ImageView(image);
+    }
+
+    /**
+     * Get the cursor showing an item, creating it on first use.
+     *
+     * @param item Item to show on the cursor
+     * @return ImageCursor, or null if the item image can't be loaded
+     */
+    ImageCursor getCursor(final Item item)
+    {
+        final int catalogVersion = gameController.getCatalog().getVersion();
+        if(catalogVersion != cursorCatalogVersion)
+        {
+            cursorCache.clear();
+            cursorCatalogVersion = catalogVersion;
+        }
+        ImageCursor cursor = cursorCache.get(item.getId());
+        if(cursor == null)
+        {
+            final Image cursorImage = IconCache.get(item.getImagePath(), getCursorSize());
+            if(cursorImage == null)
             {
-                System.err.println("Image not found: " + imagePath);
                 return null;
             }
-        } catch(Exception e)
+            cursor = new ImageCursor(cursorImage, cursorImage.getWidth() / 2,
+                    cursorImage.getHeight() / 2);
+            cursorCache.put(item.getId(), cursor);
+        }
+        return cursor;
+    }
+
+    /**
+     * Get the cursor size the platform displays best, so cursor images are not
+     * rescaled by the system.
+     *
+     * @return Cursor width and height in pixels
+     */
+    private int getCursorSize()
+    {
+        if(cursorSize == 0)
         {
-            System.err.println("Error loading image: " + imagePath);
-            e.printStackTrace();
-            return null;
+            final int best =
+                    (int) ImageCursor.getBestSize(ICON_SIZE, ICON_SIZE).getWidth();
+            cursorSize = best > 0 ? best : ICON_SIZE;
         }
+        return cursorSize;
+    }
+
+    /**
+     * Check if an image is animated.
+     *
+     * @param imagePath Relative path to the image
+     * @return True for GIF images
+     */
+    private static boolean isAnimated(final String imagePath)
+    {
+        return imagePath.endsWith(".gif");
     }
 
     @Override
@@ -388,7 +561,8 @@ public class MinecraftItem extends Application implements Game {
     }
 
     /**
-     * Display feedback to the player using the feedback label.
+     * Display feedback to the player using the feedback label. Moving on to the next
+     * question is scheduled by the controller; the label is cleared when it does.
      *
      * @param isSuccess      True if success, False if failure
      * @param isFirstFailure True if it's the first failure, allowing retry
@@ -400,42 +574,45 @@ public class MinecraftItem extends Application implements Game {
             if(isSuccess)
             {
                 // Success: display feedback in green
-                feedbackLabel.setStyle("-fx-text-fill: green;");
-                feedbackLabel.setText("Crafting Successful!");
-                // Pause briefly before proceeding to next question
-                final PauseTransition pause = new PauseTransition(Duration.seconds(1));
-                pause.setOnFinished(event ->
-                {
-                    feedbackLabel.setText("");
-                    gameController.nextQuestion();
-                    updateUi();
-                });
-                pause.play();
-            } else
+                showFeedback("Crafting Successful!", "green");
+            } else if(isFirstFailure)
             {
                 // Failure: display feedback in red
-                feedbackLabel.setStyle("-fx-text-fill: red;");
-                if(isFirstFailure)
-                {
-                    feedbackLabel.setText("Crafting Failed, please try again!");
-                } else
-                {
-                    // Second failure: display feedback and proceed to next question
-                    feedbackLabel.setText("Crafting Failed!");
-                    final PauseTransition pause =
-                            new PauseTransition(Duration.seconds(1));
-                    pause.setOnFinished(event ->
-                    {
-                        feedbackLabel.setText("");
-                        gameController.nextQuestion();
-                        updateUi();
-                    });
-                    pause.play();
-                }
+                showFeedback("Crafting Failed, please try again!", "red");
+            } else
+            {
+                // Second failure: the next question follows after a pause
+                showFeedback("Crafting Failed!", "red");
             }
         });
     }
 
+    /**
+     * Tell the player that the time for the current question has run out.
+     */
+    public void displayTimeUp()
+    {
+        Platform.runLater(() -> showFeedback("Time's up!", "red"));
+    }
+
+    /**
+     * Show a feedback message with whichever renderer is active.
+     *
+     * @param text  Message, or an empty string to clear it
+     * @param color CSS color name
+     */
+    private void showFeedback(final String text, final String color)
+    {
+        if(canvasRenderer != null)
+        {
+            canvasRenderer.setFeedback(text, Color.web(color));
+        } else
+        {
+            feedbackLabel.setStyle("-fx-text-fill: " + color + ";");
+            feedbackLabel.setText(text);
+        }
+    }
+
     /**
      * Ask the player if they want to play again.
      */
@@ -455,7 +632,6 @@ public class MinecraftItem extends Application implements Game {
                 if(type == yesButton)
                 {
                     gameController.startGame();
-                    updateUi();
                 } else
                 {
                     // Exit the game or return to main menu
@@ -0,0 +1,277 @@
+import java.util.*;
+
+/**
+ * Search index over item names with prefix and fuzzy lookup. Every word of a name is
+ * a key on its own, so "red" finds Redstone Torch and "torch" finds it too. Searches
+ * ignore case.
+ * <p>
+ * The keys go into a trie that is built once and then flattened into arrays: the
+ * children of a node are stored next to each other, sorted by character, and the
+ * items below a node form one contiguous run of the posting array. A prefix search
+ * walks one node per typed character and reads the run. A fuzzy search walks the trie
+ * with one row of the edit distance table per node, stops descending once every entry
+ * of the row is over the limit, and takes the whole run of every node whose prefix
+ * is within the limit of the query.
+ *
+ * @author Jiarui Xing
+ */
+public final class NameIndex {
+    private final List<? extends Item> items;
+
+    // Flattened trie; node 0 is the root
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] postingStart;
+    private final int[] postingEnd;
+
+    // Item numbers in trie order
+    private final int[] postings;
+
+    /**
+     * Index the names of some items. The list is kept and read again for the items
+     * a search finds, so it must not change.
+     *
+     * @param catalog Items to index
+     */
+    public NameIndex(final List<? extends Item> catalog)
+    {
+        items = catalog;
+
+        final Node root = new Node();
+        int nodeCount = 1;
+        int postingCount = 0;
+        for(int i = 0; i < items.size(); i++)
+        {
+            final String name = items.get(i).getName().toLowerCase(Locale.ROOT);
+            for(int start = 0; start < name.length(); start++)
+            {
+                // Keys start at the beginning of each word
+                if(name.charAt(start) == ' ' ||
+                   start > 0 && name.charAt(start - 1) != ' ')
+                {
+                    continue;
+                }
+                Node node = root;
+                for(int c = start; c < name.length(); c++)
+                {
+                    final char label = name.charAt(c);
+                    Node child = node.children.get(label);
+                    if(child == null)
+                    {
+                        child = new Node();
+                        node.children.put(label, child);
+                        nodeCount++;
+                    }
+                    node = child;
+                }
+                node.items.add(i);
+                postingCount++;
+            }
+        }
+
+        labels = new char[nodeCount];
+        firstChild = new int[nodeCount];
+        childCount = new int[nodeCount];
+        postingStart = new int[nodeCount];
+        postingEnd = new int[nodeCount];
+        postings = new int[postingCount];
+
+        // Number nodes breadth-first so siblings are adjacent
+        final List<Node> order = new ArrayList<>(nodeCount);
+        order.add(root);
+        for(int n = 0; n < order.size(); n++)
+        {
+            final Node node = order.get(n);
+            node.number = n;
+            firstChild[n] = order.size();
+            childCount[n] = node.children.size();
+            for(final Map.Entry<Character, Node> entry : node.children.entrySet())
+            {
+                labels[order.size()] = entry.getKey();
+                order.add(entry.getValue());
+            }
+        }
+
+        // Lay out postings depth-first so every subtree is one run
+        fillPostings(root, 0);
+    }
+
+    private int fillPostings(final Node node, final int start)
+    {
+        int position = start;
+        postingStart[node.number] = start;
+        for(final int item : node.items)
+        {
+            postings[position++] = item;
+        }
+        for(final Node child : node.children.values())
+        {
+            position = fillPostings(child, position);
+        }
+        postingEnd[node.number] = position;
+        return position;
+    }
+
+    /**
+     * Find the items with a word that starts with the query.
+     *
+     * @param query Typed text, any case
+     * @param limit Maximum number of results
+     * @return Matching items, alphabetically by the matched word
+     */
+    public List<Item> searchPrefix(final String query, final int limit)
+    {
+        final String key = query.toLowerCase(Locale.ROOT);
+        int node = 0;
+        for(int i = 0; i < key.length() && node >= 0; i++)
+        {
+            node = child(node, key.charAt(i));
+        }
+        final Set<Integer> found = new LinkedHashSet<>();
+        if(node >= 0)
+        {
+            collect(node, found, limit);
+        }
+        return toItems(found);
+    }
+
+    /**
+     * Find the items with a word that starts with the query give or take a few typos:
+     * characters inserted, deleted or replaced.
+     *
+     * @param query    Typed text, any case
+     * @param maxEdits Maximum number of typos (0 is a prefix search)
+     * @param limit    Maximum number of results
+     * @return Matching items, closest first
+     */
+    public List<Item> searchFuzzy(final String query, final int maxEdits, final int limit)
+    {
+        final String key = query.toLowerCase(Locale.ROOT);
+        final int[] firstRow = new int[key.length() + 1];
+        for(int i = 0; i <= key.length(); i++)
+        {
+            firstRow[i] = i;
+        }
+
+        // Collect in order of distance so the closest matches fill the limit first
+        final List<List<Integer>> byDistance = new ArrayList<>();
+        for(int d = 0; d <= maxEdits; d++)
+        {
+            byDistance.add(new ArrayList<>());
+        }
+        if(firstRow[key.length()] <= maxEdits)
+        {
+            byDistance.get(firstRow[key.length()]).add(0);
+        } else
+        {
+            walk(0, key, firstRow, maxEdits, byDistance);
+        }
+
+        final Set<Integer> found = new LinkedHashSet<>();
+        for(final List<Integer> nodes : byDistance)
+        {
+            for(final int node : nodes)
+            {
+                collect(node, found, limit);
+            }
+        }
+        return toItems(found);
+    }
+
+    /**
+     * Visit the children of a node with the edit distance row of the node's prefix.
+     *
+     * @param node       Current node
+     * @param key        Lower-case query
+     * @param row        Distances from each query prefix to this node's prefix
+     * @param maxEdits   Maximum distance
+     * @param byDistance Output lists of matching nodes per distance
+     */
+    private void walk(final int node, final String key, final int[] row,
+                      final int maxEdits, final List<List<Integer>> byDistance)
+    {
+        for(int child = firstChild[node]; child < firstChild[node] + childCount[node];
+            child++)
+        {
+            final int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int best = next[0];
+            for(int i = 1; i < row.length; i++)
+            {
+                final int replace =
+                        row[i - 1] + (key.charAt(i - 1) == labels[child] ? 0 : 1);
+                next[i] = Math.min(replace, Math.min(row[i] + 1, next[i - 1] + 1));
+                best = Math.min(best, next[i]);
+            }
+            if(next[key.length()] <= maxEdits)
+            {
+                // The whole query is matched; everything below continues the word
+                byDistance.get(next[key.length()]).add(child);
+            }
+            if(best <= maxEdits && next[key.length()] > 0)
+            {
+                // A longer prefix may still be closer
+                walk(child, key, next, maxEdits, byDistance);
+            }
+        }
+    }
+
+    /**
+     * Get the number of trie nodes, a measure of the index size.
+     *
+     * @return Node count
+     */
+    public int getNodeCount()
+    {
+        return labels.length;
+    }
+
+    private int child(final int node, final char label)
+    {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while(low <= high)
+        {
+            final int middle = (low + high) >>> 1;
+            if(labels[middle] < label)
+            {
+                low = middle + 1;
+            } else if(labels[middle] > label)
+            {
+                high = middle - 1;
+            } else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private void collect(final int node, final Set<Integer> found, final int limit)
+    {
+        for(int p = postingStart[node]; p < postingEnd[node] && found.size() < limit; p++)
+        {
+            found.add(postings[p]);
+        }
+    }
+
+    private List<Item> toItems(final Set<Integer> found)
+    {
+        final List<Item> result = new ArrayList<>(found.size());
+        for(final int i : found)
+        {
+            result.add(items.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Trie node used while building.
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private final List<Integer> items = new ArrayList<>(1);
+        private int number;
+    }
+}
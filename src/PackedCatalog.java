@@ -0,0 +1,609 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Catalog stored in one buffer outside the Java heap, for catalogs too large to keep
+ * as item, recipe, map and set objects. The buffer is either allocated directly or
+ * mapped from a file written by {@link Builder#write(Path)}, in which case the
+ * operating system pages it in as needed and several processes can share it.
+ * <p>
+ * Items are read through views created on demand: a view is a normal
+ * {@link MaterialItem} or {@link CraftingItem} whose recipe is decoded from the buffer
+ * when first asked for. The most recently read views are kept, so reading the same
+ * item again returns the same view without decoding it again. Nothing else is kept
+ * per item, so the heap used by the catalog does not grow with its size, only with
+ * the views a caller holds on to.
+ * <p>
+ * The game runs on a packed catalog when the system property
+ * minecraftitem.catalogStore is set to packed; a {@link Catalog} then reads its items
+ * through the views. Since a view may be dropped and created again, its identity
+ * can change between reads; compare items by {@link Item#getId()}.
+ * <p>
+ * Layout, in big-endian ints:
+ * <pre>
+ * header     MAGIC, material count, crafting count, hash capacity,
+ *            offsets of the material table, crafting table, hash table,
+ *            recipes and strings
+ * materials  name, image (string offsets) per material
+ * crafting   name, image (string offsets), recipe offset per crafting item
+ * hash       slot per name: 0 if empty, else material index + 1, or
+ *            -(crafting index + 1); linear probing on String.hashCode
+ * recipes    kind (0 shaped, 1 shapeless), grid size, output count, slot count,
+ *            then per slot x, y, alternative count and that many string offsets
+ * strings    byte length, then UTF-8 bytes padded to a multiple of 4
+ * </pre>
+ * The buffer holds at most 2 GB. Tags are stored as their member lists.
+ *
+ * @author Jiarui Xing
+ */
+public final class PackedCatalog {
+    private static final int MAGIC = 0x4D434943;
+    private static final int HEADER_INTS = 9;
+
+    // Views kept for items read again
+    private static final int VIEW_CACHE_SIZE = 1024;
+
+    private final ByteBuffer buffer;
+    private final int materialCount;
+    private final int craftingCount;
+    private final int hashMask;
+    private final int materialTable;
+    private final int craftingTable;
+    private final int hashTable;
+    private final int recipes;
+    private final int strings;
+
+    // Recently read views by hash table value: material index + 1, or
+    // -(crafting index + 1)
+    private final Map<Integer, Item> views =
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Integer, Item> eldest)
+                {
+                    return size() > VIEW_CACHE_SIZE;
+                }
+            };
+
+    private PackedCatalog(final ByteBuffer buffer)
+    {
+        this.buffer = buffer.asReadOnlyBuffer();
+        if(buffer.getInt(0) != MAGIC)
+        {
+            throw new IllegalArgumentException("Not a packed catalog.");
+        }
+        materialCount = buffer.getInt(4);
+        craftingCount = buffer.getInt(8);
+        hashMask = buffer.getInt(12) - 1;
+        materialTable = buffer.getInt(16);
+        craftingTable = buffer.getInt(20);
+        hashTable = buffer.getInt(24);
+        recipes = buffer.getInt(28);
+        strings = buffer.getInt(32);
+    }
+
+    /**
+     * Map a catalog file written by {@link Builder#write(Path)}.
+     *
+     * @param file Catalog file
+     * @return Catalog reading straight from the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    public static PackedCatalog map(final Path file) throws IOException
+    {
+        try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return new PackedCatalog(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Pack lists of items into a direct buffer.
+     *
+     * @param materialItems Material items
+     * @param craftingItems Crafting items
+     * @return Packed catalog
+     */
+    public static PackedCatalog pack(final List<MaterialItem> materialItems,
+                                     final List<CraftingItem> craftingItems)
+    {
+        final Builder builder = new Builder();
+        for(final MaterialItem item : materialItems)
+        {
+            builder.addMaterial(item.getName(), item.getImagePath());
+        }
+        for(final CraftingItem item : craftingItems)
+        {
+            builder.addCraftingItem(item.getName(), item.getImagePath(),
+                    item.getRecipe());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the number of material items.
+     *
+     * @return Material count
+     */
+    public int getMaterialCount()
+    {
+        return materialCount;
+    }
+
+    /**
+     * Get the number of crafting items.
+     *
+     * @return Crafting item count
+     */
+    public int getCraftingCount()
+    {
+        return craftingCount;
+    }
+
+    /**
+     * Get the size of the packed catalog.
+     *
+     * @return Size in bytes
+     */
+    public int getByteSize()
+    {
+        return buffer.capacity();
+    }
+
+    /**
+     * Get a view of a material item.
+     *
+     * @param index Material index (0 to material count - 1)
+     * @return View of the item
+     */
+    public MaterialItem getMaterial(final int index)
+    {
+        Objects.checkIndex(index, materialCount);
+        return (MaterialItem) view(index + 1, key ->
+        {
+            final int entry = materialTable + index * 8;
+            return new MaterialItem(string(buffer.getInt(entry)),
+                    string(buffer.getInt(entry + 4)));
+        });
+    }
+
+    /**
+     * Get a view of a crafting item. Its recipe is decoded on first use.
+     *
+     * @param index Crafting item index (0 to crafting count - 1)
+     * @return View of the item
+     */
+    public CraftingItem getCraftingItem(final int index)
+    {
+        Objects.checkIndex(index, craftingCount);
+        return (CraftingItem) view(-(index + 1), key ->
+        {
+            final int entry = craftingTable + index * 12;
+            return new CraftingView(string(buffer.getInt(entry)),
+                    string(buffer.getInt(entry + 4)), buffer.getInt(entry + 8));
+        });
+    }
+
+    private Item view(final int key, final IntFunction<Item> create)
+    {
+        synchronized(views)
+        {
+            Item item = views.get(key);
+            if(item == null)
+            {
+                item = create.apply(key);
+                views.put(key, item);
+            }
+            return item;
+        }
+    }
+
+    /**
+     * Get all material items as a list whose elements are read when accessed.
+     *
+     * @return Unmodifiable list view
+     */
+    public List<MaterialItem> getMaterialItems()
+    {
+        return new Views<>(materialCount, this::getMaterial);
+    }
+
+    /**
+     * Get all crafting items as a list whose elements are read when accessed.
+     *
+     * @return Unmodifiable list view
+     */
+    public List<CraftingItem> getCraftingItems()
+    {
+        return new Views<>(craftingCount, this::getCraftingItem);
+    }
+
+    /**
+     * Look up an item by name, preferring materials like
+     * {@link QuestionGenerator#getItemByName(String)}.
+     *
+     * @param name Item name
+     * @return View of the item, or null if no item has this name
+     */
+    public Item getItemByName(final String name)
+    {
+        final byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        Item found = null;
+        for(int slot = name.hashCode() & hashMask; ; slot = slot + 1 & hashMask)
+        {
+            final int value = buffer.getInt(hashTable + slot * 4);
+            if(value == 0)
+            {
+                return found;
+            }
+            if(value > 0 && nameEquals(materialTable + (value - 1) * 8, key))
+            {
+                return getMaterial(value - 1);
+            }
+            if(value < 0 && found == null &&
+               nameEquals(craftingTable + (-value - 1) * 12, key))
+            {
+                found = getCraftingItem(-value - 1);
+            }
+        }
+    }
+
+    private boolean nameEquals(final int entry, final byte[] key)
+    {
+        final int offset = strings + buffer.getInt(entry);
+        if(buffer.getInt(offset) != key.length)
+        {
+            return false;
+        }
+        for(int i = 0; i < key.length; i++)
+        {
+            if(buffer.get(offset + 4 + i) != key[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(final int reference)
+    {
+        final int offset = strings + reference;
+        final byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode a recipe.
+     *
+     * @param reference Offset of the recipe within the recipe section
+     * @return New recipe object
+     */
+    private Recipe recipe(final int reference)
+    {
+        int offset = recipes + reference;
+        final boolean shapeless = buffer.getInt(offset) == 1;
+        final int gridSize = buffer.getInt(offset + 4);
+        final int outputCount = buffer.getInt(offset + 8);
+        final int slotCount = buffer.getInt(offset + 12);
+        offset += 16;
+
+        final Recipe recipe =
+                shapeless ? new ShapelessRecipe(gridSize) : new ShapedRecipe(gridSize);
+        for(int s = 0; s < slotCount; s++)
+        {
+            final int x = buffer.getInt(offset);
+            final int y = buffer.getInt(offset + 4);
+            final String[] names = new String[buffer.getInt(offset + 8)];
+            offset += 12;
+            for(int n = 0; n < names.length; n++)
+            {
+                names[n] = string(buffer.getInt(offset));
+                offset += 4;
+            }
+            if(recipe instanceof ShapedRecipe shaped)
+            {
+                shaped.addItem(x, y, names);
+            } else
+            {
+                ((ShapelessRecipe) recipe).addIngredient(names);
+            }
+        }
+        recipe.setOutputCount(outputCount);
+        return recipe;
+    }
+
+    /**
+     * Crafting item read from the buffer; the recipe is decoded once, when first used.
+     */
+    private final class CraftingView extends CraftingItem {
+        private final int recipeReference;
+        private volatile Recipe decoded;
+
+        private CraftingView(final String name, final String imagePath,
+                             final int recipeReference)
+        {
+            super(name, imagePath, null);
+            this.recipeReference = recipeReference;
+        }
+
+        @Override
+        public Recipe getRecipe()
+        {
+            Recipe recipe = decoded;
+            if(recipe == null)
+            {
+                recipe = recipe(recipeReference);
+                decoded = recipe;
+            }
+            return recipe;
+        }
+    }
+
+    /**
+     * Read-only list reading its elements from the catalog on access.
+     */
+    private static final class Views<T> extends AbstractList<T> implements RandomAccess {
+        private final int size;
+        private final IntFunction<T> view;
+
+        private Views(final int size, final IntFunction<T> view)
+        {
+            this.size = size;
+            this.view = view;
+        }
+
+        @Override
+        public T get(final int index)
+        {
+            return view.apply(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * Packs items one at a time. Strings used more than once, like ingredient names,
+     * are stored once.
+     */
+    public static final class Builder {
+        private final Section materials = new Section();
+        private final Section crafting = new Section();
+        private final Section recipeSection = new Section();
+        private final Section stringSection = new Section();
+        private final Map<String, Integer> stringOffsets = new HashMap<>();
+
+        // Hash of each name and its hash table value, in insertion order
+        private int[] nameHashes = new int[64];
+        private int[] hashValues = new int[64];
+        private int nameCount = 0;
+        private int materialCount = 0;
+        private int craftingCount = 0;
+
+        /**
+         * Add a material item.
+         *
+         * @param name      Item name
+         * @param imagePath Image path
+         * @return This builder
+         */
+        public Builder addMaterial(final String name, final String imagePath)
+        {
+            materials.putInt(string(name));
+            materials.putInt(string(imagePath));
+            addName(name, ++materialCount);
+            return this;
+        }
+
+        /**
+         * Add a crafting item.
+         *
+         * @param name      Item name
+         * @param imagePath Image path
+         * @param recipe    Recipe of the item
+         * @return This builder
+         */
+        public Builder addCraftingItem(final String name, final String imagePath,
+                                       final Recipe recipe)
+        {
+            crafting.putInt(string(name));
+            crafting.putInt(string(imagePath));
+            crafting.putInt(recipeSection.size());
+            addName(name, -++craftingCount);
+
+            recipeSection.putInt(recipe instanceof ShapelessRecipe ? 1 : 0);
+            recipeSection.putInt(recipe.getGridSize());
+            recipeSection.putInt(recipe.getOutputCount());
+            if(recipe instanceof ShapedRecipe shaped)
+            {
+                recipeSection.putInt(shaped.getRecipeMap().size());
+                for(final Map.Entry<Recipe.Position, Set<String>> slot :
+                        shaped.getRecipeMap().entrySet())
+                {
+                    putSlot(slot.getKey().getX(), slot.getKey().getY(), slot.getValue());
+                }
+            } else
+            {
+                recipeSection.putInt(recipe.getIngredients().size());
+                for(final Set<String> alternatives : recipe.getIngredients())
+                {
+                    putSlot(0, 0, alternatives);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Pack everything added so far into a direct buffer.
+         *
+         * @return Packed catalog
+         */
+        public PackedCatalog build()
+        {
+            return new PackedCatalog(toBuffer(ByteBuffer.allocateDirect(totalSize())));
+        }
+
+        /**
+         * Write everything added so far to a file, to be mapped with
+         * {@link PackedCatalog#map(Path)}.
+         *
+         * @param file File to create or overwrite
+         * @throws IOException if the file can't be written
+         */
+        public void write(final Path file) throws IOException
+        {
+            final ByteBuffer packed = toBuffer(ByteBuffer.allocate(totalSize()));
+            packed.flip();
+            try(final FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                while(packed.hasRemaining())
+                {
+                    channel.write(packed);
+                }
+            }
+        }
+
+        private int hashCapacity()
+        {
+            int capacity = 2;
+            while(capacity < nameCount * 2)
+            {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+
+        private int totalSize()
+        {
+            return HEADER_INTS * 4 + materials.size() + crafting.size() +
+                   hashCapacity() * 4 + recipeSection.size() + stringSection.size();
+        }
+
+        private ByteBuffer toBuffer(final ByteBuffer out)
+        {
+            final int capacity = hashCapacity();
+            final int materialTable = HEADER_INTS * 4;
+            final int craftingTable = materialTable + materials.size();
+            final int hashTable = craftingTable + crafting.size();
+            final int recipes = hashTable + capacity * 4;
+            final int strings = recipes + recipeSection.size();
+            out.putInt(MAGIC).putInt(materialCount).putInt(craftingCount).putInt(capacity)
+                    .putInt(materialTable).putInt(craftingTable).putInt(hashTable)
+                    .putInt(recipes).putInt(strings);
+            materials.copyTo(out);
+            crafting.copyTo(out);
+
+            final int[] slots = new int[capacity];
+            for(int i = 0; i < nameCount; i++)
+            {
+                int slot = nameHashes[i] & capacity - 1;
+                while(slots[slot] != 0)
+                {
+                    slot = slot + 1 & capacity - 1;
+                }
+                slots[slot] = hashValues[i];
+            }
+            for(final int value : slots)
+            {
+                out.putInt(value);
+            }
+            recipeSection.copyTo(out);
+            stringSection.copyTo(out);
+            return out;
+        }
+
+        private void putSlot(final int x, final int y, final Set<String> alternatives)
+        {
+            recipeSection.putInt(x);
+            recipeSection.putInt(y);
+            recipeSection.putInt(alternatives.size());
+            for(final String name : alternatives)
+            {
+                recipeSection.putInt(string(name));
+            }
+        }
+
+        private void addName(final String name, final int value)
+        {
+            if(nameCount == nameHashes.length)
+            {
+                nameHashes = Arrays.copyOf(nameHashes, nameCount * 2);
+                hashValues = Arrays.copyOf(hashValues, nameCount * 2);
+            }
+            nameHashes[nameCount] = name.hashCode();
+            hashValues[nameCount] = value;
+            nameCount++;
+        }
+
+        private int string(final String value)
+        {
+            final Integer known = stringOffsets.get(value);
+            if(known != null)
+            {
+                return known;
+            }
+            final int offset = stringSection.size();
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            stringSection.putInt(bytes.length);
+            stringSection.putBytes(bytes);
+            stringOffsets.put(value, offset);
+            return offset;
+        }
+    }
+
+    /**
+     * Growable byte array a section is written to before it is placed.
+     */
+    private static final class Section {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void putInt(final int value)
+        {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        private void putBytes(final byte[] value)
+        {
+            // Keep ints aligned
+            final int padded = value.length + 3 & ~3;
+            ensure(padded);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += padded;
+        }
+
+        private void ensure(final int extra)
+        {
+            if(size + extra > bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        private int size()
+        {
+            return size;
+        }
+
+        private void copyTo(final ByteBuffer out)
+        {
+            out.put(bytes, 0, size);
+        }
+    }
+}
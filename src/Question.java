@@ -0,0 +1,39 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One question of a game: the item to craft and the options offered to the player.
+ * Questions are immutable so that many sessions can share them.
+ *
+ * @author Jiarui Xing
+ */
+public final class Question {
+    private final CraftingItem item;
+    private final List<Item> optionItems;
+
+    public Question(final CraftingItem item, final List<Item> optionItems)
+    {
+        this.item = item;
+        this.optionItems = Collections.unmodifiableList(optionItems);
+    }
+
+    /**
+     * Get the item to craft.
+     *
+     * @return CraftingItem
+     */
+    public CraftingItem getItem()
+    {
+        return item;
+    }
+
+    /**
+     * Get the options offered for this question.
+     *
+     * @return Unmodifiable list of option items
+     */
+    public List<Item> getOptionItems()
+    {
+        return optionItems;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Creates questions from the item catalog. Options contain every ingredient of the
+ * recipe, padded with random distractor materials up to nine.
+ *
+ * @author Jiarui Xing
+ */
+public class QuestionGenerator {
+    // Options per question, unless the recipe alone accepts more items
+    public static final int OPTION_COUNT = 9;
+
+    private final List<MaterialItem> materialItems;
+    private final List<CraftingItem> craftingItems;
+
+    // Items by name; a material wins over a crafting item of the same name
+    private final Function<String, Item> itemsByName;
+
+    public QuestionGenerator(final List<MaterialItem> materialItems,
+                             final List<CraftingItem> craftingItems)
+    {
+        this(materialItems, craftingItems, byName(materialItems, craftingItems)::get);
+    }
+
+    /**
+     * Create a generator that looks items up by name elsewhere, for catalogs that
+     * already have a name index.
+     *
+     * @param materialItems Material items
+     * @param craftingItems Crafting items
+     * @param itemsByName   Lookup preferring materials, returning null for unknown
+     *                      names
+     */
+    public QuestionGenerator(final List<MaterialItem> materialItems,
+                             final List<CraftingItem> craftingItems,
+                             final Function<String, Item> itemsByName)
+    {
+        this.materialItems = materialItems;
+        this.craftingItems = craftingItems;
+        this.itemsByName = itemsByName;
+    }
+
+    private static Map<String, Item> byName(final List<MaterialItem> materialItems,
+                                            final List<CraftingItem> craftingItems)
+    {
+        final Map<String, Item> itemsByName = new HashMap<>();
+        for(final MaterialItem item : materialItems)
+        {
+            itemsByName.putIfAbsent(item.getName(), item);
+        }
+        for(final CraftingItem item : craftingItems)
+        {
+            itemsByName.putIfAbsent(item.getName(), item);
+        }
+        return itemsByName;
+    }
+
+    /**
+     * Create a question for the given item.
+     *
+     * @param item Item to craft
+     * @param rand Source of randomness for distractors and option order
+     * @return Question
+     */
+    public Question createQuestion(final CraftingItem item, final Random rand)
+    {
+        final List<Item> optionItems = new ArrayList<>();
+        final Set<String> materialNames = new HashSet<>();
+
+        // Add correct materials
+        for(final Set<String> itemNames : item.getRecipe().getIngredients())
+        {
+            for(final String itemName : itemNames)
+            {
+                if(!materialNames.contains(itemName))
+                {
+                    materialNames.add(itemName);
+                    optionItems.add(getItemByName(itemName));
+                }
+            }
+        }
+
+        // Add distractor materials
+        while(optionItems.size() < OPTION_COUNT &&
+              optionItems.size() < materialItems.size())
+        {
+            final MaterialItem material =
+                    materialItems.get(rand.nextInt(materialItems.size()));
+            if(!materialNames.contains(material.getName()))
+            {
+                materialNames.add(material.getName());
+                optionItems.add(material);
+            }
+        }
+
+        // Shuffle options
+        Collections.shuffle(optionItems, rand);
+        return new Question(item, optionItems);
+    }
+
+    /**
+     * Create a sequence of questions for randomly chosen items. The same seed and
+     * catalog always give the same sequence.
+     *
+     * @param items Items to choose from
+     * @param count Maximum number of questions
+     * @param rand  Source of randomness
+     * @return List of questions
+     */
+    public List<Question> createQuestions(final List<CraftingItem> items, final int count,
+                                          final Random rand)
+    {
+        final List<CraftingItem> shuffled = new ArrayList<>(items);
+        Collections.shuffle(shuffled, rand);
+        final List<Question> questions = new ArrayList<>();
+        for(int i = 0; i < Math.min(count, shuffled.size()); i++)
+        {
+            questions.add(createQuestion(shuffled.get(i), rand));
+        }
+        return questions;
+    }
+
+    /**
+     * Get an ingredient item by its name. Material items are preferred; crafted
+     * intermediates such as Book are returned when there is no material of that name.
+     *
+     * @param name Item name
+     * @return Item object, or null if no item has this name
+     */
+    public Item getItemByName(final String name)
+    {
+        return itemsByName.apply(name);
+    }
+}
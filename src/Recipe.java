@@ -1,41 +1,130 @@
 import java.util.*;
 
 /**
- * Represents a crafting recipe. Stores the required materials and their positions.
+ * Represents a crafting recipe: what one craft produces and how to tell whether the
+ * items on a grid craft it. A recipe is either a {@link ShapedRecipe}, whose
+ * ingredients have positions, or a {@link ShapelessRecipe}, where only the placed
+ * items count.
  *
  * @author Jiarui Xing
  */
-public class Recipe {
-    // Map of positions to item names
-    private final Map<Position, Set<String>> recipeMap;
+public abstract sealed class Recipe permits ShapedRecipe, ShapelessRecipe {
+    public static final int DEFAULT_GRID_SIZE = 3;
 
-    public Recipe()
+    // Size of the grid the positions are expressed in
+    private final int gridSize;
+
+    // Tags that slot names starting with '#' refer to
+    private final TagRegistry tags;
+
+    // Number of items one craft produces
+    private int outputCount = 1;
+
+    // Live-match tables for the last grid size asked for, dropped when the recipe
+    // changes
+    private volatile LiveMatch.Layout liveLayout;
+
+    Recipe(final int gridSize, final TagRegistry tags)
+    {
+        if(gridSize < 1)
+        {
+            throw new IllegalArgumentException("Grid size must be positive.");
+        }
+        this.gridSize = gridSize;
+        this.tags = tags;
+    }
+
+    /**
+     * Get the tags that slot names starting with '#' refer to.
+     *
+     * @return TagRegistry the recipe was created with
+     */
+    TagRegistry getTags()
+    {
+        return tags;
+    }
+
+    /**
+     * Drop everything compiled from the recipe after it has changed.
+     */
+    void invalidate()
     {
-        recipeMap = new HashMap<>();
+        liveLayout = null;
     }
 
     /**
-     * Add acceptable items to the recipe at a specific position.
+     * Get the number of items one craft of this recipe produces.
      *
-     * @param x         X-coordinate (-1, 0, 1)
-     * @param y         Y-coordinate (-1, 0, 1)
-     * @param itemNames Acceptable material item names
+     * @return Output count (at least 1)
      */
-    public void addItem(final int x, final int y, final String... itemNames)
+    public int getOutputCount()
     {
-        final Set<String> items = new HashSet<>();
-        Collections.addAll(items, itemNames);
-        recipeMap.put(new Position(x, y), items);
+        return outputCount;
     }
 
     /**
-     * Get the recipe map.
+     * Set the number of items one craft of this recipe produces.
      *
-     * @return Map of Position to sets of acceptable item names
+     * @param outputCount Output count, e.g. 4 for sticks
      */
-    public Map<Position, Set<String>> getRecipeMap()
+    public void setOutputCount(final int outputCount)
     {
-        return recipeMap;
+        if(outputCount < 1)
+        {
+            throw new IllegalArgumentException("Output count must be positive.");
+        }
+        this.outputCount = outputCount;
+    }
+
+    /**
+     * Get the size of the grid the recipe positions are expressed in.
+     *
+     * @return Grid size (3 for a crafting table)
+     */
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    /**
+     * Check if the recipe can be crafted on a grid of the given size.
+     *
+     * @param size Grid size
+     * @return True if the recipe fits, False otherwise
+     */
+    public abstract boolean fitsIn(int size);
+
+    /**
+     * Check if the items placed on a grid craft this recipe.
+     *
+     * @param grid Map of occupied positions to placed item names
+     * @return True if the grid matches, False otherwise
+     */
+    public abstract boolean matches(Map<Position, String> grid);
+
+    /**
+     * Get the acceptable item sets of all ingredients, regardless of position.
+     *
+     * @return One set of acceptable item names per ingredient
+     */
+    public abstract Collection<Set<String>> getIngredients();
+
+    /**
+     * Get the tables for tracking grids of a size against this recipe, building them
+     * on first use.
+     *
+     * @param size Grid size
+     * @return Live-match layout shared by all trackers of this recipe
+     */
+    LiveMatch.Layout getLiveLayout(final int size)
+    {
+        LiveMatch.Layout compiled = liveLayout;
+        if(compiled == null || compiled.getGridSize() != size)
+        {
+            compiled = new LiveMatch.Layout(this, size);
+            liveLayout = compiled;
+        }
+        return compiled;
     }
 
     /**
@@ -47,7 +136,13 @@ public class Recipe {
 
         public Position(final int x, final int y)
         {
-            if(x < -1 || x > 1 || y < -1 || y > 1)
+            this(x, y, DEFAULT_GRID_SIZE);
+        }
+
+        public Position(final int x, final int y, final int gridSize)
+        {
+            if(x < min(gridSize) || x > max(gridSize) || y < min(gridSize) ||
+               y > max(gridSize))
             {
                 throw new IllegalArgumentException("Position out of bounds.");
             }
@@ -55,6 +150,63 @@ public class Recipe {
             this.y = y;
         }
 
+        private Position(final int x, final int y, final boolean unchecked)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Get a position without bounds checking, for looking up cells of a grid
+         * whose bounds are already known.
+         *
+         * @param x X-coordinate
+         * @param y Y-coordinate
+         * @return Position
+         */
+        static Position at(final int x, final int y)
+        {
+            return new Position(x, y, true);
+        }
+
+        /**
+         * Convert grid coordinates (column and row from the top left) to a position.
+         *
+         * @param gridX    Column (0 to gridSize - 1)
+         * @param gridY    Row (0 to gridSize - 1)
+         * @param gridSize Grid size
+         * @return Position on the grid
+         */
+        public static Position fromGrid(final int gridX, final int gridY,
+                                        final int gridSize)
+        {
+            return new Position(gridX + min(gridSize), max(gridSize) - gridY,
+                    gridSize);
+        }
+
+        /**
+         * Get the smallest coordinate on a grid. Grids are centred on (0, 0); even
+         * sizes extend one further in the positive direction.
+         *
+         * @param gridSize Grid size
+         * @return Smallest X or Y coordinate
+         */
+        public static int min(final int gridSize)
+        {
+            return -(gridSize - 1) / 2;
+        }
+
+        /**
+         * Get the largest coordinate on a grid.
+         *
+         * @param gridSize Grid size
+         * @return Largest X or Y coordinate
+         */
+        public static int max(final int gridSize)
+        {
+            return gridSize / 2;
+        }
+
         /**
          * Get the X-coordinate.
          *
@@ -0,0 +1,303 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.util.*;
+
+/**
+ * Window listing every crafting item with its icon and recipe layout. The list is a
+ * virtualized ListView: only the rows on screen have cells, and cells are reused as
+ * they scroll, so the number of nodes does not grow with the catalog. Icons are
+ * decoded in the background at thumbnail size and kept in the bounded icon cache.
+ * <p>
+ * Typing filters by name. Clicking an ingredient of a recipe shows only the items
+ * that use it; clicking more ingredients narrows the list to items using all of them.
+ *
+ * @author Jiarui Xing
+ */
+public class RecipeBook {
+    private static final int ICON_SIZE = 48;
+    private static final int INGREDIENT_SIZE = 24;
+    private static final double ROW_HEIGHT = 96;
+    private static final int SEARCH_EDITS = 1;
+
+    private final GameController gameController;
+    private final Stage stage;
+    private final ObservableList<CraftingItem> shownItems;
+    private final TextField searchField;
+    private final Label filterLabel;
+    private final ListView<CraftingItem> list;
+
+    // Ingredients the list is narrowed to, in click order
+    private final List<String> ingredientFilter;
+
+    // Side of the largest recipe, so all rows share one layout, and the catalog
+    // version it was taken from
+    private int layoutSize;
+    private int layoutVersion;
+
+    /**
+     * Create the recipe book window. It is shown with {@link #show()}.
+     *
+     * @param gameController Controller holding the catalog and its indexes
+     * @param owner          Main window
+     */
+    public RecipeBook(final GameController gameController, final Stage owner)
+    {
+        this.gameController = gameController;
+        ingredientFilter = new ArrayList<>();
+        shownItems = FXCollections.observableArrayList();
+
+        searchField = new TextField();
+        searchField.setPromptText("Search items");
+        searchField.textProperty().addListener(
+                (observable, oldText, newText) -> refresh());
+        filterLabel = new Label();
+        final Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e ->
+        {
+            ingredientFilter.clear();
+            searchField.clear();
+            refresh();
+        });
+        final HBox searchBar = new HBox(10, searchField, filterLabel, clearButton);
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+        searchBar.setAlignment(Pos.CENTER_LEFT);
+        searchBar.setPadding(new Insets(8));
+
+        list = new ListView<>(shownItems);
+        list.setFixedCellSize(ROW_HEIGHT);
+
+        final BorderPane root = new BorderPane(list);
+        root.setTop(searchBar);
+        stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Recipe Book");
+        stage.setScene(new Scene(root, 520, 600));
+        refresh();
+    }
+
+    /**
+     * Show the window and bring it to the front.
+     */
+    public void show()
+    {
+        stage.show();
+        stage.toFront();
+    }
+
+    /**
+     * Narrow the list to items that also use an ingredient.
+     *
+     * @param ingredientName Ingredient name
+     */
+    public void addIngredientFilter(final String ingredientName)
+    {
+        if(!ingredientFilter.contains(ingredientName))
+        {
+            ingredientFilter.add(ingredientName);
+            refresh();
+        }
+    }
+
+    /**
+     * Rebuild the list from the search text and the ingredient filter.
+     */
+    private void refresh()
+    {
+        final Catalog current = gameController.getCatalog();
+        if(list.getCellFactory() == null || current.getVersion() != layoutVersion)
+        {
+            // A reloaded catalog may have larger recipes; new cells get the new layout
+            int size = 1;
+            for(final CraftingItem item : current.getCraftingItems())
+            {
+                size = Math.max(size, layoutSide(item.getRecipe()));
+            }
+            layoutSize = size;
+            layoutVersion = current.getVersion();
+            list.setCellFactory(view -> new RecipeCell(layoutSize));
+        }
+
+        final List<CraftingItem> catalog = current.getCraftingItems();
+        List<CraftingItem> items = ingredientFilter.isEmpty() ? catalog :
+                gameController.getIngredientIndex()
+                        .getItemsUsing(ingredientFilter.toArray(new String[0]));
+
+        final String query = searchField.getText().trim();
+        if(!query.isEmpty())
+        {
+            // By ID, since a packed catalog may hand out a new view of the same item
+            final Set<Integer> named = new HashSet<>();
+            for(final Item item : gameController.getNameIndex().searchFuzzy(query,
+                    query.length() > 3 ? SEARCH_EDITS : 0, catalog.size()))
+            {
+                named.add(item.getId());
+            }
+            final List<CraftingItem> matching = new ArrayList<>();
+            for(final CraftingItem item : items)
+            {
+                if(named.contains(item.getId()))
+                {
+                    matching.add(item);
+                }
+            }
+            items = matching;
+        }
+        shownItems.setAll(items);
+        filterLabel.setText(ingredientFilter.isEmpty() ? "" :
+                "Uses: " + String.join(", ", ingredientFilter));
+    }
+
+    /**
+     * Get the side of the square that holds a recipe's layout.
+     *
+     * @param recipe Recipe
+     * @return Number of rows and columns
+     */
+    private static int layoutSide(final Recipe recipe)
+    {
+        if(recipe instanceof ShapelessRecipe)
+        {
+            return (int) Math.ceil(Math.sqrt(recipe.getIngredients().size()));
+        }
+        final ShapedMatcher shape = ((ShapedRecipe) recipe).getMatcher();
+        return Math.max(shape.getWidth(), shape.getHeight());
+    }
+
+    /**
+     * One row of the list. Its nodes are created once and refilled whenever the list
+     * gives the cell another item.
+     */
+    private final class RecipeCell extends ListCell<CraftingItem> {
+        private final HBox row;
+        private final ImageView iconView;
+        private final Label nameLabel;
+        private final Label detailLabel;
+        private final ImageView[] ingredientViews;
+        private final String[] ingredientNames;
+        private final Tooltip[] tooltips;
+
+        // Side of this cell's layout; recipes that don't fit are cut off
+        private final int size;
+
+        private RecipeCell(final int size)
+        {
+            this.size = size;
+            iconView = new ImageView();
+            nameLabel = new Label();
+            nameLabel.setStyle("-fx-font-weight: bold;");
+            detailLabel = new Label();
+            final VBox text = new VBox(4, nameLabel, detailLabel);
+            text.setPrefWidth(200);
+
+            final GridPane layout = new GridPane();
+            layout.setHgap(2);
+            layout.setVgap(2);
+            ingredientViews = new ImageView[size * size];
+            ingredientNames = new String[ingredientViews.length];
+            tooltips = new Tooltip[ingredientViews.length];
+            for(int i = 0; i < ingredientViews.length; i++)
+            {
+                final int slot = i;
+                final ImageView view = new ImageView();
+                view.setFitWidth(INGREDIENT_SIZE);
+                view.setFitHeight(INGREDIENT_SIZE);
+                view.setOnMouseClicked(e ->
+                {
+                    if(ingredientNames[slot] != null)
+                    {
+                        addIngredientFilter(ingredientNames[slot]);
+                    }
+                });
+                tooltips[i] = new Tooltip();
+                ingredientViews[i] = view;
+                final VBox slotBox = new VBox(view);
+                slotBox.setStyle("-fx-border-color: #a0a0a0;");
+                layout.add(slotBox, i % size, i / size);
+            }
+
+            row = new HBox(12, iconView, text, layout);
+            row.setAlignment(Pos.CENTER_LEFT);
+            setText(null);
+        }
+
+        @Override
+        protected void updateItem(final CraftingItem item, final boolean empty)
+        {
+            super.updateItem(item, empty);
+            if(empty || item == null)
+            {
+                setGraphic(null);
+                return;
+            }
+            iconView.setImage(IconCache.getAsync(item.getImagePath(), ICON_SIZE));
+            nameLabel.setText(item.getName());
+            final Recipe recipe = item.getRecipe();
+            detailLabel.setText((recipe instanceof ShapelessRecipe ? "Shapeless" :
+                    "Shaped") + (recipe.getOutputCount() > 1 ?
+                    ", makes " + recipe.getOutputCount() : ""));
+
+            Arrays.fill(ingredientNames, null);
+            if(recipe instanceof ShapelessRecipe)
+            {
+                int slot = 0;
+                for(final Set<String> alternatives : recipe.getIngredients())
+                {
+                    if(slot == ingredientNames.length)
+                    {
+                        break;
+                    }
+                    ingredientNames[slot++] = alternatives.iterator().next();
+                }
+            } else
+            {
+                final ShapedMatcher shape = ((ShapedRecipe) recipe).getMatcher();
+                for(int r = 0; r < Math.min(shape.getHeight(), size); r++)
+                {
+                    for(int c = 0; c < Math.min(shape.getWidth(), size); c++)
+                    {
+                        final int[] ids = shape.getCell(false, r, c);
+                        if(ids != null)
+                        {
+                            ingredientNames[r * size + c] = ItemIds.nameOf(ids[0]);
+                        }
+                    }
+                }
+            }
+            for(int i = 0; i < ingredientViews.length; i++)
+            {
+                final Item ingredient = ingredientNames[i] == null ? null :
+                        gameController.getItemByName(ingredientNames[i]);
+                final Image image = ingredient == null ? null :
+                        IconCache.getAsync(ingredient.getImagePath(), INGREDIENT_SIZE);
+                ingredientViews[i].setImage(image);
+                if(ingredient != null)
+                {
+                    tooltips[i].setText(ingredient.getName() + " (click to filter)");
+                    Tooltip.install(ingredientViews[i], tooltips[i]);
+                } else
+                {
+                    Tooltip.uninstall(ingredientViews[i], tooltips[i]);
+                }
+            }
+            setGraphic(row);
+        }
+    }
+}
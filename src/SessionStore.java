@@ -0,0 +1,196 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local disk store for passivated sessions. Records are appended to one file and
+ * found through an in-memory index of offsets, so storing a session is one write and
+ * restoring it one read. Restored records become garbage; once the garbage outweighs
+ * the live records, the file is rewritten with only the live ones.
+ * <p>
+ * The store belongs to one process and is emptied when opened. All methods are
+ * thread-safe.
+ *
+ * @author Jiarui Xing
+ */
+public final class SessionStore implements Closeable {
+    // Garbage below this size is never worth a rewrite
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+    private final Path file;
+    private FileChannel channel;
+
+    // Offset and length of the record of each key
+    private final Map<String, long[]> index;
+    private long liveBytes = 0;
+
+    /**
+     * Open a store, discarding anything left in the file.
+     *
+     * @param file Store file
+     * @throws IOException if the file can't be created
+     */
+    public SessionStore(final Path file) throws IOException
+    {
+        this.file = file;
+        channel = open(file);
+        index = new HashMap<>();
+    }
+
+    /**
+     * Store a record, replacing any record with the same key.
+     *
+     * @param key  Key, e.g. a player ID
+     * @param data Record
+     * @throws IOException if the record can't be written
+     */
+    public synchronized void put(final String key, final byte[] data) throws IOException
+    {
+        final long offset = channel.size();
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer, offset + buffer.position());
+        }
+        final long[] old = index.put(key, new long[]{offset, data.length});
+        liveBytes += data.length - (old == null ? 0 : old[1]);
+    }
+
+    /**
+     * Remove a record and return it.
+     *
+     * @param key Key
+     * @return Record, or null if there is none
+     * @throws IOException if the record can't be read
+     */
+    public synchronized byte[] take(final String key) throws IOException
+    {
+        final byte[] data = get(key);
+        remove(key);
+        return data;
+    }
+
+    /**
+     * Get a record, leaving it in the store.
+     *
+     * @param key Key
+     * @return Record, or null if there is none
+     * @throws IOException if the record can't be read
+     */
+    public synchronized byte[] get(final String key) throws IOException
+    {
+        final long[] location = index.get(key);
+        return location == null ? null : read(location);
+    }
+
+    /**
+     * Remove a record without reading it.
+     *
+     * @param key Key
+     * @return True if there was a record
+     * @throws IOException if the file had to be rewritten and that failed
+     */
+    public synchronized boolean remove(final String key) throws IOException
+    {
+        final long[] location = index.remove(key);
+        if(location == null)
+        {
+            return false;
+        }
+        liveBytes -= location[1];
+
+        final long garbage = channel.size() - liveBytes;
+        if(garbage > liveBytes && garbage > MIN_COMPACT_BYTES)
+        {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of stored records.
+     *
+     * @return Record count
+     */
+    public synchronized int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * Get the size of the store file, including garbage.
+     *
+     * @return Size in bytes
+     * @throws IOException if the size can't be read
+     */
+    public synchronized long getFileSize() throws IOException
+    {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private byte[] read(final long[] location) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer, location[0] + buffer.position()) < 0)
+            {
+                throw new IOException("Session store is truncated.");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Rewrite the file with only the live records.
+     */
+    private void compact() throws IOException
+    {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        final Map<long[], Long> moved = new HashMap<>();
+        try(final FileChannel out = open(compacted))
+        {
+            long offset = 0;
+            for(final long[] location : index.values())
+            {
+                final ByteBuffer buffer = ByteBuffer.wrap(read(location));
+                while(buffer.hasRemaining())
+                {
+                    out.write(buffer, offset + buffer.position());
+                }
+                moved.put(location, offset);
+                offset += location[1];
+            }
+        }
+
+        // Only switch over once the new file is complete
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        for(final Map.Entry<long[], Long> entry : moved.entrySet())
+        {
+            entry.getKey()[0] = entry.getValue();
+        }
+    }
+
+    private static FileChannel open(final Path file) throws IOException
+    {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled form of a shaped recipe. The recipe is cropped to its bounding box and
+ * stored as a row-major array of acceptable item IDs, together with its horizontal
+ * mirror. Matching a grid only looks at as many cells as the recipe has, so the cost
+ * does not depend on the size of the crafting grid. Cells that accept a tag keep the
+ * tag and check placed items against its bitset.
+ *
+ * @author Jiarui Xing
+ */
+public final class ShapedMatcher {
+    private final int width;
+    private final int height;
+    private final int cellCount;
+
+    // Sorted acceptable IDs per cell (row 0 is the top row), null for empty cells
+    private final int[][] cells;
+    private final int[][] mirroredCells;
+    private final boolean symmetric;
+
+    // Tag of each cell that accepts a whole tag, null elsewhere
+    private final ItemTag[] tags;
+    private final ItemTag[] mirroredTags;
+
+    /**
+     * Compile a recipe map.
+     *
+     * @param recipeMap Map of positions to acceptable item names
+     */
+    public ShapedMatcher(final Map<Recipe.Position, Set<String>> recipeMap)
+    {
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for(final Recipe.Position pos : recipeMap.keySet())
+        {
+            minX = Math.min(minX, pos.getX());
+            maxX = Math.max(maxX, pos.getX());
+            minY = Math.min(minY, pos.getY());
+            maxY = Math.max(maxY, pos.getY());
+        }
+
+        cellCount = recipeMap.size();
+        width = cellCount == 0 ? 0 : maxX - minX + 1;
+        height = cellCount == 0 ? 0 : maxY - minY + 1;
+        cells = new int[width * height][];
+        mirroredCells = new int[width * height][];
+        tags = new ItemTag[width * height];
+        mirroredTags = new ItemTag[width * height];
+
+        for(final Map.Entry<Recipe.Position, Set<String>> entry : recipeMap.entrySet())
+        {
+            final int col = entry.getKey().getX() - minX;
+            final int row = maxY - entry.getKey().getY();
+            final int[] ids;
+            if(entry.getValue() instanceof ItemTag tag)
+            {
+                ids = tag.getSortedIds();
+                tags[row * width + col] = tag;
+                mirroredTags[row * width + (width - 1 - col)] = tag;
+            } else
+            {
+                ids = new int[entry.getValue().size()];
+                int i = 0;
+                for(final String name : entry.getValue())
+                {
+                    ids[i++] = ItemIds.of(name);
+                }
+                Arrays.sort(ids);
+            }
+            cells[row * width + col] = ids;
+            mirroredCells[row * width + (width - 1 - col)] = ids;
+        }
+        symmetric = Arrays.deepEquals(cells, mirroredCells);
+    }
+
+    /**
+     * Check if the items placed on a grid match the recipe at any translation, or
+     * mirrored horizontally.
+     *
+     * @param grid Map of occupied positions to placed item names
+     * @return True if the grid matches, False otherwise
+     */
+    public boolean matches(final Map<Recipe.Position, String> grid)
+    {
+        if(grid.size() != cellCount || cellCount == 0)
+        {
+            return false;
+        }
+
+        // Bounding box of the placed items; must have the same size as the recipe
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for(final Recipe.Position pos : grid.keySet())
+        {
+            minX = Math.min(minX, pos.getX());
+            maxX = Math.max(maxX, pos.getX());
+            minY = Math.min(minY, pos.getY());
+            maxY = Math.max(maxY, pos.getY());
+        }
+        if(maxX - minX + 1 != width || maxY - minY + 1 != height)
+        {
+            return false;
+        }
+
+        return matchesAt(grid, cells, tags, minX, maxY) ||
+               (!symmetric && matchesAt(grid, mirroredCells, mirroredTags, minX, maxY));
+    }
+
+    /**
+     * Check one orientation of the recipe anchored at the given top-left corner.
+     * Assumes the grid holds exactly as many items as the recipe.
+     *
+     * @param grid     Placed items
+     * @param pattern  Cells of the orientation to check
+     * @param cellTags Tags of the orientation to check
+     * @param left     X-coordinate of the left column
+     * @param top      Y-coordinate of the top row
+     * @return True if every recipe cell holds an acceptable item
+     */
+    private boolean matchesAt(final Map<Recipe.Position, String> grid,
+                              final int[][] pattern,
+                              final ItemTag[] cellTags,
+                              final int left,
+                              final int top)
+    {
+        for(int row = 0; row < height; row++)
+        {
+            for(int col = 0; col < width; col++)
+            {
+                final int[] acceptable = pattern[row * width + col];
+                if(acceptable == null)
+                {
+                    continue;
+                }
+                final String placed =
+                        grid.get(Recipe.Position.at(left + col, top - row));
+                if(placed == null || !accepts(acceptable, cellTags[row * width + col],
+                        ItemIds.find(placed)))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the width of the recipe's bounding box.
+     *
+     * @return Width in cells
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Get the height of the recipe's bounding box.
+     *
+     * @return Height in cells
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Get the number of occupied cells in the recipe.
+     *
+     * @return Number of ingredients
+     */
+    public int getCellCount()
+    {
+        return cellCount;
+    }
+
+    /**
+     * Check if the recipe looks the same when mirrored horizontally.
+     *
+     * @return True if mirroring gives no new orientation
+     */
+    public boolean isSymmetric()
+    {
+        return symmetric;
+    }
+
+    /**
+     * Get the acceptable item IDs of one cell of the bounding box.
+     *
+     * @param mirrored True to read the mirrored orientation
+     * @param row      Row from the top (0 to height - 1)
+     * @param col      Column from the left (0 to width - 1)
+     * @return Sorted acceptable IDs, or null if the cell must stay empty
+     */
+    public int[] getCell(final boolean mirrored, final int row, final int col)
+    {
+        return (mirrored ? mirroredCells : cells)[row * width + col];
+    }
+
+    /**
+     * Get the tag one cell of the bounding box accepts.
+     *
+     * @param mirrored True to read the mirrored orientation
+     * @param row      Row from the top (0 to height - 1)
+     * @param col      Column from the left (0 to width - 1)
+     * @return Tag, or null if the cell is empty or lists its items directly
+     */
+    public ItemTag getCellTag(final boolean mirrored, final int row, final int col)
+    {
+        return (mirrored ? mirroredTags : tags)[row * width + col];
+    }
+
+    /**
+     * Check if a cell accepts an item, with a bit test for tagged cells.
+     *
+     * @param ids Sorted acceptable IDs of the cell
+     * @param tag Tag of the cell, or null
+     * @param id  Item ID to check
+     * @return True if the item is acceptable
+     */
+    static boolean accepts(final int[] ids, final ItemTag tag, final int id)
+    {
+        return tag != null ? tag.contains(id) : Arrays.binarySearch(ids, id) >= 0;
+    }
+}
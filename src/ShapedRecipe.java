@@ -0,0 +1,105 @@
+import java.util.*;
+
+/**
+ * Crafting recipe whose ingredients have positions. The recipe may be placed anywhere
+ * on the grid and may be mirrored horizontally.
+ *
+ * @author Jiarui Xing
+ */
+public final class ShapedRecipe extends Recipe {
+    // Map of positions to item names
+    private final Map<Position, Set<String>> recipeMap;
+
+    // Compiled shape, built on first match and dropped when the recipe changes
+    private volatile ShapedMatcher matcher;
+
+    public ShapedRecipe()
+    {
+        this(DEFAULT_GRID_SIZE);
+    }
+
+    public ShapedRecipe(final int gridSize)
+    {
+        this(gridSize, TagRegistry.NONE);
+    }
+
+    public ShapedRecipe(final TagRegistry tags)
+    {
+        this(DEFAULT_GRID_SIZE, tags);
+    }
+
+    public ShapedRecipe(final int gridSize, final TagRegistry tags)
+    {
+        super(gridSize, tags);
+        recipeMap = new HashMap<>();
+    }
+
+    /**
+     * Add acceptable items to the recipe at a specific position.
+     *
+     * @param x         X-coordinate (-1, 0, 1 on a 3x3 grid)
+     * @param y         Y-coordinate (-1, 0, 1 on a 3x3 grid)
+     * @param itemNames Acceptable item names; crafted items may be used too, and a
+     *                  name starting with '#' stands for all items of an {@link ItemTag}
+     *                  in the tags the recipe was created with
+     */
+    public void addItem(final int x, final int y, final String... itemNames)
+    {
+        // Keep declaration order so the first alternative is the preferred one
+        recipeMap.put(new Position(x, y, getGridSize()),
+                getTags().alternatives(itemNames));
+        invalidate();
+    }
+
+    @Override
+    void invalidate()
+    {
+        super.invalidate();
+        matcher = null;
+    }
+
+    @Override
+    public boolean fitsIn(final int size)
+    {
+        final ShapedMatcher shape = getMatcher();
+        return shape.getWidth() <= size && shape.getHeight() <= size;
+    }
+
+    @Override
+    public boolean matches(final Map<Position, String> grid)
+    {
+        return getMatcher().matches(grid);
+    }
+
+    /**
+     * Get the compiled shape of this recipe, compiling it on first use.
+     *
+     * @return ShapedMatcher for this recipe
+     */
+    public ShapedMatcher getMatcher()
+    {
+        ShapedMatcher compiled = matcher;
+        if(compiled == null)
+        {
+            compiled = new ShapedMatcher(recipeMap);
+            matcher = compiled;
+        }
+        return compiled;
+    }
+
+    @Override
+    public Collection<Set<String>> getIngredients()
+    {
+        return recipeMap.values();
+    }
+
+    /**
+     * Get the recipe map.
+     *
+     * @return Map of Position to sets of acceptable item names
+     */
+    public Map<Position, Set<String>> getRecipeMap()
+    {
+        return recipeMap;
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.*;
+
+/**
+ * Represents a shapeless crafting recipe. Only the multiset of placed materials
+ * matters, not their positions on the grid.
+ *
+ * @author Jiarui Xing
+ */
+public final class ShapelessRecipe extends Recipe {
+    // One set of acceptable item names per ingredient
+    private final List<Set<String>> ingredients;
+
+    // Sorted ingredient IDs, or null if any ingredient accepts alternatives
+    private int[] sortedIds;
+
+    public ShapelessRecipe()
+    {
+        this(DEFAULT_GRID_SIZE);
+    }
+
+    public ShapelessRecipe(final int gridSize)
+    {
+        this(gridSize, TagRegistry.NONE);
+    }
+
+    public ShapelessRecipe(final TagRegistry tags)
+    {
+        this(DEFAULT_GRID_SIZE, tags);
+    }
+
+    public ShapelessRecipe(final int gridSize, final TagRegistry tags)
+    {
+        super(gridSize, tags);
+        ingredients = new ArrayList<>();
+        sortedIds = new int[0];
+    }
+
+    /**
+     * Add an ingredient to the recipe. Call once per required item.
+     *
+     * @param itemNames Acceptable material item names, or tag names starting with '#'
+     */
+    public void addIngredient(final String... itemNames)
+    {
+        final Set<String> items = getTags().alternatives(itemNames);
+        ingredients.add(items);
+
+        if(sortedIds != null && items.size() == 1)
+        {
+            sortedIds = Arrays.copyOf(sortedIds, sortedIds.length + 1);
+            sortedIds[sortedIds.length - 1] = ItemIds.of(items.iterator().next());
+            Arrays.sort(sortedIds);
+        } else
+        {
+            sortedIds = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Get the sorted IDs of the ingredients.
+     *
+     * @return Sorted IDs, or null if any ingredient accepts alternatives
+     */
+    int[] getSortedIds()
+    {
+        return sortedIds;
+    }
+
+    @Override
+    public Collection<Set<String>> getIngredients()
+    {
+        return ingredients;
+    }
+
+    @Override
+    public boolean fitsIn(final int size)
+    {
+        return ingredients.size() <= size * size;
+    }
+
+    @Override
+    public boolean matches(final Map<Position, String> grid)
+    {
+        return matches(grid.values());
+    }
+
+    /**
+     * Check if the placed items are exactly the ingredients of this recipe, in any
+     * arrangement.
+     *
+     * @param placedItems Names of the items on the grid, one per occupied cell
+     * @return True if the multisets match, False otherwise
+     */
+    public boolean matches(final Collection<String> placedItems)
+    {
+        if(placedItems.size() != ingredients.size())
+        {
+            return false;
+        }
+
+        if(sortedIds != null)
+        {
+            // Every ingredient is a single item: compare the sorted ID arrays
+            final int[] placedIds = new int[placedItems.size()];
+            int i = 0;
+            for(final String name : placedItems)
+            {
+                placedIds[i++] = ItemIds.find(name);
+            }
+            Arrays.sort(placedIds);
+            return Arrays.equals(placedIds, sortedIds);
+        }
+
+        // Some ingredients accept alternatives: assign placed items to ingredients
+        return canHold(placedItems);
+    }
+
+    /**
+     * Check if the placed items can all be used as distinct ingredients of this
+     * recipe, i.e. if the recipe can still be completed by adding items.
+     *
+     * @param placedItems Names of the items on the grid, one per occupied cell
+     * @return True if every placed item has its own ingredient, False otherwise
+     */
+    public boolean canHold(final Collection<String> placedItems)
+    {
+        if(placedItems.size() > ingredients.size())
+        {
+            return false;
+        }
+        return assign(placedItems.toArray(new String[0]),
+                new boolean[ingredients.size()], 0);
+    }
+
+    /**
+     * Try to assign each remaining placed item to a distinct unused ingredient.
+     *
+     * @param placedItems Names of the placed items
+     * @param used        Which ingredients are already taken
+     * @param item        Index of the next placed item to assign
+     * @return True if every placed item can be assigned, False otherwise
+     */
+    private boolean assign(final String[] placedItems, final boolean[] used,
+                           final int item)
+    {
+        if(item == placedItems.length)
+        {
+            return true;
+        }
+        for(int i = 0; i < used.length; i++)
+        {
+            if(!used[i] && ingredients.get(i).contains(placedItems[item]))
+            {
+                used[i] = true;
+                if(assign(placedItems, used, item + 1))
+                {
+                    return true;
+                }
+                used[i] = false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cluster test on one machine: starts game nodes as separate processes on loopback and
+ * plays solver bots through a router while the cluster changes. All players join and
+ * go idle, so the nodes passivate them; a node then joins and takes over its share of
+ * the passivated sessions. While the bots play, the first node leaves and hands its
+ * players over. At the end every score is checked against the same bots playing a
+ * tournament in this process.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded through
+ * the game controller; the nodes are started with the same Java, class path and
+ * module path: {@code java ShardBenchmark [nodes] [bots] [threads] [questions]}.
+ *
+ * @author Jiarui Xing
+ */
+public class ShardBenchmark {
+    private static final long SEED = 42;
+    private static final double ERROR_RATE = 0.2;
+
+    // Idle time after which the nodes passivate a session
+    private static final long IDLE_MILLIS = 500;
+
+    /**
+     * Run the test.
+     *
+     * @param args Optional node count, bot count, thread count and questions per game
+     * @throws Exception if a node or bot fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int bots = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        final int questionCount = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        final List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                processes.forEach(Process::destroy)));
+        final List<String> addresses = new ArrayList<>();
+        for(int i = 0; i < Math.max(2, nodeCount); i++)
+        {
+            final Process process = startNode(questionCount);
+            processes.add(process);
+            addresses.add(awaitAddress(process));
+        }
+        System.out.println("Started nodes: " + addresses);
+
+        final GameController controller = GameController.getInstance(null);
+        final List<Question> questions = controller.createQuestions(SEED, questionCount);
+        final int gridSize = controller.getGridSize();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try(final ShardRouter router = new ShardRouter(questions, gridSize))
+        {
+            // Everyone joins on all but the last node, then goes idle
+            for(int i = 0; i < addresses.size() - 1; i++)
+            {
+                router.addNode(addresses.get(i));
+            }
+            for(int i = 0; i < bots; i++)
+            {
+                router.join("bot-" + i);
+            }
+            Thread.sleep(IDLE_MILLIS + 2000);
+            printNodes(router, "After joining and going idle");
+
+            long start = System.nanoTime();
+            final String added = addresses.get(addresses.size() - 1);
+            final int movedIn = router.addNode(added);
+            System.out.printf("Added %s: handed over %d players in %.1f ms%n", added,
+                    movedIn, (System.nanoTime() - start) / 1e6);
+            printNodes(router, "After adding a node");
+
+            // Play, and take the first node away halfway through
+            final ThreadLocal<LatencyRecorder> recorders =
+                    ThreadLocal.withInitial(LatencyRecorder::new);
+            final List<LatencyRecorder> allRecorders = new ArrayList<>();
+            final List<Future<Integer>> results = new ArrayList<>();
+            start = System.nanoTime();
+            for(int i = 0; i < bots; i++)
+            {
+                final String playerId = "bot-" + i;
+                final SolverBot bot = new SolverBot(ERROR_RATE, new Random(SEED + i));
+                results.add(executor.submit(() ->
+                {
+                    final LatencyRecorder recorder = recorders.get();
+                    synchronized(allRecorders)
+                    {
+                        if(!allRecorders.contains(recorder))
+                        {
+                            allRecorders.add(recorder);
+                        }
+                    }
+                    return bot.play(router, playerId, recorder);
+                }));
+            }
+            long submits = 0;
+            for(int i = 0; i < results.size(); i++)
+            {
+                if(i == results.size() / 2)
+                {
+                    final long removeStart = System.nanoTime();
+                    final int movedOut = router.removeNode(addresses.get(0));
+                    System.out.printf("Removed %s while playing: handed over %d " +
+                                      "players in %.1f ms%n", addresses.get(0), movedOut,
+                            (System.nanoTime() - removeStart) / 1e6);
+                }
+                submits += results.get(i).get();
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            printNodes(router, "After playing");
+
+            final LatencyRecorder latencies = new LatencyRecorder();
+            for(final LatencyRecorder recorder : allRecorders)
+            {
+                latencies.merge(recorder);
+            }
+            System.out.printf("%d bots on %d threads through the router, %d questions%n",
+                    bots, threads, questionCount);
+            System.out.printf("Submits/s: %.0f (%d submits in %.2f s)%n",
+                    submits / seconds, submits, seconds);
+            System.out.printf("Submit latency: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    latencies.getPercentile(50) / 1e3, latencies.getPercentile(99) / 1e3,
+                    latencies.getPercentile(100) / 1e3);
+
+            // The same bots against one tournament in this process
+            final Tournament reference = new Tournament(questions, gridSize);
+            int mismatches = 0;
+            for(int i = 0; i < bots; i++)
+            {
+                final String playerId = "bot-" + i;
+                reference.join(playerId);
+                new SolverBot(ERROR_RATE, new Random(SEED + i))
+                        .play(reference, playerId, new LatencyRecorder());
+                if(reference.getScore(playerId) != router.getScore(playerId))
+                {
+                    mismatches++;
+                }
+            }
+            System.out.println("Score mismatches against one tournament: " + mismatches);
+        } finally
+        {
+            executor.shutdown();
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    /**
+     * Start a node process on a free loopback port with this process's Java setup.
+     */
+    private static Process startNode(final int questionCount) throws Exception
+    {
+        final List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" +
+                    File.separator + "java");
+        final String modulePath = System.getProperty("jdk.module.path");
+        if(modulePath != null)
+        {
+            command.addAll(List.of("--module-path", modulePath,
+                    "--add-modules", "javafx.controls"));
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                "GameNode", "0", String.valueOf(SEED), String.valueOf(questionCount),
+                String.valueOf(IDLE_MILLIS)));
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Wait until a node prints the address it listens on.
+     */
+    private static String awaitAddress(final Process process) throws Exception
+    {
+        final BufferedReader out = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        final String line = out.readLine();
+        if(line == null)
+        {
+            throw new IllegalStateException("Node exited with " + process.waitFor());
+        }
+        return line.substring(line.lastIndexOf(' ') + 1);
+    }
+
+    private static void printNodes(final ShardRouter router, final String title)
+            throws Exception
+    {
+        System.out.println(title + ":");
+        for(final String node : router.getNodes())
+        {
+            System.out.printf("  %s: %d players, %d in memory%n", node,
+                    router.getPlayerCount(node), router.getResidentSessionCount(node));
+        }
+    }
+}
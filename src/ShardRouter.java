@@ -0,0 +1,477 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thin router in front of a cluster of game nodes. Players are assigned to nodes by
+ * consistent hashing on the player ID, and every action is forwarded to the owning
+ * node, so a player's session only ever lives on one node.
+ * <p>
+ * When a node joins or leaves, the players whose owner changes are handed over: the
+ * old owner exports a copy of the session, passivated ones as stored, and the new
+ * owner imports it. Only once every player has been imported does the router switch
+ * to the new assignment and the old owners drop their copies; if any step fails, the
+ * imported copies are discarded and the old owners keep their players, so a failed
+ * handover loses nobody. Actions wait while a handover is running. Only one router
+ * may change the nodes of a cluster.
+ * <p>
+ * Each node keeps a pool of connections, so actions for different players run in
+ * parallel. All methods are thread-safe.
+ *
+ * @author Jiarui Xing
+ */
+public final class ShardRouter implements GameHost, Closeable {
+    private final List<Question> questions;
+    private final int gridSize;
+    private final long fingerprint;
+
+    private volatile HashRing ring;
+    private final Map<String, NodeClient> clients;
+
+    // Actions share the lock; handovers hold it exclusively
+    private final ReadWriteLock handoverLock;
+
+    /**
+     * Create a router without nodes.
+     *
+     * @param questions Question sequence the nodes were started with
+     * @param gridSize  Size of the crafting grid
+     */
+    public ShardRouter(final List<Question> questions, final int gridSize)
+    {
+        this.questions = List.copyOf(questions);
+        this.gridSize = gridSize;
+        fingerprint = GameNode.fingerprint(this.questions);
+        ring = new HashRing(List.of());
+        clients = new ConcurrentHashMap<>();
+        handoverLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Add a node and hand over the players it now owns.
+     *
+     * @param address Address of the node, "host:port"
+     * @return Number of players handed over
+     * @throws IOException if a node can't be reached
+     */
+    public int addNode(final String address) throws IOException
+    {
+        handoverLock.writeLock().lock();
+        try
+        {
+            if(clients.containsKey(address))
+            {
+                return 0;
+            }
+            final NodeClient client = new NodeClient(address);
+            final String[] info = client.call("INFO");
+            if(Integer.parseInt(info[0]) != gridSize ||
+               Long.parseLong(info[1]) != fingerprint)
+            {
+                client.close();
+                throw new IllegalArgumentException(
+                        "Node " + address + " hosts different questions.");
+            }
+            clients.put(address, client);
+            try
+            {
+                return rebalance(ring.withNode(address));
+            } catch(IOException | RuntimeException e)
+            {
+                clients.remove(address);
+                client.close();
+                throw e;
+            }
+        } finally
+        {
+            handoverLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hand the players of a node over to the remaining nodes and remove it.
+     *
+     * @param address Address of the node, "host:port"
+     * @return Number of players handed over
+     * @throws IOException           if a node can't be reached
+     * @throws IllegalStateException if the node is the last one and has players, or
+     *                               a player could not be handed over
+     */
+    public int removeNode(final String address) throws IOException
+    {
+        handoverLock.writeLock().lock();
+        try
+        {
+            final NodeClient client = clients.get(address);
+            if(client == null)
+            {
+                return 0;
+            }
+            final HashRing remaining = ring.withoutNode(address);
+            if(remaining.getNodes().isEmpty() && client.call("LIST").length > 0)
+            {
+                throw new IllegalStateException("No node is left to take the players.");
+            }
+            final int moved = rebalance(remaining);
+            clients.remove(address).close();
+            return moved;
+        } finally
+        {
+            handoverLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move every player whose owner differs on the new ring, then switch to it. Must
+     * hold the handover lock exclusively. Nothing changes if a player can't be moved.
+     *
+     * @param target New ring
+     * @return Number of players moved
+     * @throws IOException           if a node can't be reached
+     * @throws IllegalStateException if a new owner already has one of the players
+     */
+    private int rebalance(final HashRing target) throws IOException
+    {
+        // Copy each moving player to the new owner; the old owner keeps them for now
+        final List<Move> moves = new ArrayList<>();
+        try
+        {
+            for(final String node : ring.getNodes())
+            {
+                final NodeClient from = clients.get(node);
+                for(final String playerId : from.call("LIST"))
+                {
+                    final String owner = target.getNode(playerId);
+                    if(owner.equals(node))
+                    {
+                        continue;
+                    }
+                    final Move move = new Move(playerId, node, owner);
+                    final String session = from.call("EXPORT", playerId)[0];
+                    moves.add(move);
+                    if(!Boolean.parseBoolean(
+                            clients.get(owner).call("IMPORT", playerId, session)[0]))
+                    {
+                        throw new IllegalStateException(
+                                "Node " + owner + " already has player " + playerId);
+                    }
+                    move.imported = true;
+                }
+            }
+        } catch(IOException | RuntimeException e)
+        {
+            rollBack(moves);
+            throw e;
+        }
+
+        // Every player is on their new owner, so the old copies can go; one that can't
+        // be removed is harmless, since it is no longer routed to
+        ring = target;
+        for(final Move move : moves)
+        {
+            callQuietly(move.from, "REMOVE", move.playerId);
+        }
+        return moves.size();
+    }
+
+    /**
+     * Undo the moves of a failed handover: discard the imported copies and give the
+     * players back to their old owners.
+     */
+    private void rollBack(final List<Move> moves)
+    {
+        for(final Move move : moves)
+        {
+            if(move.imported)
+            {
+                callQuietly(move.to, "REMOVE", move.playerId);
+            }
+            callQuietly(move.from, "CANCEL", move.playerId);
+        }
+    }
+
+    /**
+     * Send a handover command for a player, logging instead of throwing on failure.
+     */
+    private void callQuietly(final String node, final String command,
+                             final String playerId)
+    {
+        try
+        {
+            clients.get(node).call(command, playerId);
+        } catch(IOException | RuntimeException e)
+        {
+            System.err.println("Could not " + command + " " + playerId + " on " + node);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the nodes players are assigned to.
+     *
+     * @return Node addresses
+     */
+    public List<String> getNodes()
+    {
+        return ring.getNodes();
+    }
+
+    /**
+     * Get the number of players on a node.
+     *
+     * @param address Address of the node
+     * @return Player count
+     * @throws IOException if the node can't be reached
+     */
+    public int getPlayerCount(final String address) throws IOException
+    {
+        return Integer.parseInt(getClient(address).call("PLAYERS")[0]);
+    }
+
+    /**
+     * Get the number of sessions a node holds in memory.
+     *
+     * @param address Address of the node
+     * @return Resident session count
+     * @throws IOException if the node can't be reached
+     */
+    public int getResidentSessionCount(final String address) throws IOException
+    {
+        return Integer.parseInt(getClient(address).call("RESIDENT")[0]);
+    }
+
+    @Override
+    public boolean join(final String playerId)
+    {
+        return Boolean.parseBoolean(forward(playerId, "JOIN")[0]);
+    }
+
+    @Override
+    public void placeItemOnGrid(final String playerId, final int gridX, final int gridY,
+                                final String itemName)
+    {
+        forward(playerId, "PLACE", String.valueOf(gridX), String.valueOf(gridY),
+                itemName == null ? "" : itemName);
+    }
+
+    @Override
+    public GameSession.SubmitResult submitRecipe(final String playerId)
+    {
+        final String result = forward(playerId, "SUBMIT")[0];
+        return result.equals("-") ? null : GameSession.SubmitResult.valueOf(result);
+    }
+
+    @Override
+    public void skipQuestion(final String playerId)
+    {
+        forward(playerId, "SKIP");
+    }
+
+    @Override
+    public Question getQuestion(final String playerId)
+    {
+        final int index = Integer.parseInt(forward(playerId, "QUESTION")[0]);
+        return index < 0 ? null : questions.get(index);
+    }
+
+    @Override
+    public int getScore(final String playerId)
+    {
+        return Integer.parseInt(forward(playerId, "SCORE")[0]);
+    }
+
+    @Override
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    /**
+     * Close the connections to all nodes. The nodes keep running.
+     */
+    @Override
+    public void close()
+    {
+        for(final NodeClient client : clients.values())
+        {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Send a player's action to the node that owns the player.
+     *
+     * @param playerId Player ID
+     * @param command  Command
+     * @param args     Arguments after the player ID
+     * @return Results
+     */
+    private String[] forward(final String playerId, final String command,
+                             final String... args)
+    {
+        final String[] fields = new String[args.length + 2];
+        fields[0] = command;
+        fields[1] = playerId;
+        System.arraycopy(args, 0, fields, 2, args.length);
+
+        handoverLock.readLock().lock();
+        try
+        {
+            return clients.get(ring.getNode(playerId)).call(fields);
+        } catch(IOException e)
+        {
+            throw new UncheckedIOException("Could not reach the node of " + playerId, e);
+        } finally
+        {
+            handoverLock.readLock().unlock();
+        }
+    }
+
+    private NodeClient getClient(final String address)
+    {
+        final NodeClient client = clients.get(address);
+        if(client == null)
+        {
+            throw new IllegalArgumentException("Unknown node: " + address);
+        }
+        return client;
+    }
+
+    /**
+     * A player being handed over between two nodes.
+     */
+    private static final class Move {
+        private final String playerId;
+        private final String from;
+        private final String to;
+        private boolean imported;
+
+        private Move(final String playerId, final String from, final String to)
+        {
+            this.playerId = playerId;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Pooled connections to one node. A call borrows an idle connection, or opens one
+     * if all are busy, and returns it once the reply has arrived.
+     */
+    private static final class NodeClient {
+        private final InetAddress host;
+        private final int port;
+        private final Deque<Connection> idle;
+
+        private NodeClient(final String address) throws IOException
+        {
+            final int colon = address.lastIndexOf(':');
+            host = InetAddress.getByName(address.substring(0, colon));
+            port = Integer.parseInt(address.substring(colon + 1));
+            idle = new ConcurrentLinkedDeque<>();
+        }
+
+        /**
+         * Send a request and wait for the reply.
+         *
+         * @param fields Command and arguments
+         * @return Results
+         * @throws IOException              if the node can't be reached
+         * @throws IllegalArgumentException if a field contains a tab or line break, or
+         *                                  the node rejected the request
+         */
+        private String[] call(final String... fields) throws IOException
+        {
+            for(final String field : fields)
+            {
+                // Fields are tab-separated and requests end at a line break
+                if(field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 ||
+                   field.indexOf('\r') >= 0)
+                {
+                    throw new IllegalArgumentException(
+                            "Player IDs and item names can't contain tabs or line " +
+                            "breaks: " + field.replace("\t", "\\t").replace("\n", "\\n")
+                                    .replace("\r", "\\r"));
+                }
+            }
+            Connection connection = idle.pollFirst();
+            if(connection == null)
+            {
+                connection = new Connection(new Socket(host, port));
+            }
+            final String reply;
+            try
+            {
+                reply = connection.send(String.join("\t", fields));
+            } catch(IOException e)
+            {
+                connection.close();
+                throw e;
+            }
+            idle.addFirst(connection);
+
+            final String[] parts = reply.split("\t", -1);
+            if(!parts[0].equals("OK"))
+            {
+                throw new IllegalArgumentException(parts.length > 1 ? parts[1] : reply);
+            }
+            return Arrays.copyOfRange(parts, 1, parts.length);
+        }
+
+        private void close()
+        {
+            Connection connection;
+            while((connection = idle.pollFirst()) != null)
+            {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        private Connection(final Socket socket) throws IOException
+        {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8));
+        }
+
+        private String send(final String request) throws IOException
+        {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+            final String reply = in.readLine();
+            if(reply == null)
+            {
+                throw new EOFException("The node closed the connection.");
+            }
+            return reply;
+        }
+
+        private void close()
+        {
+            try
+            {
+                socket.close();
+            } catch(IOException e)
+            {
+                // Already broken
+            }
+        }
+    }
+}
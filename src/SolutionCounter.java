@@ -0,0 +1,349 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the grids that can be built from a question's options and are accepted, and
+ * the rejected grids one move away from them, to score the question's difficulty.
+ * <p>
+ * Filling a 3x3 grid from nine options plus empty cells has 10^9 combinations. The
+ * enumeration walks the cells in order and keeps a {@link LiveMatch} up to date, so
+ * a branch is cut as soon as the placed items can no longer be completed to the
+ * recipe or too few cells are left to hold all its ingredients. What remains is
+ * little more than the solutions themselves. The top levels of the walk are split
+ * into fork-join tasks.
+ * <p>
+ * A near miss is a rejected grid one move away from a solution, where a move swaps
+ * the contents of two cells or moves an item to an empty cell: the right items, put
+ * in slightly the wrong place. Grids with one wrong item are not counted, since every
+ * solution has the same number of those whatever the recipe. Near misses are checked
+ * with the compiled {@link BatchMatcher}.
+ *
+ * @author Jiarui Xing
+ */
+public class SolutionCounter {
+    // Cells assigned before the walk stops forking and runs sequentially
+    private static final int SPLIT_DEPTH = 2;
+
+    // Solutions handled per near-miss task
+    private static final int NEAR_MISS_BATCH = 256;
+
+    private final int gridSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a counter that runs on the common fork-join pool.
+     *
+     * @param gridSize Size of the crafting grid
+     */
+    public SolutionCounter(final int gridSize)
+    {
+        this(gridSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a counter that runs on a given pool.
+     *
+     * @param gridSize Size of the crafting grid
+     * @param pool     Pool to run the enumeration on
+     */
+    public SolutionCounter(final int gridSize, final ForkJoinPool pool)
+    {
+        this.gridSize = gridSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Score one question.
+     *
+     * @param question Question with its item and options
+     * @return Solution and near-miss counts
+     */
+    public DifficultyScore score(final Question question)
+    {
+        final Recipe recipe = question.getItem().getRecipe();
+        if(!recipe.fitsIn(gridSize))
+        {
+            return new DifficultyScore(0, 0);
+        }
+
+        // Each cell is empty or holds one of the options
+        final List<String> options = new ArrayList<>();
+        for(final Item item : question.getOptionItems())
+        {
+            if(!options.contains(item.getName()))
+            {
+                options.add(item.getName());
+            }
+        }
+        final String[] states = new String[options.size() + 1];
+        for(int i = 0; i < options.size(); i++)
+        {
+            states[i + 1] = options.get(i);
+        }
+
+        final Search search = new Search(recipe, gridSize, states);
+        final List<int[]> solutions = pool.invoke(new Enumeration(search, new int[0]));
+
+        final Set<String> nearMisses = Collections.synchronizedSet(new HashSet<>());
+        pool.invoke(new NearMisses(search, new BatchMatcher(recipe, gridSize), solutions,
+                0, solutions.size(), nearMisses));
+        return new DifficultyScore(solutions.size(), nearMisses.size());
+    }
+
+    /**
+     * Score every crafting item that fits on the grid and store the score with the
+     * item. Each item is scored on one question whose options are drawn from the
+     * given seed, so the scores are repeatable.
+     *
+     * @param items     Crafting items to score
+     * @param generator Generator for the option sets
+     * @param seed      Seed of the option sets
+     */
+    public void scoreCatalog(final List<CraftingItem> items,
+                             final QuestionGenerator generator, final long seed)
+    {
+        final List<RecursiveAction> tasks = new ArrayList<>();
+        for(final CraftingItem item : items)
+        {
+            if(!item.getRecipe().fitsIn(gridSize))
+            {
+                continue;
+            }
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute()
+                {
+                    final Random rand = new Random(seed ^ item.getId());
+                    item.setDifficulty(score(generator.createQuestion(item, rand)));
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute()
+            {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Everything one question's enumeration needs; shared by its tasks.
+     */
+    private static final class Search {
+        private final Recipe recipe;
+        private final int gridSize;
+        private final int cells;
+        private final int ingredientCount;
+
+        // Names of the cell states, index 0 being the empty cell
+        private final String[] states;
+        private final int[] stateIds;
+
+        private Search(final Recipe recipe, final int gridSize, final String[] states)
+        {
+            this.recipe = recipe;
+            this.gridSize = gridSize;
+            this.states = states;
+            cells = gridSize * gridSize;
+            ingredientCount = recipe.getIngredients().size();
+            stateIds = new int[states.length];
+            for(int i = 0; i < states.length; i++)
+            {
+                stateIds[i] = ItemIds.find(states[i]);
+            }
+        }
+
+        /**
+         * Place a state on a cell and check if the branch can still lead to a
+         * solution.
+         *
+         * @param live  Match state of the grid
+         * @param cell  Cell to fill
+         * @param state Index of the state
+         * @return True if the branch is worth following
+         */
+        private boolean place(final LiveMatch live, final int cell, final int state)
+        {
+            live.place(cell % gridSize, cell / gridSize, states[state]);
+            final int cellsLeft = cells - cell - 1;
+            return live.isCompletable() &&
+                   live.getOccupiedCount() + cellsLeft >= ingredientCount;
+        }
+
+        private void clear(final LiveMatch live, final int cell)
+        {
+            live.place(cell % gridSize, cell / gridSize, null);
+        }
+    }
+
+    /**
+     * Enumerates the solutions below a prefix of assigned cells.
+     */
+    private static final class Enumeration extends RecursiveTask<List<int[]>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+
+        // State index of each cell assigned so far
+        private final int[] prefix;
+
+        private Enumeration(final Search search, final int[] prefix)
+        {
+            this.search = search;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<int[]> compute()
+        {
+            final LiveMatch live = new LiveMatch(search.recipe, search.gridSize);
+            final int[] grid = new int[search.cells];
+            for(int cell = 0; cell < prefix.length; cell++)
+            {
+                search.place(live, cell, prefix[cell]);
+                grid[cell] = prefix[cell];
+            }
+
+            final List<int[]> solutions = new ArrayList<>();
+            if(prefix.length >= SPLIT_DEPTH || prefix.length == search.cells)
+            {
+                walk(live, grid, prefix.length, solutions);
+                return solutions;
+            }
+
+            // Fork one task per state of the next cell that survives pruning
+            final int cell = prefix.length;
+            final List<Enumeration> children = new ArrayList<>();
+            for(int state = 0; state < search.states.length; state++)
+            {
+                if(search.place(live, cell, state))
+                {
+                    final int[] childPrefix = Arrays.copyOf(prefix, cell + 1);
+                    childPrefix[cell] = state;
+                    children.add(new Enumeration(search, childPrefix));
+                }
+                search.clear(live, cell);
+            }
+            for(final Enumeration child : invokeAll(children))
+            {
+                solutions.addAll(child.join());
+            }
+            return solutions;
+        }
+
+        /**
+         * Fill the remaining cells depth-first.
+         *
+         * @param live      Match state of the grid
+         * @param grid      State index of every assigned cell
+         * @param cell      Next cell to fill
+         * @param solutions Output list of solutions as state indices
+         */
+        private void walk(final LiveMatch live, final int[] grid, final int cell,
+                          final List<int[]> solutions)
+        {
+            if(cell == search.cells)
+            {
+                if(live.matches())
+                {
+                    solutions.add(grid.clone());
+                }
+                return;
+            }
+            for(int state = 0; state < search.states.length; state++)
+            {
+                if(search.place(live, cell, state))
+                {
+                    grid[cell] = state;
+                    walk(live, grid, cell + 1, solutions);
+                }
+                search.clear(live, cell);
+            }
+            grid[cell] = 0;
+        }
+    }
+
+    /**
+     * Collects the rejected grids one move away from a range of solutions.
+     */
+    private static final class NearMisses extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final BatchMatcher matcher;
+        private final List<int[]> solutions;
+        private final int from;
+        private final int to;
+        private final Set<String> nearMisses;
+
+        private NearMisses(final Search search, final BatchMatcher matcher,
+                           final List<int[]> solutions, final int from, final int to,
+                           final Set<String> nearMisses)
+        {
+            this.search = search;
+            this.matcher = matcher;
+            this.solutions = solutions;
+            this.from = from;
+            this.to = to;
+            this.nearMisses = nearMisses;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from > NEAR_MISS_BATCH)
+            {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new NearMisses(search, matcher, solutions, from, middle,
+                                nearMisses),
+                        new NearMisses(search, matcher, solutions, middle, to,
+                                nearMisses));
+                return;
+            }
+
+            final int[] packed = new int[search.cells];
+            final char[] key = new char[search.cells];
+            final List<String> found = new ArrayList<>();
+            for(int s = from; s < to; s++)
+            {
+                final int[] solution = solutions.get(s);
+                for(int cell = 0; cell < search.cells; cell++)
+                {
+                    packed[cell] = search.stateIds[solution[cell]];
+                    key[cell] = (char) solution[cell];
+                }
+                for(int a = 0; a < search.cells; a++)
+                {
+                    for(int b = a + 1; b < search.cells; b++)
+                    {
+                        if(solution[a] == solution[b])
+                        {
+                            continue;
+                        }
+                        swap(packed, key, a, b);
+                        if(!matcher.matches(packed, 0))
+                        {
+                            found.add(new String(key));
+                        }
+                        swap(packed, key, a, b);
+                    }
+                }
+            }
+            nearMisses.addAll(found);
+        }
+
+        private static void swap(final int[] packed, final char[] key, final int a,
+                                 final int b)
+        {
+            final int id = packed[a];
+            packed[a] = packed[b];
+            packed[b] = id;
+            final char state = key[a];
+            key[a] = key[b];
+            key[b] = state;
+        }
+    }
+}
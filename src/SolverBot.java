@@ -0,0 +1,217 @@
+import java.util.*;
+
+/**
+ * Synthetic player for load tests. Reads the current question, lays out the recipe
+ * from the options and submits it, getting it deliberately wrong at a configurable
+ * rate. Questions it can't solve from the options are skipped.
+ *
+ * @author Jiarui Xing
+ */
+public class SolverBot {
+    private final double errorRate;
+    private final Random random;
+
+    /**
+     * Create a bot.
+     *
+     * @param errorRate Chance of submitting a wrong grid on each attempt (0 to 1)
+     * @param random    Source of randomness
+     */
+    public SolverBot(final double errorRate, final Random random)
+    {
+        if(errorRate < 0 || errorRate > 1)
+        {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1.");
+        }
+        this.errorRate = errorRate;
+        this.random = random;
+    }
+
+    /**
+     * Lay out a correct grid for a question, using only its options.
+     *
+     * @param question Question to solve
+     * @param gridSize Size of the crafting grid
+     * @return Item name per cell, row-major from the top left, null for empty cells;
+     * or null if the options can't craft the item on this grid
+     */
+    public static String[] solve(final Question question, final int gridSize)
+    {
+        final Recipe recipe = question.getItem().getRecipe();
+        if(!recipe.fitsIn(gridSize))
+        {
+            return null;
+        }
+        final Set<String> options = new HashSet<>();
+        for(final Item item : question.getOptionItems())
+        {
+            options.add(item.getName());
+        }
+
+        final String[] cells = new String[gridSize * gridSize];
+        if(recipe instanceof ShapelessRecipe)
+        {
+            int cell = 0;
+            for(final Set<String> alternatives : recipe.getIngredients())
+            {
+                final String name = firstOption(alternatives, options);
+                if(name == null)
+                {
+                    return null;
+                }
+                cells[cell++] = name;
+            }
+            return cells;
+        }
+
+        // Put the shape in the top left corner
+        final ShapedMatcher shape = ((ShapedRecipe) recipe).getMatcher();
+        for(int row = 0; row < shape.getHeight(); row++)
+        {
+            for(int col = 0; col < shape.getWidth(); col++)
+            {
+                final int[] ids = shape.getCell(false, row, col);
+                if(ids == null)
+                {
+                    continue;
+                }
+                final Set<String> alternatives = new LinkedHashSet<>();
+                for(final int id : ids)
+                {
+                    alternatives.add(ItemIds.nameOf(id));
+                }
+                final String name = firstOption(alternatives, options);
+                if(name == null)
+                {
+                    return null;
+                }
+                cells[row * gridSize + col] = name;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Lay out a grid for a question: correct, or wrong at the bot's error rate.
+     *
+     * @param question Question to answer
+     * @param gridSize Size of the crafting grid
+     * @return Item name per cell, or null if the options can't craft the item
+     */
+    public String[] answer(final Question question, final int gridSize)
+    {
+        final String[] cells = solve(question, gridSize);
+        if(cells != null && random.nextDouble() < errorRate)
+        {
+            spoil(cells, question);
+        }
+        return cells;
+    }
+
+    /**
+     * Play one tournament player until their questions run out.
+     *
+     * @param tournament Tournament, or router to one, that the player has joined
+     * @param playerId   Player ID
+     * @param latencies  Receives the duration of every submit in nanoseconds
+     * @return Number of submits made
+     */
+    public int play(final GameHost tournament, final String playerId,
+                    final LatencyRecorder latencies)
+    {
+        final int gridSize = tournament.getGridSize();
+        int submits = 0;
+        Question question;
+        while((question = tournament.getQuestion(playerId)) != null)
+        {
+            final String[] cells = answer(question, gridSize);
+            if(cells == null)
+            {
+                tournament.skipQuestion(playerId);
+                continue;
+            }
+            for(int i = 0; i < cells.length; i++)
+            {
+                tournament.placeItemOnGrid(playerId, i % gridSize, i / gridSize,
+                        cells[i]);
+            }
+            final long start = System.nanoTime();
+            tournament.submitRecipe(playerId);
+            latencies.record(System.nanoTime() - start);
+            submits++;
+        }
+        return submits;
+    }
+
+    /**
+     * Turn a correct grid into a wrong one: swap two different cells, or failing that
+     * drop an item.
+     *
+     * @param cells    Correct grid, changed in place
+     * @param question Question the grid answers
+     */
+    private void spoil(final String[] cells, final Question question)
+    {
+        final int gridSize = (int) Math.round(Math.sqrt(cells.length));
+        final Recipe recipe = question.getItem().getRecipe();
+        for(int attempt = 0; attempt < cells.length; attempt++)
+        {
+            final int a = random.nextInt(cells.length);
+            final int b = random.nextInt(cells.length);
+            if(!Objects.equals(cells[a], cells[b]))
+            {
+                swap(cells, a, b);
+                if(!recipe.matches(toGrid(cells, gridSize)))
+                {
+                    return;
+                }
+                swap(cells, a, b);
+            }
+        }
+
+        // Changing the number of items always breaks the recipe
+        for(int i = 0; i < cells.length; i++)
+        {
+            if(cells[i] != null)
+            {
+                cells[i] = null;
+                return;
+            }
+        }
+    }
+
+    private static void swap(final String[] cells, final int a, final int b)
+    {
+        final String name = cells[a];
+        cells[a] = cells[b];
+        cells[b] = name;
+    }
+
+    private static Map<Recipe.Position, String> toGrid(final String[] cells,
+                                                       final int gridSize)
+    {
+        final Map<Recipe.Position, String> grid = new HashMap<>();
+        for(int i = 0; i < cells.length; i++)
+        {
+            if(cells[i] != null)
+            {
+                grid.put(Recipe.Position.fromGrid(i % gridSize, i / gridSize, gridSize),
+                        cells[i]);
+            }
+        }
+        return grid;
+    }
+
+    private static String firstOption(final Set<String> alternatives,
+                                      final Set<String> options)
+    {
+        for(final String name : alternatives)
+        {
+            if(options.contains(name))
+            {
+                return name;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,328 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fan-out test: players fidget with their grids while thousands of spectators watch
+ * them over loopback. Most spectators read everything as it arrives; some read only a
+ * little now and then, so they fall behind and must be caught up with snapshots. At
+ * the end every spectator's copy is checked against what the players actually did.
+ * <p>
+ * Run with the JavaFX modules on the module path, since the catalog is loaded through
+ * the game controller:
+ * {@code java SpectatorBenchmark [players] [spectators] [slow fraction] [moves]}.
+ *
+ * @author Jiarui Xing
+ */
+public class SpectatorBenchmark {
+    private static final long SEED = 42;
+    private static final int QUESTIONS = 10;
+
+    // Pause between two moves of a player
+    private static final long MOVE_PAUSE_MICROS = 10_000;
+
+    // Bytes a slow spectator reads per turn, and the pause between its turns
+    private static final int SLOW_READ_BYTES = 64;
+    private static final long SLOW_PAUSE_MILLIS = 100;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Optional player count, spectator count, fraction of slow spectators
+     *             and random moves per question
+     * @throws Exception if a player or spectator fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int spectatorCount = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        final double slowFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        final int moves = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        final Tournament tournament =
+                GameController.getInstance(null).createTournament(SEED, QUESTIONS);
+        final SpectatorHub hub = tournament.enableSpectators(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final int gridSize = tournament.getGridSize();
+        final String[][] expected = new String[playerCount][gridSize * gridSize];
+        for(int p = 0; p < playerCount; p++)
+        {
+            tournament.join("player-" + p);
+        }
+
+        // Connect the spectators, spread over the players
+        final Selector selector = Selector.open();
+        final List<Spectator> spectators = new ArrayList<>();
+        final Random random = new Random(SEED);
+        for(int i = 0; i < spectatorCount; i++)
+        {
+            final Spectator spectator = new Spectator(i % playerCount,
+                    random.nextDouble() < slowFraction);
+            final SocketChannel channel = SocketChannel.open();
+            if(spectator.slow)
+            {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+            }
+            channel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    hub.getPort()));
+            final byte[] playerId = ("player-" + spectator.player)
+                    .getBytes(StandardCharsets.UTF_8);
+            channel.write(ByteBuffer.allocate(2 + playerId.length)
+                    .putShort((short) playerId.length).put(playerId).flip());
+            channel.configureBlocking(false);
+            spectator.channel = channel;
+            if(!spectator.slow)
+            {
+                channel.register(selector, SelectionKey.OP_READ, spectator);
+            }
+            spectators.add(spectator);
+        }
+        while(hub.getWatcherCount() < spectatorCount)
+        {
+            Thread.sleep(10);
+        }
+
+        final Thread reader = new Thread(() -> read(selector, spectators), "spectators");
+        reader.setDaemon(true);
+        reader.start();
+
+        // Players fidget, then answer; the last question is left half done
+        final ExecutorService executor = Executors.newFixedThreadPool(playerCount);
+        final List<Future<?>> results = new ArrayList<>();
+        final long start = System.nanoTime();
+        for(int p = 0; p < playerCount; p++)
+        {
+            final int player = p;
+            results.add(executor.submit(() ->
+            {
+                play(tournament, "player-" + player, expected[player], moves,
+                        new Random(SEED + player));
+                return null;
+            }));
+        }
+        for(final Future<?> result : results)
+        {
+            result.get();
+        }
+        final double playSeconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        // Wait for every spectator to catch up
+        final long deadline = System.nanoTime() + 60_000_000_000L;
+        int behind;
+        while((behind = countBehind(tournament, spectators, expected)) > 0 &&
+              System.nanoTime() < deadline)
+        {
+            Thread.sleep(50);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        long frames = 0;
+        long bytes = 0;
+        long fastResyncs = 0;
+        long slowResyncs = 0;
+        long fastFrames = 0;
+        int fastCount = 0;
+        int errors = 0;
+        final int[] published = new int[playerCount];
+        synchronized(spectators)
+        {
+            for(final Spectator spectator : spectators)
+            {
+                frames += spectator.frames;
+                bytes += spectator.bytes;
+                if(spectator.slow)
+                {
+                    slowResyncs += spectator.view.getSnapshotCount() - 1;
+                } else
+                {
+                    fastResyncs += spectator.view.getSnapshotCount() - 1;
+                    fastFrames += spectator.frames;
+                    fastCount++;
+                }
+                errors += spectator.error == null ? 0 : 1;
+                published[spectator.player] = Math.max(published[spectator.player],
+                        spectator.view.getSequence());
+            }
+        }
+        System.out.printf("%d players, %d spectators (%.0f%% slow), %d moves a " +
+                          "question%n", playerCount, spectatorCount, slowFraction * 100,
+                moves);
+        System.out.printf("Players done in %.2f s; all spectators caught up in %.2f s%n",
+                playSeconds, seconds);
+        System.out.printf("Delivered %,d frames, %,d bytes (%,.0f frames/s)%n", frames,
+                bytes, frames / seconds);
+        System.out.printf("Frames per fast spectator: %,.0f of %,d published per " +
+                          "player%n", (double) fastFrames / Math.max(1, fastCount),
+                Arrays.stream(published).asLongStream().sum() / playerCount);
+        System.out.printf("Snapshots after falling behind: fast %d, slow %d%n",
+                fastResyncs, slowResyncs);
+        System.out.println("Spectators out of date: " + behind + ", stream errors: " +
+                           errors);
+        hub.close();
+    }
+
+    /**
+     * Play one player: random moves on every question, then the answer, except on the
+     * last question, which keeps the random grid. Records the grid it leaves.
+     */
+    private static void play(final Tournament tournament, final String playerId,
+                             final String[] cells, final int moves, final Random random)
+    {
+        final int gridSize = tournament.getGridSize();
+        final SolverBot bot = new SolverBot(0.2, random);
+        Question question;
+        while((question = tournament.getQuestion(playerId)) != null)
+        {
+            final List<Item> options = question.getOptionItems();
+            for(int m = 0; m < moves; m++)
+            {
+                final int cell = random.nextInt(cells.length);
+                cells[cell] = random.nextInt(4) == 0 ? null :
+                        options.get(random.nextInt(options.size())).getName();
+                tournament.placeItemOnGrid(playerId, cell % gridSize, cell / gridSize,
+                        cells[cell]);
+                LockSupport.parkNanos(MOVE_PAUSE_MICROS * 1000);
+            }
+            if(tournament.getQuestions().indexOf(question) ==
+               tournament.getQuestions().size() - 1)
+            {
+                return;
+            }
+            final String[] answer = bot.answer(question, gridSize);
+            if(answer == null)
+            {
+                tournament.skipQuestion(playerId);
+                Arrays.fill(cells, null);
+                continue;
+            }
+            for(int i = 0; i < answer.length; i++)
+            {
+                cells[i] = answer[i];
+                tournament.placeItemOnGrid(playerId, i % gridSize, i / gridSize,
+                        cells[i]);
+            }
+            if(tournament.submitRecipe(playerId) != GameSession.SubmitResult.RETRY)
+            {
+                Arrays.fill(cells, null);
+            }
+        }
+    }
+
+    /**
+     * Read for all spectators until the process ends: fast ones whenever data
+     * arrives, slow ones a little at a time.
+     */
+    private static void read(final Selector selector, final List<Spectator> spectators)
+    {
+        try
+        {
+            long nextSlowTurn = 0;
+            while(true)
+            {
+                selector.select(SLOW_PAUSE_MILLIS);
+                synchronized(spectators)
+                {
+                    for(final SelectionKey key : selector.selectedKeys())
+                    {
+                        ((Spectator) key.attachment()).read(Integer.MAX_VALUE);
+                    }
+                    selector.selectedKeys().clear();
+                    if(System.nanoTime() >= nextSlowTurn)
+                    {
+                        for(final Spectator spectator : spectators)
+                        {
+                            if(spectator.slow)
+                            {
+                                spectator.read(SLOW_READ_BYTES);
+                            }
+                        }
+                        nextSlowTurn = System.nanoTime() + SLOW_PAUSE_MILLIS * 1_000_000;
+                    }
+                }
+            }
+        } catch(Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static int countBehind(final Tournament tournament,
+                                   final List<Spectator> spectators,
+                                   final String[][] expected)
+    {
+        int behind = 0;
+        synchronized(spectators)
+        {
+            for(final Spectator spectator : spectators)
+            {
+                final String playerId = "player-" + spectator.player;
+                final SpectatorView view = spectator.view;
+                boolean current = view.getGridSize() > 0 &&
+                                  view.getScore() == tournament.getScore(playerId) &&
+                                  view.getQuestion() == tournament.getQuestions()
+                                          .indexOf(tournament.getQuestion(playerId));
+                for(int c = 0; current && c < expected[spectator.player].length; c++)
+                {
+                    current = Objects.equals(view.getCell(c),
+                            expected[spectator.player][c]);
+                }
+                if(!current)
+                {
+                    behind++;
+                }
+            }
+        }
+        return behind;
+    }
+
+    private static final class Spectator {
+        private final int player;
+        private final boolean slow;
+        private final SpectatorView view = new SpectatorView();
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private SocketChannel channel;
+        private long frames;
+        private long bytes;
+        private Exception error;
+
+        private Spectator(final int player, final boolean slow)
+        {
+            this.player = player;
+            this.slow = slow;
+        }
+
+        private void read(final int maxBytes)
+        {
+            if(error != null)
+            {
+                return;
+            }
+            try
+            {
+                buffer.limit(Math.min(buffer.capacity(), buffer.position() + maxBytes));
+                final int read = channel.read(buffer);
+                if(read > 0)
+                {
+                    bytes += read;
+                    buffer.flip();
+                    frames += view.applyAll(buffer);
+                    buffer.compact();
+                }
+            } catch(Exception e)
+            {
+                error = e;
+            }
+        }
+    }
+}
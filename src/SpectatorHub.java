@@ -0,0 +1,720 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the grids of tournament players to spectators. A spectator connects, sends
+ * the ID of the player to watch and then receives frames. Strings are UTF-8 after
+ * their length as a short, as {@code DataOutputStream.writeUTF} writes plain names:
+ * <pre>
+ * length (short), type (byte), sequence number (int), then by type:
+ * SNAPSHOT  question (short), score (short), attempts left (byte), grid size (byte),
+ *           item of each cell, row by row (string, empty for an empty cell)
+ * PLACE     cell (byte), item (string, empty when cleared)
+ * SUBMIT    result (byte, ordinal of GameSession.SubmitResult), score (short),
+ *           attempts left (byte)
+ * QUESTION  question (short), attempts left (byte); the grid is cleared
+ * END       the player left this tournament; the connection closes
+ * </pre>
+ * Questions are indexes into the tournament's question list, or -1 when finished.
+ * The first frame is always a snapshot, and every other frame follows the one before
+ * it by one sequence number, or is a snapshot; see {@link SpectatorView}.
+ * <p>
+ * Each change is encoded once, into a direct buffer shared by every watcher of the
+ * player; watchers only get their own position on it, and one thread writes to all
+ * connections with gathering non-blocking writes. Frames are cut from a slab of
+ * direct memory per feed rather than allocated one by one, since allocating direct
+ * memory is slow; a slab is freed once none of its frames are referenced.
+ * <p>
+ * Every watcher may have a bounded number of frames waiting. A watcher that falls
+ * further behind has its waiting frames dropped and gets the player's latest snapshot
+ * next, which is also encoded once and shared, so slow spectators cost a fixed amount
+ * of memory and skip ahead instead of delaying anyone.
+ *
+ * @author Jiarui Xing
+ */
+public final class SpectatorHub implements Closeable {
+    static final byte SNAPSHOT = 0;
+    static final byte PLACE = 1;
+    static final byte SUBMIT = 2;
+    static final byte QUESTION = 3;
+    static final byte END = 4;
+
+    // Frames a watcher may have waiting before it drops to the latest snapshot
+    private static final int MAX_QUEUED_FRAMES = 64;
+
+    // Socket send buffer of a watcher; frames beyond it wait in the watcher's queue
+    private static final int SEND_BUFFER_BYTES = 16 * 1024;
+
+    // Frames written to a connection in one call
+    private static final int WRITE_BATCH = 16;
+
+    // Direct memory a feed allocates at a time and cuts its frames from
+    private static final int SLAB_BYTES = 4096;
+
+    private final Tournament tournament;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread fanOut;
+
+    // Feeds of watched players by player ID
+    private final Map<String, Feed> feeds;
+
+    // Watchers with new frames, and work for the fan-out thread
+    private final Queue<Watcher> ready;
+    private final Queue<Watcher> subscribing;
+    private final AtomicBoolean wakeupPending;
+    private volatile boolean open;
+
+    private final AtomicInteger watcherCount;
+
+    /**
+     * Open a hub that accepts spectators of a tournament.
+     *
+     * @param tournament Tournament whose players are watched
+     * @param address    Address to listen on; port 0 picks a free port
+     * @throws IOException if the port can't be opened
+     */
+    SpectatorHub(final Tournament tournament, final InetSocketAddress address)
+            throws IOException
+    {
+        this.tournament = tournament;
+        feeds = new ConcurrentHashMap<>();
+        ready = new ConcurrentLinkedQueue<>();
+        subscribing = new ConcurrentLinkedQueue<>();
+        wakeupPending = new AtomicBoolean();
+        watcherCount = new AtomicInteger();
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        open = true;
+
+        fanOut = new Thread(this::run, "spectator-fanout");
+        fanOut.setDaemon(true);
+        fanOut.start();
+    }
+
+    /**
+     * Get the port spectators connect to.
+     *
+     * @return Port
+     */
+    public int getPort()
+    {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Get the number of connected spectators.
+     *
+     * @return Watcher count
+     */
+    public int getWatcherCount()
+    {
+        return watcherCount.get();
+    }
+
+    /**
+     * Stop accepting spectators and close all connections.
+     */
+    @Override
+    public void close()
+    {
+        open = false;
+        selector.wakeup();
+        try
+        {
+            fanOut.join();
+        } catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start the feed of a player from their session, unless it is running. Called by
+     * the tournament with the player's lock held.
+     *
+     * @param playerId Player ID
+     * @param session  Player's session
+     * @return The player's feed
+     */
+    Feed openFeed(final String playerId, final GameSession session)
+    {
+        return feeds.computeIfAbsent(playerId, key -> new Feed(key, session));
+    }
+
+    /**
+     * Publish an item placed on a player's grid. Called with the player's lock held,
+     * like all publishing methods.
+     *
+     * @param playerId Player ID
+     * @param cell     Cell index, row by row
+     * @param itemName Item placed, or null if the cell was cleared
+     */
+    void placed(final String playerId, final int cell, final String itemName)
+    {
+        final Feed feed = feeds.get(playerId);
+        if(feed != null)
+        {
+            feed.placed(cell, itemName);
+        }
+    }
+
+    /**
+     * Publish a submitted grid.
+     *
+     * @param playerId Player ID
+     * @param result   Outcome of the attempt
+     * @param session  Player's session after the attempt
+     */
+    void submitted(final String playerId, final GameSession.SubmitResult result,
+                   final GameSession session)
+    {
+        final Feed feed = feeds.get(playerId);
+        if(feed != null)
+        {
+            feed.submitted(result, session);
+        }
+    }
+
+    /**
+     * Publish a move to another question.
+     *
+     * @param playerId Player ID
+     * @param session  Player's session on the new question
+     */
+    void questionChanged(final String playerId, final GameSession session)
+    {
+        final Feed feed = feeds.get(playerId);
+        if(feed != null)
+        {
+            feed.questionChanged(session);
+        }
+    }
+
+    /**
+     * End the feed of a player who left the tournament.
+     *
+     * @param playerId Player ID
+     */
+    void ended(final String playerId)
+    {
+        final Feed feed = feeds.remove(playerId);
+        if(feed != null)
+        {
+            feed.end();
+        }
+    }
+
+    /**
+     * Have the fan-out thread write to a watcher soon.
+     */
+    private void schedule(final Watcher watcher)
+    {
+        if(watcher.scheduled.compareAndSet(false, true))
+        {
+            ready.add(watcher);
+            if(wakeupPending.compareAndSet(false, true))
+            {
+                selector.wakeup();
+            }
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while(open)
+            {
+                selector.select();
+                wakeupPending.set(false);
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext())
+                {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid())
+                    {
+                        continue;
+                    }
+                    if(key.isAcceptable())
+                    {
+                        accept();
+                    } else if(key.isReadable())
+                    {
+                        readRequest((Watcher) key.attachment());
+                    } else if(key.isWritable())
+                    {
+                        flush((Watcher) key.attachment());
+                    }
+                }
+
+                // Subscribe outside the selection, since it takes the player's lock
+                Watcher watcher;
+                while((watcher = subscribing.poll()) != null)
+                {
+                    subscribe(watcher);
+                }
+                while((watcher = ready.poll()) != null)
+                {
+                    flush(watcher);
+                }
+            }
+        } catch(IOException e)
+        {
+            System.err.println("Spectator fan-out stopped.");
+            e.printStackTrace();
+        } finally
+        {
+            for(final SelectionKey key : selector.keys())
+            {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while((channel = server.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSendBufferSize(SEND_BUFFER_BYTES);
+            final Watcher watcher = new Watcher(channel);
+            watcher.key = channel.register(selector, SelectionKey.OP_READ, watcher);
+            watcherCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Read the player ID a spectator asks for.
+     */
+    private void readRequest(final Watcher watcher)
+    {
+        try
+        {
+            final ByteBuffer request = watcher.request;
+            if(watcher.channel.read(request) < 0)
+            {
+                disconnect(watcher);
+                return;
+            }
+            if(request.position() >= 2 && request.limit() == request.capacity())
+            {
+                // The length is known; read exactly the rest
+                final int length = 2 + (request.getShort(0) & 0xffff);
+                if(length > request.capacity())
+                {
+                    watcher.request = ByteBuffer.allocate(length).put(request.flip());
+                } else
+                {
+                    request.limit(length);
+                }
+            }
+            if(watcher.request.position() >= 2 && !watcher.request.hasRemaining())
+            {
+                watcher.key.interestOps(0);
+                subscribing.add(watcher);
+            }
+        } catch(IOException e)
+        {
+            disconnect(watcher);
+        }
+    }
+
+    /**
+     * Attach a watcher to the feed of the player they asked for; the first frame is
+     * the player's snapshot.
+     */
+    private void subscribe(final Watcher watcher)
+    {
+        final ByteBuffer request = watcher.request.flip();
+        final String playerId = StandardCharsets.UTF_8.decode(request.position(2))
+                .toString();
+        watcher.request = null;
+        try
+        {
+            Feed feed;
+            do
+            {
+                feed = tournament.openFeed(playerId);
+            } while(!feed.attach(watcher));
+            watcher.feed = feed;
+            flush(watcher);
+        } catch(IllegalArgumentException e)
+        {
+            // Unknown player
+            disconnect(watcher);
+        }
+    }
+
+    /**
+     * Write as many waiting frames to a watcher as the connection takes, and wait for
+     * it to become writable if it doesn't take all.
+     */
+    private void flush(final Watcher watcher)
+    {
+        watcher.scheduled.set(false);
+        if(watcher.feed == null || !watcher.key.isValid())
+        {
+            return;
+        }
+        try
+        {
+            while(true)
+            {
+                final int count = watcher.fillBatch();
+                if(count == 0)
+                {
+                    watcher.key.interestOps(0);
+                    if(watcher.feed.isEnded())
+                    {
+                        disconnect(watcher);
+                    }
+                    return;
+                }
+                watcher.channel.write(watcher.batch, 0, count);
+                if(watcher.batch[count - 1].hasRemaining())
+                {
+                    watcher.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch(IOException e)
+        {
+            disconnect(watcher);
+        }
+    }
+
+    private void disconnect(final Watcher watcher)
+    {
+        if(watcher.feed != null)
+        {
+            watcher.feed.detach(watcher);
+        }
+        watcher.key.cancel();
+        closeQuietly(watcher.channel);
+        watcherCount.decrementAndGet();
+    }
+
+    private static void closeQuietly(final Closeable closeable)
+    {
+        try
+        {
+            closeable.close();
+        } catch(IOException e)
+        {
+            // Closing anyway
+        }
+    }
+
+    /**
+     * State of one watched player, kept from the published changes so that snapshots
+     * never need the session, and the spectators watching them.
+     */
+    final class Feed {
+        private final String playerId;
+        private final String[] cells;
+        private int question;
+        private int score;
+        private int attemptsLeft;
+        private int sequence;
+
+        // Shared snapshot of the current state, encoded when first needed
+        private ByteBuffer snapshot;
+
+        // Direct memory the next frames are cut from
+        private ByteBuffer slab;
+
+        private final List<Watcher> watchers;
+        private boolean ended;
+
+        private Feed(final String playerId, final GameSession session)
+        {
+            this.playerId = playerId;
+            final int gridSize = session.getGridSize();
+            cells = new String[gridSize * gridSize];
+            for(final Map.Entry<Recipe.Position, String> entry :
+                    session.getPlayerRecipe().entrySet())
+            {
+                final Recipe.Position position = entry.getKey();
+                final int row = Recipe.Position.max(gridSize) - position.getY();
+                final int col = position.getX() - Recipe.Position.min(gridSize);
+                cells[row * gridSize + col] = entry.getValue();
+            }
+            question = questionIndex(session);
+            score = session.getScore();
+            attemptsLeft = session.getAttemptsLeft();
+            watchers = new ArrayList<>();
+        }
+
+        private synchronized void placed(final int cell, final String itemName)
+        {
+            cells[cell] = itemName;
+            final String item = itemName == null ? "" : itemName;
+            final Frame frame = frame(PLACE, 1 + 2 + utfLength(item));
+            frame.buffer.put((byte) cell);
+            putString(frame.buffer, item);
+            publish(frame);
+        }
+
+        private synchronized void submitted(final GameSession.SubmitResult result,
+                                            final GameSession session)
+        {
+            score = session.getScore();
+            attemptsLeft = session.getAttemptsLeft();
+            final Frame frame = frame(SUBMIT, 4);
+            frame.buffer.put((byte) result.ordinal()).putShort((short) score)
+                    .put((byte) attemptsLeft);
+            publish(frame);
+        }
+
+        private synchronized void questionChanged(final GameSession session)
+        {
+            Arrays.fill(cells, null);
+            question = questionIndex(session);
+            attemptsLeft = session.getAttemptsLeft();
+            final Frame frame = frame(QUESTION, 3);
+            frame.buffer.putShort((short) question).put((byte) attemptsLeft);
+            publish(frame);
+        }
+
+        private synchronized void end()
+        {
+            ended = true;
+            publish(frame(END, 0));
+        }
+
+        private synchronized boolean isEnded()
+        {
+            return ended;
+        }
+
+        /**
+         * Add a watcher, starting them on the current snapshot.
+         *
+         * @return False if the feed has ended and a new one must be opened
+         */
+        private synchronized boolean attach(final Watcher watcher)
+        {
+            if(ended)
+            {
+                return false;
+            }
+            watchers.add(watcher);
+            watcher.lagging = true;
+            return true;
+        }
+
+        private synchronized void detach(final Watcher watcher)
+        {
+            watchers.remove(watcher);
+            if(watchers.isEmpty() && !ended)
+            {
+                // Nobody watches; stop tracking the player until someone does
+                ended = true;
+                feeds.remove(playerId, this);
+            }
+        }
+
+        /**
+         * Start a frame in the slab, taking a new slab when it is full. Called with the
+         * feed locked.
+         */
+        private Frame frame(final byte type, final int payloadLength)
+        {
+            final int size = 2 + 1 + 4 + payloadLength;
+            if(slab == null || slab.remaining() < size)
+            {
+                slab = ByteBuffer.allocateDirect(Math.max(SLAB_BYTES, size));
+            }
+            final ByteBuffer buffer = slab.slice(slab.position(), size);
+            slab.position(slab.position() + size);
+            return new Frame(buffer, type, payloadLength);
+        }
+
+        /**
+         * Hand a frame to every watcher. Watchers too far behind drop everything
+         * waiting and are sent the snapshot instead.
+         */
+        private void publish(final Frame frame)
+        {
+            snapshot = null;
+            final ByteBuffer shared = frame.finish(++sequence);
+            for(final Watcher watcher : watchers)
+            {
+                if(watcher.lagging)
+                {
+                    continue;
+                }
+                if(watcher.queued.incrementAndGet() > MAX_QUEUED_FRAMES)
+                {
+                    watcher.lagging = true;
+                    watcher.resyncs++;
+                    continue;
+                }
+                watcher.queue.add(shared.duplicate());
+                schedule(watcher);
+            }
+        }
+
+        /**
+         * Take the latest snapshot for a watcher that starts or fell behind, dropping
+         * the frames it has waiting.
+         */
+        private synchronized ByteBuffer catchUp(final Watcher watcher)
+        {
+            watcher.queue.clear();
+            watcher.queued.set(0);
+            watcher.lagging = false;
+            if(snapshot == null)
+            {
+                int length = 2 + 2 + 1 + 1;
+                for(final String cell : cells)
+                {
+                    length += 2 + utfLength(cell == null ? "" : cell);
+                }
+                final Frame frame = frame(SNAPSHOT, length);
+                frame.buffer.putShort((short) question).putShort((short) score)
+                        .put((byte) attemptsLeft)
+                        .put((byte) Math.round(Math.sqrt(cells.length)));
+                for(final String cell : cells)
+                {
+                    putString(frame.buffer, cell == null ? "" : cell);
+                }
+                snapshot = frame.finish(sequence);
+            }
+            return snapshot.duplicate();
+        }
+
+        private int questionIndex(final GameSession session)
+        {
+            return session.isFinished() ? -1 :
+                    tournament.getQuestions().indexOf(session.getQuestion());
+        }
+    }
+
+    /**
+     * One spectator connection.
+     */
+    private final class Watcher {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private Feed feed;
+
+        // Frames waiting to be written, shared with other watchers
+        private final Queue<ByteBuffer> queue;
+        private final AtomicInteger queued;
+
+        // Set by the feed when the waiting frames were given up; guarded by the feed
+        private boolean lagging;
+        private int resyncs;
+
+        private final AtomicBoolean scheduled;
+        private final ByteBuffer[] batch;
+        private int batchSize;
+
+        private Watcher(final SocketChannel channel)
+        {
+            this.channel = channel;
+            request = ByteBuffer.allocate(64);
+            queue = new ConcurrentLinkedQueue<>();
+            queued = new AtomicInteger();
+            scheduled = new AtomicBoolean();
+            batch = new ByteBuffer[WRITE_BATCH];
+        }
+
+        /**
+         * Collect the next frames to write, keeping any partly written one first.
+         *
+         * @return Number of buffers in the batch
+         */
+        private int fillBatch()
+        {
+            int kept = 0;
+            for(int i = 0; i < batchSize; i++)
+            {
+                if(batch[i].hasRemaining())
+                {
+                    batch[kept++] = batch[i];
+                }
+            }
+            boolean lagging;
+            synchronized(feed)
+            {
+                lagging = this.lagging;
+            }
+            if(lagging && kept == 0)
+            {
+                batch[kept++] = feed.catchUp(this);
+            }
+            if(!lagging)
+            {
+                ByteBuffer frame;
+                while(kept < batch.length && (frame = queue.poll()) != null)
+                {
+                    queued.decrementAndGet();
+                    batch[kept++] = frame;
+                }
+            }
+            for(int i = kept; i < batchSize; i++)
+            {
+                batch[i] = null;
+            }
+            batchSize = kept;
+            return kept;
+        }
+    }
+
+    /**
+     * A frame being encoded into its slice of a feed's slab.
+     */
+    private static final class Frame {
+        private final ByteBuffer buffer;
+
+        private Frame(final ByteBuffer buffer, final byte type, final int payloadLength)
+        {
+            this.buffer = buffer;
+            buffer.putShort((short) (1 + 4 + payloadLength)).put(type).putInt(0);
+        }
+
+        private ByteBuffer finish(final int sequence)
+        {
+            buffer.putInt(3, sequence);
+            return buffer.flip().asReadOnlyBuffer();
+        }
+    }
+
+    private static int utfLength(final String text)
+    {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(final ByteBuffer buffer, final String text)
+    {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+}
@@ -0,0 +1,192 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A spectator's copy of a player's state, kept up to date from the frames of a
+ * {@link SpectatorHub}. Snapshots replace the copy; other frames must follow the
+ * previous one without a gap. Not thread-safe.
+ *
+ * @author Jiarui Xing
+ */
+public final class SpectatorView {
+    private String[] cells = new String[0];
+    private int gridSize;
+    private int question;
+    private int score;
+    private int attemptsLeft;
+    private int sequence;
+    private boolean started;
+    private boolean ended;
+    private int snapshotCount;
+
+    /**
+     * Apply all complete frames in a buffer of received bytes. A partial frame at the
+     * end is left in place, with the buffer positioned at its start.
+     *
+     * @param received Received bytes, ready for reading
+     * @return Number of frames applied
+     * @throws IllegalStateException if a frame doesn't follow the previous one
+     */
+    public int applyAll(final ByteBuffer received)
+    {
+        int applied = 0;
+        while(received.remaining() >= 2 && received.remaining() >= 2 +
+                (received.getShort(received.position()) & 0xffff))
+        {
+            final int length = received.getShort() & 0xffff;
+            final int end = received.position() + length;
+            final int limit = received.limit();
+            received.limit(end);
+            apply(received);
+            received.limit(limit).position(end);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Apply one frame.
+     *
+     * @param frame Frame without its length, from the type to the end
+     * @throws IllegalStateException if the frame doesn't follow the previous one
+     */
+    public void apply(final ByteBuffer frame)
+    {
+        final byte type = frame.get();
+        final int frameSequence = frame.getInt();
+        if(type == SpectatorHub.SNAPSHOT)
+        {
+            question = frame.getShort();
+            score = frame.getShort();
+            attemptsLeft = frame.get();
+            gridSize = frame.get();
+            cells = new String[gridSize * gridSize];
+            for(int i = 0; i < cells.length; i++)
+            {
+                cells[i] = getString(frame);
+            }
+            started = true;
+            snapshotCount++;
+            sequence = frameSequence;
+            return;
+        }
+        if(!started || frameSequence != sequence + 1)
+        {
+            throw new IllegalStateException(
+                    "Frame " + frameSequence + " doesn't follow frame " + sequence + ".");
+        }
+        sequence = frameSequence;
+        switch(type)
+        {
+            case SpectatorHub.PLACE ->
+            {
+                final int cell = frame.get();
+                cells[cell] = getString(frame);
+            }
+            case SpectatorHub.SUBMIT ->
+            {
+                frame.get();
+                score = frame.getShort();
+                attemptsLeft = frame.get();
+            }
+            case SpectatorHub.QUESTION ->
+            {
+                question = frame.getShort();
+                attemptsLeft = frame.get();
+                Arrays.fill(cells, null);
+            }
+            case SpectatorHub.END -> ended = true;
+            default -> throw new IllegalStateException("Unknown frame type: " + type);
+        }
+    }
+
+    /**
+     * Get the item on a cell.
+     *
+     * @param cell Cell index, row by row
+     * @return Item name, or null for an empty cell
+     */
+    public String getCell(final int cell)
+    {
+        return cells[cell];
+    }
+
+    /**
+     * Get the size of the player's grid.
+     *
+     * @return Grid size, 0 before the first snapshot
+     */
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    /**
+     * Get the player's current question.
+     *
+     * @return Index into the tournament's question list, or -1 when finished
+     */
+    public int getQuestion()
+    {
+        return question;
+    }
+
+    /**
+     * Get the player's score.
+     *
+     * @return Score
+     */
+    public int getScore()
+    {
+        return score;
+    }
+
+    /**
+     * Get the attempts the player has left for the current question.
+     *
+     * @return Attempts left
+     */
+    public int getAttemptsLeft()
+    {
+        return attemptsLeft;
+    }
+
+    /**
+     * Get the sequence number of the last frame applied.
+     *
+     * @return Sequence number
+     */
+    public int getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Check if the player has left the tournament.
+     *
+     * @return True after an end frame
+     */
+    public boolean isEnded()
+    {
+        return ended;
+    }
+
+    /**
+     * Get the number of snapshots received: one to start, plus one for every time
+     * this spectator fell too far behind.
+     *
+     * @return Snapshot count
+     */
+    public int getSnapshotCount()
+    {
+        return snapshotCount;
+    }
+
+    private static String getString(final ByteBuffer frame)
+    {
+        final byte[] bytes = new byte[frame.getShort() & 0xffff];
+        frame.get(bytes);
+        return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
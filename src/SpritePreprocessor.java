@@ -0,0 +1,44 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Offline step that turns every animated GIF in the images directory into sprite
+ * sheets at the sizes the game displays, so the game never decodes GIFs at runtime.
+ * Run it from the project directory after adding or changing a GIF.
+ *
+ * @author Jiarui Xing
+ */
+public class SpritePreprocessor {
+    // Sizes of option buttons and the target item, and of grid cells
+    private static final int[] DISPLAY_SIZES = {64, 60};
+
+    /**
+     * Write sheets for all GIFs.
+     *
+     * @param args Optional image directory (default "images")
+     * @throws IOException if a GIF can't be read or a sheet can't be written
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final File imageDirectory = new File(args.length > 0 ? args[0] : "images");
+        final File[] gifs =
+                imageDirectory.listFiles((dir, name) -> name.endsWith(".gif"));
+        if(gifs == null)
+        {
+            System.err.println("Image directory not found: " + imageDirectory);
+            return;
+        }
+        final File outputDirectory = new File(SpriteSheet.SPRITE_DIRECTORY);
+        for(final File gif : gifs)
+        {
+            for(final int size : DISPLAY_SIZES)
+            {
+                final SpriteSheet sheet = SpriteSheet.decodeGif(gif, size);
+                final String name = SpriteSheet.sheetName(gif.getPath(), size);
+                sheet.write(outputDirectory, name);
+                System.out.println("Wrote " + name + " (" + sheet.getDelays().length +
+                                   " frames)");
+            }
+        }
+    }
+}
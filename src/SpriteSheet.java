@@ -0,0 +1,263 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * All frames of an animated GIF, fully composited and scaled to one display size,
+ * laid out row by row on a single sheet together with the frame delays. Sheets can
+ * be written next to the images so that the GIF never has to be decoded at runtime.
+ *
+ * @author Jiarui Xing
+ */
+public final class SpriteSheet {
+    public static final String SPRITE_DIRECTORY = "images/sprites";
+
+    // GIFs with (almost) no delay are shown at 10 fps, as browsers do
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+
+    private final BufferedImage image;
+    private final int frameSize;
+    private final int columns;
+    private final int[] delays;
+
+    private SpriteSheet(final BufferedImage image, final int frameSize, final int columns,
+                        final int[] delays)
+    {
+        this.image = image;
+        this.frameSize = frameSize;
+        this.columns = columns;
+        this.delays = delays;
+    }
+
+    /**
+     * Decode every frame of a GIF and scale it to a square of the given size.
+     *
+     * @param gifFile GIF file
+     * @param size    Width and height of one frame on the sheet
+     * @return Decoded sprite sheet
+     * @throws IOException if the file can't be read
+     */
+    public static SpriteSheet decodeGif(final File gifFile, final int size)
+            throws IOException
+    {
+        final Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if(!readers.hasNext())
+        {
+            throw new IOException("No GIF reader available.");
+        }
+        final ImageReader reader = readers.next();
+        try(final ImageInputStream in = ImageIO.createImageInputStream(gifFile))
+        {
+            reader.setInput(in, false);
+            final int frameCount = reader.getNumImages(true);
+
+            // The logical screen is the canvas all frames are drawn onto
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if(reader.getStreamMetadata() != null)
+            {
+                final IIOMetadataNode screen = child((IIOMetadataNode) reader
+                        .getStreamMetadata().getAsTree("javax_imageio_gif_stream_1.0"),
+                        "LogicalScreenDescriptor");
+                if(screen != null)
+                {
+                    width = Integer.parseInt(screen.getAttribute("logicalScreenWidth"));
+                    height = Integer.parseInt(screen.getAttribute("logicalScreenHeight"));
+                }
+            }
+
+            final int columns = (int) Math.ceil(Math.sqrt(frameCount));
+            final int rows = (frameCount + columns - 1) / columns;
+            final BufferedImage sheet = new BufferedImage(columns * size, rows * size,
+                    BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D sheetGraphics = sheet.createGraphics();
+            sheetGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+            BufferedImage canvas = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+            final int[] delays = new int[frameCount];
+            for(int i = 0; i < frameCount; i++)
+            {
+                final BufferedImage frame = reader.read(i);
+                final IIOMetadataNode metadata = (IIOMetadataNode) reader
+                        .getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+                final IIOMetadataNode descriptor = child(metadata, "ImageDescriptor");
+                final IIOMetadataNode control =
+                        child(metadata, "GraphicControlExtension");
+                final int left = descriptor == null ? 0 :
+                        Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+                final int top = descriptor == null ? 0 :
+                        Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+                final String disposal =
+                        control == null ? "none" : control.getAttribute("disposalMethod");
+                final int delay = control == null ? 0 :
+                        Integer.parseInt(control.getAttribute("delayTime")) * 10;
+                delays[i] = delay < 20 ? DEFAULT_DELAY_MILLIS : delay;
+
+                final BufferedImage previous =
+                        "restoreToPrevious".equals(disposal) ? copy(canvas) : null;
+
+                // Composite the frame and copy the result onto the sheet
+                final Graphics2D canvasGraphics = canvas.createGraphics();
+                canvasGraphics.drawImage(frame, left, top, null);
+                sheetGraphics.drawImage(canvas, (i % columns) * size,
+                        (i / columns) * size, size, size, null);
+
+                // Prepare the canvas for the next frame
+                if("restoreToBackgroundColor".equals(disposal))
+                {
+                    canvasGraphics.setComposite(AlphaComposite.Clear);
+                    canvasGraphics.fillRect(left, top, frame.getWidth(),
+                            frame.getHeight());
+                } else if(previous != null)
+                {
+                    canvas = previous;
+                }
+                canvasGraphics.dispose();
+            }
+            sheetGraphics.dispose();
+            return new SpriteSheet(sheet, size, columns, delays);
+        } finally
+        {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Load a sheet written by {@link #write(File, String)}.
+     *
+     * @param directory Directory holding the sheet
+     * @param baseName  File name without extension
+     * @return Loaded sprite sheet, or null if no sheet exists
+     * @throws IOException if the files can't be read
+     */
+    public static SpriteSheet read(final File directory, final String baseName)
+            throws IOException
+    {
+        final File imageFile = new File(directory, baseName + ".png");
+        final File framesFile = new File(directory, baseName + ".frames");
+        if(!imageFile.exists() || !framesFile.exists())
+        {
+            return null;
+        }
+        final List<String> lines =
+                Files.readAllLines(framesFile.toPath(), StandardCharsets.UTF_8);
+        final String[] header = lines.get(0).trim().split(" ");
+        final int[] delays = Arrays.stream(lines.get(1).trim().split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        return new SpriteSheet(ImageIO.read(imageFile), Integer.parseInt(header[0]),
+                Integer.parseInt(header[1]), delays);
+    }
+
+    /**
+     * Write the sheet as a PNG plus a text file with the frame size, column count and
+     * frame delays in milliseconds.
+     *
+     * @param directory Output directory
+     * @param baseName  File name without extension
+     * @throws IOException if the files can't be written
+     */
+    public void write(final File directory, final String baseName) throws IOException
+    {
+        Files.createDirectories(directory.toPath());
+        ImageIO.write(image, "png", new File(directory, baseName + ".png"));
+        final StringBuilder sb = new StringBuilder();
+        sb.append(frameSize).append(' ').append(columns).append('\n');
+        for(int i = 0; i < delays.length; i++)
+        {
+            sb.append(i == 0 ? "" : ",").append(delays[i]);
+        }
+        sb.append('\n');
+        Files.writeString(new File(directory, baseName + ".frames").toPath(),
+                sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the file name of the sheet of a GIF at a size.
+     *
+     * @param gifPath Path to the GIF
+     * @param size    Display size
+     * @return Base name without extension, e.g. "piston_64"
+     */
+    public static String sheetName(final String gifPath, final int size)
+    {
+        final String fileName = new File(gifPath).getName();
+        final int dot = fileName.lastIndexOf('.');
+        return (dot < 0 ? fileName : fileName.substring(0, dot)) + "_" + size;
+    }
+
+    /**
+     * Get the sheet image.
+     *
+     * @return Image with all frames, row by row
+     */
+    public BufferedImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Get the width and height of one frame.
+     *
+     * @return Frame size in pixels
+     */
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    /**
+     * Get the number of frames per row of the sheet.
+     *
+     * @return Column count
+     */
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Get the delay of every frame.
+     *
+     * @return Delays in milliseconds
+     */
+    public int[] getDelays()
+    {
+        return delays.clone();
+    }
+
+    private static IIOMetadataNode child(final IIOMetadataNode node, final String name)
+    {
+        for(int i = 0; i < node.getLength(); i++)
+        {
+            if(node.item(i).getNodeName().equals(name))
+            {
+                return (IIOMetadataNode) node.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static BufferedImage copy(final BufferedImage source)
+    {
+        final BufferedImage copy = new BufferedImage(source.getWidth(),
+                source.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = copy.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+}
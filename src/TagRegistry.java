@@ -0,0 +1,109 @@
+import java.util.*;
+
+/**
+ * The item tags of one catalog build. Every build defines its tags in a registry of
+ * its own before any recipe refers to them, and the registry is published with the
+ * {@link Catalog}, so a reload replaces all tags at once: tags the new sources no
+ * longer define are gone, and a build that fails leaves the current tags untouched.
+ * <p>
+ * Tags are defined while the catalog is built, on one thread; the registry is only
+ * read once its catalog is published.
+ *
+ * @author Jiarui Xing
+ */
+public final class TagRegistry {
+    // Registry without tags, for recipes that don't refer to any; can't be defined into
+    public static final TagRegistry NONE = new TagRegistry(Map.of());
+
+    private final Map<String, ItemTag> tags;
+
+    /**
+     * Create an empty registry for a catalog build.
+     */
+    public TagRegistry()
+    {
+        this(new LinkedHashMap<>());
+    }
+
+    private TagRegistry(final Map<String, ItemTag> tags)
+    {
+        this.tags = tags;
+    }
+
+    /**
+     * Define a tag. Defining a tag again replaces it for recipes built afterwards;
+     * recipes already built keep the members they had.
+     *
+     * @param name    Tag name, starting with '#'
+     * @param members Item names and names of tags already defined here
+     * @return The new tag
+     */
+    public ItemTag define(final String name, final String... members)
+    {
+        if(!ItemTag.isReference(name))
+        {
+            throw new IllegalArgumentException("Tag names must start with '#': " + name);
+        }
+        final ItemTag tag = new ItemTag(name, resolve(members));
+        tags.put(name, tag);
+        return tag;
+    }
+
+    /**
+     * Get a defined tag.
+     *
+     * @param name Tag name, starting with '#'
+     * @return The tag
+     */
+    public ItemTag get(final String name)
+    {
+        final ItemTag tag = tags.get(name);
+        if(tag == null)
+        {
+            throw new IllegalArgumentException("Unknown tag: " + name);
+        }
+        return tag;
+    }
+
+    /**
+     * Get all defined tags.
+     *
+     * @return Unmodifiable collection of tags in definition order
+     */
+    public Collection<ItemTag> getTags()
+    {
+        return Collections.unmodifiableCollection(tags.values());
+    }
+
+    /**
+     * Get the acceptable items of a recipe slot. A slot that is just one tag gets the
+     * shared tag itself; otherwise tags are expanded into a new set.
+     *
+     * @param names Item names and tag names
+     * @return Acceptable item names, first alternative first
+     */
+    Set<String> alternatives(final String... names)
+    {
+        if(names.length == 1 && ItemTag.isReference(names[0]))
+        {
+            return get(names[0]);
+        }
+        return resolve(names);
+    }
+
+    private Set<String> resolve(final String... names)
+    {
+        final Set<String> items = new LinkedHashSet<>();
+        for(final String name : names)
+        {
+            if(ItemTag.isReference(name))
+            {
+                items.addAll(get(name));
+            } else
+            {
+                items.add(name);
+            }
+        }
+        return items;
+    }
+}
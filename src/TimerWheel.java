@@ -0,0 +1,353 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel for session transitions and timeouts. Timeouts are hashed into
+ * a ring of buckets by their deadline; one ticker thread advances a slot per tick and
+ * fires the due timeouts of that slot. Scheduling and cancelling are O(1) and never
+ * block: they only enqueue, and the ticker links or unlinks the timeout on its next
+ * tick. Deadlines are therefore accurate to one tick.
+ * <p>
+ * Tasks run on the ticker thread and must be short. Work that takes longer, or that
+ * belongs to the JavaFX thread, should be handed off from the task.
+ *
+ * @author Jiarui Xing
+ */
+public final class TimerWheel {
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // Upper bound on new timeouts linked per tick, so a burst can't stall the wheel
+    private static final int MAX_ADDS_PER_TICK = 100_000;
+
+    private static TimerWheel instance;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startNanos;
+
+    // Handed from scheduling threads to the ticker
+    private final Queue<Timeout> pendingAdds;
+    private final Queue<Timeout> pendingCancels;
+
+    private final Thread ticker;
+    private volatile boolean running = true;
+
+    // Number of ticks processed; only touched by the ticker
+    private long tick = 0;
+
+    /**
+     * Create a wheel and start its ticker thread.
+     *
+     * @param tickMillis Length of one tick
+     * @param wheelSize  Number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(final long tickMillis, final int wheelSize)
+    {
+        if(tickMillis <= 0 || wheelSize <= 0)
+        {
+            throw new IllegalArgumentException("Tick and wheel size must be positive.");
+        }
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = 1;
+        while(size < wheelSize)
+        {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for(int i = 0; i < wheel.length; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+        mask = wheel.length - 1;
+        pendingAdds = new ConcurrentLinkedQueue<>();
+        pendingCancels = new ConcurrentLinkedQueue<>();
+        startNanos = System.nanoTime();
+
+        ticker = new Thread(this::run, "timer-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Get the wheel shared by the game, with the default tick and size.
+     *
+     * @return The shared TimerWheel
+     */
+    public static synchronized TimerWheel getInstance()
+    {
+        if(instance == null)
+        {
+            instance = new TimerWheel(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Run a task once after a delay. May be called from any thread.
+     *
+     * @param task        Task to run on the ticker thread
+     * @param delayMillis Delay in milliseconds
+     * @return Handle to cancel the task
+     * @throws IllegalStateException if the wheel has been stopped
+     */
+    public Timeout schedule(final Runnable task, final long delayMillis)
+    {
+        if(!running)
+        {
+            throw new IllegalStateException("Timer wheel has been stopped.");
+        }
+        final long deadline = System.nanoTime() - startNanos +
+                              TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        final Timeout timeout = new Timeout(this, task, deadline);
+        pendingAdds.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the ticker. Timeouts that have not fired yet never will.
+     */
+    public void stop()
+    {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private void run()
+    {
+        while(running)
+        {
+            final long now = waitForNextTick();
+            if(!running)
+            {
+                return;
+            }
+            unlinkCancelled();
+            linkPending();
+            wheel[(int) (tick & mask)].expire(now);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleep until the end of the current tick.
+     *
+     * @return Time since the wheel started, in nanoseconds
+     */
+    private long waitForNextTick()
+    {
+        final long deadline = tickNanos * (tick + 1);
+        while(true)
+        {
+            final long now = System.nanoTime() - startNanos;
+            final long sleepMillis = (deadline - now + 999_999) / 1_000_000;
+            if(sleepMillis <= 0 || !running)
+            {
+                return now;
+            }
+            try
+            {
+                Thread.sleep(sleepMillis);
+            } catch(final InterruptedException e)
+            {
+                if(!running)
+                {
+                    return now;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move newly scheduled timeouts into the bucket of their deadline tick.
+     */
+    private void linkPending()
+    {
+        for(int i = 0; i < MAX_ADDS_PER_TICK; i++)
+        {
+            final Timeout timeout = pendingAdds.poll();
+            if(timeout == null)
+            {
+                return;
+            }
+            if(timeout.state.get() != Timeout.PENDING)
+            {
+                continue;
+            }
+            final long deadlineTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+
+            // Deadlines already in the past go into the current bucket
+            final long slot = Math.max(deadlineTick, tick);
+            wheel[(int) (slot & mask)].add(timeout);
+        }
+    }
+
+    private void unlinkCancelled()
+    {
+        Timeout timeout;
+        while((timeout = pendingCancels.poll()) != null)
+        {
+            if(timeout.bucket != null)
+            {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Bucket links and rounds left; only touched by the ticker
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+        private long remainingRounds;
+
+        private Timeout(final TimerWheel wheel, final Runnable task, final long deadline)
+        {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            state = new AtomicInteger(PENDING);
+        }
+
+        /**
+         * Cancel the task if it has not run yet. May be called from any thread.
+         *
+         * @return True if the task was cancelled, False if it already ran or was
+         * cancelled before
+         */
+        public boolean cancel()
+        {
+            if(!state.compareAndSet(PENDING, CANCELLED))
+            {
+                return false;
+            }
+            wheel.pendingCancels.add(this);
+            return true;
+        }
+
+        /**
+         * Check if the task was cancelled.
+         *
+         * @return True if cancelled
+         */
+        public boolean isCancelled()
+        {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Check if the task has run or is running.
+         *
+         * @return True if expired
+         */
+        public boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire()
+        {
+            if(!state.compareAndSet(PENDING, EXPIRED))
+            {
+                return;
+            }
+            try
+            {
+                task.run();
+            } catch(final RuntimeException e)
+            {
+                // One failing task must not stop the wheel
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts hashed to one slot.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(final Timeout timeout)
+        {
+            timeout.bucket = this;
+            if(head == null)
+            {
+                head = tail = timeout;
+            } else
+            {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Fire the timeouts due in this round and count down the others.
+         *
+         * @param now Current time since the wheel started, in nanoseconds
+         */
+        private void expire(final long now)
+        {
+            Timeout timeout = head;
+            while(timeout != null)
+            {
+                final Timeout next = timeout.next;
+                if(timeout.remainingRounds <= 0 && timeout.deadline <= now)
+                {
+                    remove(timeout);
+                    timeout.expire();
+                } else if(timeout.isCancelled())
+                {
+                    remove(timeout);
+                } else if(timeout.remainingRounds > 0)
+                {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(final Timeout timeout)
+        {
+            if(timeout.bucket != this)
+            {
+                return;
+            }
+            if(timeout.previous != null)
+            {
+                timeout.previous.next = timeout.next;
+            } else
+            {
+                head = timeout.next;
+            }
+            if(timeout.next != null)
+            {
+                timeout.next.previous = timeout.previous;
+            } else
+            {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,831 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tournament mode: many players answer the same question sequence at once, each with
+ * their own grid, score and attempts. Player actions may come from any thread.
+ * <p>
+ * Calls for one player are serialised on that player; different players never share
+ * a lock. Rankings live in a concurrent skip list that is updated without locking
+ * whenever a score changes. Leaderboard reads are served from an immutable snapshot
+ * that is rebuilt at most once per refresh interval.
+ * <p>
+ * An optional time limit per question is enforced with the shared timer wheel: one
+ * pending timeout per player, replaced whenever the player moves on.
+ * <p>
+ * With passivation enabled, a periodic sweep writes the sessions of idle players to a
+ * session store and drops them from memory, idlest first, also when the resident
+ * sessions exceed a memory budget. The next action of such a player reads the session
+ * back before it runs, so passivation is invisible to callers.
+ * <p>
+ * A player can be exported and imported into another tournament with the same
+ * questions, which is how game nodes hand players over when a cluster is rebalanced.
+ * <p>
+ * With spectators enabled, every change to a watched player's grid, score or question
+ * is published to their spectators while the player's lock is held, so spectators
+ * see the changes in order.
+ *
+ * @author Jiarui Xing
+ */
+public class Tournament implements GameHost {
+    private static final long SNAPSHOT_INTERVAL_NANOS = 100_000_000L;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final List<Question> questions;
+    private final int gridSize;
+
+    // Time allowed per question, or 0 for no limit
+    private final long questionTimeLimitMillis;
+
+    private final Map<String, Player> players;
+    private final ConcurrentSkipListSet<Standing> standings;
+
+    // Orders equal scores by who reached them first
+    private final AtomicLong sequence;
+
+    // Bumped on every ranking change; compared against the snapshot's version
+    private final AtomicLong version;
+    private final AtomicBoolean refreshing;
+    private volatile Snapshot snapshot;
+
+    // Passivation settings; no store means sessions always stay in memory
+    private volatile SessionStore sessionStore;
+    private volatile long idleNanos;
+    private volatile long memoryBudgetBytes;
+
+    // Feeds for spectators; null until spectators are enabled
+    private volatile SpectatorHub spectators;
+
+    /**
+     * Create a tournament.
+     *
+     * @param questions Question sequence shared by all players
+     * @param gridSize  Size of the crafting grid
+     */
+    public Tournament(final List<Question> questions, final int gridSize)
+    {
+        this(questions, gridSize, 0);
+    }
+
+    /**
+     * Create a tournament with a time limit per question. A player who runs out of
+     * time moves on to the next question without scoring.
+     *
+     * @param questions               Question sequence shared by all players
+     * @param gridSize                Size of the crafting grid
+     * @param questionTimeLimitMillis Time limit in milliseconds, or 0 for no limit
+     */
+    public Tournament(final List<Question> questions, final int gridSize,
+                      final long questionTimeLimitMillis)
+    {
+        this.questions = List.copyOf(questions);
+        this.gridSize = gridSize;
+        this.questionTimeLimitMillis = Math.max(0, questionTimeLimitMillis);
+        players = new ConcurrentHashMap<>();
+        standings = new ConcurrentSkipListSet<>();
+        sequence = new AtomicLong();
+        version = new AtomicLong();
+        refreshing = new AtomicBoolean();
+        snapshot = new Snapshot(0, new Standing[0], System.nanoTime());
+    }
+
+    /**
+     * Add a player and show them the first question.
+     *
+     * @param playerId Unique player ID
+     * @return True if the player joined, False if the ID is already taken
+     */
+    @Override
+    public boolean join(final String playerId)
+    {
+        final GameSession session = new GameSession(questions, gridSize);
+        session.nextQuestion();
+        return add(new Player(playerId, session));
+    }
+
+    /**
+     * Place an item on a player's grid, or clear a cell.
+     *
+     * @param playerId Player ID
+     * @param gridX    Grid X-coordinate
+     * @param gridY    Grid Y-coordinate
+     * @param itemName Name of the item placed, or null to clear the cell
+     */
+    @Override
+    public void placeItemOnGrid(final String playerId, final int gridX, final int gridY,
+                                final String itemName)
+    {
+        final Player player = getActivePlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            final GameSession session = session(player);
+            if(!session.isFinished())
+            {
+                session.placeItemOnGrid(gridX, gridY, itemName);
+                final SpectatorHub hub = spectators;
+                if(hub != null)
+                {
+                    hub.placed(playerId, gridY * gridSize + gridX, itemName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Submit a player's grid. After a correct answer or the last failed attempt the
+     * player moves straight on to the next question.
+     *
+     * @param playerId Player ID
+     * @return Outcome of the attempt, or null if the player has finished
+     */
+    @Override
+    public GameSession.SubmitResult submitRecipe(final String playerId)
+    {
+        final Player player = getActivePlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            final GameSession session = session(player);
+            if(session.isFinished())
+            {
+                return null;
+            }
+            final GameSession.SubmitResult result = session.submitRecipe();
+            final SpectatorHub hub = spectators;
+            if(hub != null)
+            {
+                hub.submitted(playerId, result, session);
+            }
+            if(result == GameSession.SubmitResult.CORRECT)
+            {
+                updateStanding(player);
+            }
+            if(result != GameSession.SubmitResult.RETRY)
+            {
+                advance(player);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Skip a player's current question.
+     *
+     * @param playerId Player ID
+     */
+    @Override
+    public void skipQuestion(final String playerId)
+    {
+        final Player player = getActivePlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            advance(player);
+        }
+    }
+
+    /**
+     * Get a player's current question.
+     *
+     * @param playerId Player ID
+     * @return Question, or null if the player has finished
+     */
+    @Override
+    public Question getQuestion(final String playerId)
+    {
+        final Player player = getActivePlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            return session(player).getQuestion();
+        }
+    }
+
+    /**
+     * Get a player's score.
+     *
+     * @param playerId Player ID
+     * @return Current score
+     */
+    @Override
+    public int getScore(final String playerId)
+    {
+        return getPlayer(playerId).standing.getScore();
+    }
+
+    /**
+     * Get the best players. The result may lag behind the latest submits by up to
+     * the snapshot refresh interval.
+     *
+     * @param k Maximum number of standings
+     * @return Top standings, best first
+     */
+    public List<Standing> getLeaderboard(final int k)
+    {
+        Snapshot current = snapshot;
+        if(current.version != version.get() &&
+           System.nanoTime() - current.createdNanos >= SNAPSHOT_INTERVAL_NANOS)
+        {
+            current = refreshSnapshot(current);
+        }
+        return Arrays.asList(current.standings)
+                .subList(0, Math.min(k, current.standings.length));
+    }
+
+    /**
+     * Copy a player's session, to hand the player over to another tournament. The
+     * player stays here, with their question timer stopped, until the handover is
+     * finished with {@link #removePlayer} or abandoned with {@link #cancelExport}. A
+     * passivated session is copied as stored, without reading it back into memory.
+     * Actions for the player must stop until then.
+     *
+     * @param playerId Player ID
+     * @return Serialized session, for {@link #importSession}
+     */
+    public byte[] exportSession(final String playerId)
+    {
+        final Player player = getPlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            final byte[] data;
+            try
+            {
+                data = player.session != null ? player.session.toBytes() :
+                        sessionStore.get(playerId);
+            } catch(IOException e)
+            {
+                throw new UncheckedIOException(
+                        "Could not export the session of " + playerId, e);
+            }
+            if(player.timeout != null)
+            {
+                player.timeout.cancel();
+                player.timeout = null;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Remove a player whose session another tournament has imported.
+     *
+     * @param playerId Player ID
+     */
+    public void removePlayer(final String playerId)
+    {
+        final Player player = getPlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            if(player.timeout != null)
+            {
+                player.timeout.cancel();
+                player.timeout = null;
+            }
+            if(player.session == null)
+            {
+                try
+                {
+                    sessionStore.remove(playerId);
+                } catch(IOException e)
+                {
+                    System.err.println("Could not discard the session of " + playerId);
+                    e.printStackTrace();
+                }
+            }
+            player.removed = true;
+            players.remove(playerId);
+            standings.remove(player.standing);
+            version.incrementAndGet();
+            final SpectatorHub hub = spectators;
+            if(hub != null)
+            {
+                hub.ended(playerId);
+            }
+        }
+    }
+
+    /**
+     * Keep a player whose handover failed, restarting the time limit of their current
+     * question.
+     *
+     * @param playerId Player ID
+     */
+    public void cancelExport(final String playerId)
+    {
+        final Player player = getPlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            if(player.timeout == null)
+            {
+                startTimer(player);
+            }
+        }
+    }
+
+    /**
+     * Add a player with a session exported from another tournament with the same
+     * questions. The time limit of the current question starts again.
+     *
+     * @param playerId Unique player ID
+     * @param data     Serialized session from {@link #exportSession}
+     * @return True if the player was added, False if the ID is already taken
+     */
+    public boolean importSession(final String playerId, final byte[] data)
+    {
+        return add(new Player(playerId,
+                GameSession.fromBytes(questions, gridSize, data)));
+    }
+
+    /**
+     * Get the IDs of the players. The set reflects joins and exports as they happen.
+     *
+     * @return Unmodifiable view of the player IDs
+     */
+    public Set<String> getPlayerIds()
+    {
+        return Collections.unmodifiableSet(players.keySet());
+    }
+
+    /**
+     * Start passivating idle sessions. Sessions idle for longer than the threshold
+     * are moved to the store; if the remaining ones still exceed the budget, the
+     * least recently active are moved too.
+     *
+     * @param store             Store for passivated sessions
+     * @param idleMillis        Idle time after which a session is passivated
+     * @param memoryBudgetBytes Estimated heap that resident sessions may use
+     */
+    public void enablePassivation(final SessionStore store, final long idleMillis,
+                                  final long memoryBudgetBytes)
+    {
+        idleNanos = Math.max(0, idleMillis) * 1_000_000L;
+        this.memoryBudgetBytes = Math.max(0, memoryBudgetBytes);
+        final boolean first = sessionStore == null;
+        sessionStore = store;
+        if(first)
+        {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Let spectators watch players, on a port of their own. Calling this again returns
+     * the running hub.
+     *
+     * @param address Address to listen on; port 0 picks a free port
+     * @return Hub that spectators connect to
+     * @throws IOException if the port can't be opened
+     */
+    public synchronized SpectatorHub enableSpectators(final InetSocketAddress address)
+            throws IOException
+    {
+        if(spectators == null)
+        {
+            spectators = new SpectatorHub(this, address);
+        }
+        return spectators;
+    }
+
+    /**
+     * Start the spectator feed of a player from their current state, unless it is
+     * running.
+     *
+     * @param playerId Player ID
+     * @return The player's feed
+     */
+    SpectatorHub.Feed openFeed(final String playerId)
+    {
+        final Player player = getPlayer(playerId);
+        synchronized(player)
+        {
+            checkPresent(player);
+            return spectators.openFeed(playerId, session(player));
+        }
+    }
+
+    /**
+     * Get the number of sessions currently held in memory.
+     *
+     * @return Resident session count
+     */
+    public int getResidentSessionCount()
+    {
+        int resident = 0;
+        for(final Player player : players.values())
+        {
+            synchronized(player)
+            {
+                if(player.session != null)
+                {
+                    resident++;
+                }
+            }
+        }
+        return resident;
+    }
+
+    /**
+     * Get the number of players that joined.
+     *
+     * @return Player count
+     */
+    public int getPlayerCount()
+    {
+        return players.size();
+    }
+
+    /**
+     * Get the size of the crafting grid.
+     *
+     * @return Grid size
+     */
+    @Override
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    /**
+     * Get the question sequence shared by all players.
+     *
+     * @return Unmodifiable list of questions
+     */
+    public List<Question> getQuestions()
+    {
+        return questions;
+    }
+
+    /**
+     * Add a fully set up player. The player is locked while being published, so other
+     * threads only ever see them with their standing set, and nothing is started
+     * unless the ID was free.
+     *
+     * @param player Player with a session on their current question
+     * @return True if the player was added, False if the ID is already taken
+     */
+    private boolean add(final Player player)
+    {
+        player.standing = new Standing(player.id, player.session.getScore(),
+                sequence.incrementAndGet());
+        synchronized(player)
+        {
+            if(players.putIfAbsent(player.id, player) != null)
+            {
+                return false;
+            }
+            standings.add(player.standing);
+            startTimer(player);
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get a player's session, reading it back from the store if it was passivated.
+     * Must hold the player's lock.
+     *
+     * @param player Player
+     * @return Resident session
+     */
+    private GameSession session(final Player player)
+    {
+        if(player.session == null)
+        {
+            try
+            {
+                player.session = GameSession.fromBytes(questions, gridSize,
+                        sessionStore.take(player.id));
+            } catch(IOException e)
+            {
+                throw new UncheckedIOException(
+                        "Could not restore the session of " + player.id, e);
+            }
+        }
+        return player.session;
+    }
+
+    /**
+     * Run a sweep on the common pool once the sweep interval has passed. The timer
+     * wheel only hands the sweep off, since it writes to disk.
+     */
+    private void scheduleSweep()
+    {
+        TimerWheel.getInstance().schedule(() -> ForkJoinPool.commonPool().execute(() ->
+        {
+            try
+            {
+                sweep();
+            } finally
+            {
+                scheduleSweep();
+            }
+        }), SWEEP_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Passivate idle sessions, then the least recently active ones until the resident
+     * sessions fit the memory budget.
+     */
+    private void sweep()
+    {
+        final long now = System.nanoTime();
+        final List<Player> resident = new ArrayList<>();
+        long footprint = 0;
+        for(final Player player : players.values())
+        {
+            synchronized(player)
+            {
+                if(player.removed || player.session == null ||
+                   now - player.lastActiveNanos >= idleNanos && passivate(player))
+                {
+                    continue;
+                }
+                player.footprint = player.session.estimateFootprint();
+                player.sweptActiveNanos = player.lastActiveNanos;
+                footprint += player.footprint;
+                resident.add(player);
+            }
+        }
+        if(footprint <= memoryBudgetBytes)
+        {
+            return;
+        }
+
+        resident.sort(Comparator.comparingLong(player -> player.sweptActiveNanos));
+        for(int i = 0; i < resident.size() && footprint > memoryBudgetBytes; i++)
+        {
+            final Player player = resident.get(i);
+            synchronized(player)
+            {
+                if(!player.removed && passivate(player))
+                {
+                    footprint -= player.footprint;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a player's session to the store. Must hold the player's lock.
+     *
+     * @param player Player
+     * @return True if the session was passivated, False if it stays in memory
+     */
+    private boolean passivate(final Player player)
+    {
+        if(player.session == null)
+        {
+            return false;
+        }
+        try
+        {
+            sessionStore.put(player.id, player.session.toBytes());
+            player.session = null;
+            return true;
+        } catch(IOException e)
+        {
+            System.err.println("Could not passivate the session of " + player.id);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Move a player to their next question and restart their question timer. Must
+     * hold the player's lock.
+     *
+     * @param player Player to advance
+     */
+    private void advance(final Player player)
+    {
+        if(player.timeout != null)
+        {
+            player.timeout.cancel();
+            player.timeout = null;
+        }
+        final GameSession session = session(player);
+        if(session.nextQuestion())
+        {
+            startTimer(player);
+        }
+        final SpectatorHub hub = spectators;
+        if(hub != null)
+        {
+            hub.questionChanged(player.id, session);
+        }
+    }
+
+    /**
+     * Start the time limit of a player's current question, if there is a limit. Must
+     * hold the player's lock.
+     *
+     * @param player Player with a current question
+     */
+    private void startTimer(final Player player)
+    {
+        final GameSession session = session(player);
+        if(questionTimeLimitMillis > 0 && !session.isFinished())
+        {
+            final int generation = ++player.timerGeneration;
+            player.timeout = TimerWheel.getInstance().schedule(() ->
+                    ForkJoinPool.commonPool().execute(() -> timeUp(player, generation)),
+                    questionTimeLimitMillis);
+        }
+    }
+
+    /**
+     * Move a player on when their time for a question has run out. Runs on the common
+     * pool; the timer wheel only hands it off, since a passivated session is read back
+     * from disk first.
+     *
+     * @param player     Player whose time ran out
+     * @param generation Generation of the timer that ran out
+     */
+    private void timeUp(final Player player, final int generation)
+    {
+        synchronized(player)
+        {
+            // The timer may have been replaced or cancelled while this was queued
+            if(player.timeout != null && player.timerGeneration == generation)
+            {
+                advance(player);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the leaderboard snapshot unless another thread is already doing it.
+     *
+     * @param current Snapshot seen by the caller
+     * @return Newest snapshot
+     */
+    private Snapshot refreshSnapshot(final Snapshot current)
+    {
+        if(!refreshing.compareAndSet(false, true))
+        {
+            return current;
+        }
+        try
+        {
+            final long seenVersion = version.get();
+            final Snapshot fresh = new Snapshot(seenVersion,
+                    standings.toArray(new Standing[0]), System.nanoTime());
+            snapshot = fresh;
+            return fresh;
+        } finally
+        {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Replace a player's standing with one for their new score. Must hold the
+     * player's lock.
+     *
+     * @param player Player whose score changed
+     */
+    private void updateStanding(final Player player)
+    {
+        final Standing updated = new Standing(player.id, session(player).getScore(),
+                sequence.incrementAndGet());
+        standings.add(updated);
+        standings.remove(player.standing);
+        player.standing = updated;
+        version.incrementAndGet();
+    }
+
+    private Player getPlayer(final String playerId)
+    {
+        final Player player = players.get(playerId);
+        if(player == null)
+        {
+            throw new IllegalArgumentException("Unknown player: " + playerId);
+        }
+        return player;
+    }
+
+    /**
+     * Reject a player removed while the caller was waiting for their lock, as if they
+     * had never joined. Must hold the player's lock.
+     */
+    private static void checkPresent(final Player player)
+    {
+        if(player.removed)
+        {
+            throw new IllegalArgumentException("Unknown player: " + player.id);
+        }
+    }
+
+    /**
+     * Get a player for one of their own actions, marking them as active. Timeouts,
+     * spectators and handovers use {@link #getPlayer}, so they don't keep an idle
+     * session in memory.
+     */
+    private Player getActivePlayer(final String playerId)
+    {
+        final Player player = getPlayer(playerId);
+        player.lastActiveNanos = System.nanoTime();
+        return player;
+    }
+
+    /**
+     * A player's position on the leaderboard. Higher scores rank first; equal scores
+     * rank by who reached them first.
+     */
+    public static final class Standing implements Comparable<Standing> {
+        private final String playerId;
+        private final int score;
+        private final long sequence;
+
+        private Standing(final String playerId, final int score, final long sequence)
+        {
+            this.playerId = playerId;
+            this.score = score;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Get the player ID.
+         *
+         * @return Player ID
+         */
+        public String getPlayerId()
+        {
+            return playerId;
+        }
+
+        /**
+         * Get the score.
+         *
+         * @return Score
+         */
+        public int getScore()
+        {
+            return score;
+        }
+
+        @Override
+        public int compareTo(final Standing other)
+        {
+            if(score != other.score)
+            {
+                return Integer.compare(other.score, score);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Player {
+        private final String id;
+        private volatile Standing standing;
+
+        // Session, or null while passivated; guarded by the player's lock
+        private GameSession session;
+        private volatile long lastActiveNanos;
+
+        // Values seen by the last sweep, so its ordering stays stable
+        private long footprint;
+        private long sweptActiveNanos;
+
+        // Pending time limit of the current question, and the number of timers started
+        // so far, so a stale expiry is ignored; guarded by the player's lock
+        private TimerWheel.Timeout timeout;
+        private int timerGeneration;
+
+        // Set once the player is removed, so callers that looked them up before then
+        // don't act on them; guarded by the player's lock
+        private boolean removed;
+
+        private Player(final String id, final GameSession session)
+        {
+            this.id = id;
+            this.session = session;
+            lastActiveNanos = System.nanoTime();
+        }
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final Standing[] standings;
+        private final long createdNanos;
+
+        private Snapshot(final long version, final Standing[] standings,
+                         final long createdNanos)
+        {
+            this.version = version;
+            this.standings = standings;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces state-change notifications into UI refreshes. Every change publishes a
+ * new version; however many versions are published before the JavaFX thread gets
+ * to it, the refresh runs once and reads the latest state.
+ *
+ * @author Jiarui Xing
+ */
+public final class UiUpdateScheduler {
+    private final Runnable refresh;
+    private final AtomicLong version;
+    private final AtomicBoolean scheduled;
+
+    // Version shown by the last refresh; only touched on the JavaFX thread
+    private long renderedVersion = 0;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param refresh Rebuilds the UI from the current state; runs on the JavaFX thread
+     */
+    public UiUpdateScheduler(final Runnable refresh)
+    {
+        this.refresh = refresh;
+        version = new AtomicLong();
+        scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Record a state change and make sure a refresh is pending. May be called from
+     * any thread.
+     *
+     * @return The new state version
+     */
+    public long publish()
+    {
+        final long published = version.incrementAndGet();
+        if(scheduled.compareAndSet(false, true))
+        {
+            Platform.runLater(this::flush);
+        }
+        return published;
+    }
+
+    /**
+     * Get the latest published version.
+     *
+     * @return State version
+     */
+    public long getVersion()
+    {
+        return version.get();
+    }
+
+    private void flush()
+    {
+        // Clear the flag first so changes made during the refresh schedule another one
+        scheduled.set(false);
+        final long latest = version.get();
+        if(latest != renderedVersion)
+        {
+            renderedVersion = latest;
+            refresh.run();
+        }
+    }
+}